@@ -0,0 +1,69 @@
+/*
+ * Copyright 2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.xiushen.wanus.agent;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.tool.ToolCallbackProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 创建计划执行所需的智能体集合
+ * 		智能体实例带有执行状态，不能在并发执行的步骤之间共享，每次调用createAgents()都会返回一组新的实例
+ */
+public class AgentFactory {
+
+	private final ChatClient chatClient;
+	private final ToolCallingManager toolCallingManager;
+	private final ToolCallbackProvider manusToolCallbackProvider;
+	private final ToolCallbackProvider browserToolCallbackProvider;
+	private final ToolCallbackProvider fileToolCallbackProvider;
+	private final ToolCallbackProvider pythonToolCallbackProvider;
+	private final Executor pipelineExecutor;
+
+	/**
+	 * @param pipelineExecutor 智能体流水线模式使用的线程池，为null时不开启流水线模式
+	 */
+	public AgentFactory(
+			ChatClient chatClient,
+			ToolCallingManager toolCallingManager,
+			ToolCallbackProvider manusToolCallbackProvider,
+			ToolCallbackProvider browserToolCallbackProvider,
+			ToolCallbackProvider fileToolCallbackProvider,
+			ToolCallbackProvider pythonToolCallbackProvider,
+			Executor pipelineExecutor) {
+		this.chatClient = chatClient;
+		this.toolCallingManager = toolCallingManager;
+		this.manusToolCallbackProvider = manusToolCallbackProvider;
+		this.browserToolCallbackProvider = browserToolCallbackProvider;
+		this.fileToolCallbackProvider = fileToolCallbackProvider;
+		this.pythonToolCallbackProvider = pythonToolCallbackProvider;
+		this.pipelineExecutor = pipelineExecutor;
+	}
+
+	public List<BaseAgent> createAgents() {
+		List<ReActAgent> agentList = new ArrayList<>();
+		agentList.add(new ManusAgent(chatClient, manusToolCallbackProvider, toolCallingManager));
+		agentList.add(new BrowserAgent(chatClient, browserToolCallbackProvider, toolCallingManager));
+		agentList.add(new FileAgent(chatClient, fileToolCallbackProvider, toolCallingManager));
+		agentList.add(new PythonAgent(chatClient, pythonToolCallbackProvider, toolCallingManager));
+		agentList.forEach(agent -> agent.setPipelineExecutor(pipelineExecutor));
+		return new ArrayList<>(agentList);
+	}
+}
@@ -0,0 +1,28 @@
+package dev.xiushen.wanus.agent;
+
+/**
+ * 智能体执行过程的监听器，用于向外部实时推送工具调用进度
+ */
+public interface AgentListener {
+
+	AgentListener NOOP = new AgentListener() {
+	};
+
+	/**
+	 * 工具调用开始
+	 * @param agentName 智能体名称
+	 * @param toolName 工具名称
+	 * @param arguments 工具参数（JSON）
+	 */
+	default void onToolCall(String agentName, String toolName, String arguments) {
+	}
+
+	/**
+	 * 工具调用结束
+	 * @param agentName 智能体名称
+	 * @param toolName 工具名称
+	 * @param result 工具返回内容
+	 */
+	default void onToolResult(String agentName, String toolName, String result) {
+	}
+}
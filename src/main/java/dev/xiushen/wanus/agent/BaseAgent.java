@@ -36,46 +36,68 @@ public abstract class BaseAgent {
 	private final ReentrantLock lock = new ReentrantLock();
 
 	private String conversationId;
-	private AgentStatus status = AgentStatus.IDLE;
+	private volatile AgentStatus status = AgentStatus.IDLE;
 	private int maxSteps = 8;
 	private int currentStep = 0;
 	private Map<String, Object> data = new HashMap<>();
+	private AgentListener listener = AgentListener.NOOP;
+	private String lastRoundResult;
 
 	public String run(Map<String, Object> data) {
-		currentStep = 0;
-		if (status != AgentStatus.IDLE) {
-			throw new IllegalStateException("Cannot run agent from status: " + status);
-		}
-
-		setData(data);
-
-		List<String> results = new ArrayList<>();
+		// ReentrantLock不会像synchronized那样把虚拟线程钉在载体线程上，步骤中阻塞的LLM/工具调用可以正常让出载体线程
 		lock.lock();
 		try {
-			status = AgentStatus.RUNNING;
-			while (currentStep < maxSteps && !status.equals(AgentStatus.FINISHED)) {
-				currentStep++;
-                LOGGER.info("Executing round {}/{}", currentStep, maxSteps);
-				String stepResult = step();
-				if (isStuck()) {
-					handleStuckState();
-				}
-				results.add("Round " + currentStep + ": " + stepResult);
+			if (status != AgentStatus.IDLE) {
+				throw new IllegalStateException("Cannot run agent from status: " + status);
 			}
-			if (currentStep >= maxSteps) {
-				results.add("Terminated: Reached max rounds (" + maxSteps + ")");
+			currentStep = 0;
+			lastRoundResult = null;
+			setData(data);
+
+			List<String> results = new ArrayList<>();
+			try {
+				status = AgentStatus.RUNNING;
+				while (currentStep < maxSteps && !status.equals(AgentStatus.FINISHED)) {
+					currentStep++;
+					LOGGER.info("Executing round {}/{}", currentStep, maxSteps);
+					String stepResult = step();
+					lastRoundResult = stepResult;
+					if (isStuck()) {
+						handleStuckState();
+					}
+					results.add("Round " + currentStep + ": " + stepResult);
+				}
+				if (currentStep >= maxSteps) {
+					results.add("Terminated: Reached max rounds (" + maxSteps + ")");
+				}
+			} finally {
+				status = AgentStatus.IDLE; // Reset state after execution
 			}
+			return String.join("\n", results);
 		} finally {
 			lock.unlock();
-			status = AgentStatus.IDLE; // Reset state after execution
 		}
-		return String.join("\n", results);
 	}
 
 	public void setStatus(AgentStatus status) {
 		this.status = status;
 	}
 
+	/**
+	 * 最近一次run()中最后一轮的执行结果
+	 */
+	public String getLastRoundResult() {
+		return lastRoundResult;
+	}
+
+	public AgentListener getListener() {
+		return listener;
+	}
+
+	public void setListener(AgentListener listener) {
+		this.listener = listener != null ? listener : AgentListener.NOOP;
+	}
+
 	public String getConversationId() {
 		return conversationId;
 	}
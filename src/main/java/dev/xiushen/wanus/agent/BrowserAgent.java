@@ -2,6 +2,7 @@ package dev.xiushen.wanus.agent;
 
 import com.google.common.cache.Cache;
 import dev.xiushen.wanus.common.CommonCache;
+import dev.xiushen.wanus.tool.support.BrowserState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
@@ -20,38 +21,7 @@ public class BrowserAgent extends ToolCallAgent {
 
     private static final Cache<String, Object> browserCache =  CommonCache.browserCache;
 
-    public BrowserAgent(
-            ChatClient chatClient,
-            ToolCallbackProvider toolCallbackProvider,
-            ToolCallingManager toolCallingManager) {
-        super(chatClient, toolCallbackProvider, toolCallingManager);
-    }
-
-    @Override
-    public String getName() {
-        return "BrowserAgent";
-    }
-
-    @Override
-    public String getDescription() {
-        return "A browser agent that can control a browser to accomplish tasks ";
-    }
-
-    @Override
-    public List<ToolCallback> getToolCallList() {
-        return List.of();
-    }
-
-    @Override
-    protected boolean think() {
-        // 在开始思考前清空缓存
-        browserCache.invalidateAll();
-        return super.think();
-    }
-
-    @Override
-    protected Message getNextStepMessage() {
-        String nextStepPrompt = """
+    private static final String NEXT_STEP_PROMPT = """
 				What should I do next to achieve my goal?
 
 
@@ -77,14 +47,60 @@ public class BrowserAgent extends ToolCallAgent {
 				2. Don't worry about content visibility or viewport position
 				3. Focus on text-based information extraction
 				4. Process the obtained text data directly
-				5. IMPORTANT: You MUST use at least one tool in your response to make progress!
+				5. When only changes to the interactive elements are listed, the other elements are the same as in the last full list
+				6. IMPORTANT: You MUST use at least one tool in your response to make progress!
 
 
 				Consider both what's visible and what might be beyond the current viewport.
 				Be methodical - remember your progress and what you've learned so far.
 				""";
-        PromptTemplate promptTemplate = new PromptTemplate(nextStepPrompt);
-        return promptTemplate.createMessage(getData());
+
+    public BrowserAgent(
+            ChatClient chatClient,
+            ToolCallbackProvider toolCallbackProvider,
+            ToolCallingManager toolCallingManager) {
+        super(chatClient, toolCallbackProvider, toolCallingManager);
+    }
+
+    @Override
+    public String getName() {
+        return "BrowserAgent";
+    }
+
+    @Override
+    public String getDescription() {
+        return "A browser agent that can control a browser to accomplish tasks ";
+    }
+
+    @Override
+    public List<ToolCallback> getToolCallList() {
+        return List.of();
+    }
+
+    @Override
+    protected boolean think() {
+        // 在开始思考前让当前会话的浏览器状态重新检查页面
+        BrowserState state = getBrowserState();
+        if (state != null) {
+            state.invalidate();
+        }
+        return super.think();
+    }
+
+    @Override
+    protected Message getNextStepMessage() {
+        Map<String, Object> data = getData();
+        // 元素列表只在实际发送给模型的下一步提示中生成，提前构建的提示词不生成
+        BrowserState browserState = getBrowserState();
+        if (browserState != null) {
+            try {
+                data.put("interactive_elements", browserState.getPromptElements());
+            } catch (Exception e) {
+                LOGGER.warn("Failed to get interactive elements: {}", e.getMessage());
+            }
+        }
+        PromptTemplate promptTemplate = new PromptTemplate(NEXT_STEP_PROMPT);
+        return promptTemplate.createMessage(data);
     }
 
     /**
@@ -157,7 +173,7 @@ public class BrowserAgent extends ToolCallAgent {
 				- Use extract_content for information gathering
 				""";
         SystemPromptTemplate promptTemplate = new SystemPromptTemplate(systemPrompt);
-        Message systemMessage = promptTemplate.createMessage(getData());
+        Message systemMessage = promptTemplate.createMessage(getRunData());
         messages.add(systemMessage);
         return systemMessage;
     }
@@ -170,57 +186,50 @@ public class BrowserAgent extends ToolCallAgent {
             data.putAll(parentData);
         }
 
-        Map<String, Object> browserState = browserCache.asMap();
-        LOGGER.info("browserState: {}", browserState);
-
-        // 格式化 URL 和标题信息
-        String urlInfo = String.format("\n   URL: %s\n   Title: %s", browserState.get("url"),
-                browserState.get("title"));
-        data.put("url_placeholder", urlInfo);
-
-        // 格式化标签页信息
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> tabs = (List<Map<String, Object>>) browserState.get("tabs");
-        if (tabs != null && !tabs.isEmpty()) {
-            data.put("tabs_placeholder", String.format("\n   %d tab(s) available", tabs.size()));
-        } else {
-            data.put("tabs_placeholder", "");
+        BrowserState browserState = getBrowserState();
+        data.put("url_placeholder", "");
+        data.put("tabs_placeholder", "");
+        data.put("content_above_placeholder", "");
+        data.put("content_below_placeholder", "");
+        data.put("interactive_elements", "");
+        // 添加结果信息占位符
+        data.put("results_placeholder", "");
+        if (browserState == null) {
+            return data;
         }
 
-        // 格式化滚动信息
-        @SuppressWarnings("unchecked")
-        Map<String, Object> scrollInfo = (Map<String, Object>) browserState.get("scroll_info");
-        if (scrollInfo != null) {
-            Long pixelsAbove = (Long) scrollInfo.get("pixels_above");
-            Long pixelsBelow = (Long) scrollInfo.get("pixels_below");
+        try {
+            // 格式化 URL 和标题信息
+            BrowserState.Page page = browserState.getPage();
+            data.put("url_placeholder", String.format("\n   URL: %s\n   Title: %s", page.url(), page.title()));
 
+            // 格式化标签页信息
+            List<String> tabs = browserState.getTabs();
+            if (!tabs.isEmpty()) {
+                data.put("tabs_placeholder", String.format("\n   %d tab(s) available", tabs.size()));
+            }
+
+            // 格式化滚动信息
             data.put("content_above_placeholder",
-                    pixelsAbove > 0 ? String.format(" (%d pixels)", pixelsAbove) : "");
+                    page.pixelsAbove() > 0 ? String.format(" (%d pixels)", page.pixelsAbove()) : "");
             data.put("content_below_placeholder",
-                    pixelsBelow > 0 ? String.format(" (%d pixels)", pixelsBelow) : "");
-        }
-
-        // 添加交互元素信息
-        String interactiveElements = (String) browserState.get("interactive_elements");
-        if (interactiveElements != null && !interactiveElements.isEmpty()) {
-            data.put("interactive_elements", interactiveElements);
-        } else {
-            data.put("interactive_elements", "");
-        }
-
-        // 添加结果信息占位符
-        data.put("results_placeholder", "");
-
-        // 添加帮助信息
-        data.put("help", browserState.get("help"));
-
-        // 保存截图信息（如果需要）
-        String screenshot = (String) browserState.get("screenshot");
-        if (screenshot != null) {
-            data.put("screenshot", screenshot);
+                    page.pixelsBelow() > 0 ? String.format(" (%d pixels)", page.pixelsBelow()) : "");
+
+            // 保存截图信息（开启截图时）
+            String screenshot = browserState.getScreenshot();
+            if (screenshot != null) {
+                data.put("screenshot", screenshot);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to get browser state: {}", e.getMessage());
+            data.put("url_placeholder", "Failed to get browser state: " + e.getMessage());
         }
 
         return data;
     }
+
+    private BrowserState getBrowserState() {
+        return (BrowserState) browserCache.getIfPresent(BrowserState.key(getConversationId()));
+    }
 }
 
@@ -128,7 +128,7 @@ public class FileAgent extends ToolCallAgent {
 				""";
 
 		SystemPromptTemplate promptTemplate = new SystemPromptTemplate(systemPrompt);
-		Message systemMessage = promptTemplate.createMessage(getData());
+		Message systemMessage = promptTemplate.createMessage(getRunData());
 		messages.add(systemMessage);
 		return systemMessage;
 	}
@@ -142,8 +142,12 @@ public class FileAgent extends ToolCallAgent {
 		}
 		data.put("working_directory", CodeUtils.WORKING_DIR);
 
-		// 获取当前文件操作状态
-		Map<String, Object> state = fileStateCache.asMap();
+		// 获取当前会话的文件操作状态
+		@SuppressWarnings("unchecked")
+		Map<String, Object> state = (Map<String, Object>) fileStateCache.getIfPresent(getConversationId());
+		if (state == null) {
+			state = Map.of();
+		}
         data.put("last_operation", state.get("operation"));
         data.put("operation_result", state.get("result"));
         return data;
@@ -156,6 +160,6 @@ public class FileAgent extends ToolCallAgent {
 		Map<String, Object> state = new HashMap<>();
 		state.put("operation", operation);
 		state.put("result", result);
-		fileStateCache.putAll(state);
+		fileStateCache.put(getConversationId(), state);
 	}
 }
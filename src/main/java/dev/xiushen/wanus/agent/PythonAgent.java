@@ -134,7 +134,7 @@ public class PythonAgent extends ToolCallAgent {
 				""";
 
 		SystemPromptTemplate promptTemplate = new SystemPromptTemplate(systemPrompt);
-		Message systemMessage = promptTemplate.createMessage(getData());
+		Message systemMessage = promptTemplate.createMessage(getRunData());
 		messages.add(systemMessage);
 		return systemMessage;
 	}
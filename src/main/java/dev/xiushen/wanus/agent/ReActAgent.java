@@ -15,14 +15,23 @@
  */
 package dev.xiushen.wanus.agent;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.messages.Message;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public abstract class ReActAgent extends BaseAgent {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(ReActAgent.class);
+
+	private Executor pipelineExecutor;
+
 	/**
 	 * 执行一个完整的思考-行动步骤
+	 * 		开启流水线模式后，行动执行期间在另一个线程上准备下一轮思考中与行动结果无关的部分
 	 * @return 如果不需要行动则返回思考完成的消息，否则返回行动的执行结果
 	 */
 	@Override
@@ -31,7 +40,35 @@ public abstract class ReActAgent extends BaseAgent {
 		if (!shouldAct) {
 			return "Thinking complete - no action needed";
 		}
-		return act();
+		if (pipelineExecutor == null) {
+			return act();
+		}
+
+		CompletableFuture<Void> preparation = CompletableFuture.runAsync(this::prepareThink, pipelineExecutor);
+		try {
+			return act();
+		} finally {
+			try {
+				// 等待准备完成，保证下一轮思考能看到准备好的内容
+				preparation.join();
+			} catch (Exception e) {
+				LOGGER.warn("Failed to prepare next think for {}: {}", getName(), e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * 设置流水线模式使用的线程池，为null时按思考-行动顺序执行
+	 */
+	public void setPipelineExecutor(Executor pipelineExecutor) {
+		this.pipelineExecutor = pipelineExecutor;
+	}
+
+	/**
+	 * 在行动执行期间准备下一轮思考，只能准备不依赖行动结果的内容
+	 * 		默认不做任何准备，子类按需覆盖
+	 */
+	protected void prepareThink() {
 	}
 
 	/**
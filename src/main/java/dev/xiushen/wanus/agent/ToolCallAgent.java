@@ -16,6 +16,7 @@
 package dev.xiushen.wanus.agent;
 
 import dev.xiushen.wanus.common.ChatMemories;
+import dev.xiushen.wanus.common.ToolCallContext;
 import dev.xiushen.wanus.tool.SummaryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +28,7 @@ import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.SystemPromptTemplate;
+import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.model.tool.ToolExecutionResult;
@@ -47,12 +48,19 @@ public class ToolCallAgent extends ReActAgent {
 
 	private static final Integer REPLY_MAX = 3;
 
+	private static final int MEMORY_RETRIEVE_SIZE = 100;
+
 	private final ChatClient chatClient;
 	private final ToolCallbackProvider toolCallbackProvider;
 	private final ToolCallingManager toolCallingManager;
 
 	private ChatResponse response;
 	private Prompt userPrompt;
+	private volatile PreparedThink preparedThink;
+	/**
+	 * 每次run()设置新的上下文数据时加一，提前准备的思考只在同一次run()中使用
+	 */
+	private volatile long dataGeneration;
 
     public ToolCallAgent(
 			ChatClient chatClient,
@@ -93,6 +101,15 @@ public class ToolCallAgent extends ReActAgent {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * 按名称排序的工具列表，工具定义也属于提示词前缀，顺序需要保持稳定
+	 */
+	private List<ToolCallback> getSortedToolCallList() {
+		return getToolCallList().stream()
+				.sorted(Comparator.comparing(callback -> callback.getToolDefinition().name()))
+				.collect(Collectors.toList());
+	}
+
 	@Override
 	protected boolean think() {
 		int retry = 0;
@@ -100,14 +117,60 @@ public class ToolCallAgent extends ReActAgent {
 	}
 
 	/**
-	 * 添加工具调用相关的思考提示 实现说明： 1. 首先调用父类的addThinkPrompt添加基础提示 2. 构建特定的工具调用相关提示，包括： - 当前计划状态 -
-	 * 当前步骤信息 - 执行指南 - 完成协议 3. 返回包含完整提示信息的系统消息
-	 * @param messages 当前的消息列表
-	 * @return 添加了工具调用相关提示的系统消息
+	 * 系统提示、步骤上下文和工具列表在一次run()中不随行动结果变化，可以在行动执行期间提前构建
+	 * 		历史消息和下一步提示依赖行动结果，在思考时再获取
+	 * 		准备在另一个线程上与工具并发执行，只能使用getRunData()，不能读取浏览器等工具正在使用的状态
 	 */
 	@Override
-	protected Message addThinkPrompt(List<Message> messages) {
-		super.addThinkPrompt(messages);
+	protected void prepareThink() {
+		preparedThink = buildPreparedThink();
+	}
+
+	@Override
+	protected void setData(Map<String, Object> data) {
+		super.setData(data);
+		dataGeneration++;
+	}
+
+	/**
+	 * run()传入的上下文数据，不包含子类在getData()中附加的运行状态（例如浏览器页面、上一次的执行结果）
+	 * 		系统提示和步骤上下文只使用这部分数据，可以在行动执行期间安全地提前构建
+	 */
+	protected Map<String, Object> getRunData() {
+		return super.getData();
+	}
+
+	private Map<String, Object> getToolContext() {
+		Map<String, Object> toolContext = new HashMap<>();
+		toolContext.put(ToolCallContext.CONVERSATION_ID, getConversationId());
+		Map<String, Object> data = getRunData();
+		if (data != null && data.get("stepText") != null) {
+			toolContext.put(ToolCallContext.STEP_TEXT, data.get("stepText"));
+		}
+		return toolContext;
+	}
+
+	private PreparedThink takePreparedThink() {
+		PreparedThink prepared = preparedThink;
+		preparedThink = null;
+		// 上一次run()遗留的准备结果基于旧的上下文数据，不能使用
+		return prepared != null && prepared.generation() == dataGeneration ? prepared : buildPreparedThink();
+	}
+
+	private PreparedThink buildPreparedThink() {
+		long generation = dataGeneration;
+		List<Message> prefix = new ArrayList<>();
+		addThinkPrompt(prefix);
+		return new PreparedThink(generation, prefix, getStepContextMessage(), getSortedToolCallList());
+	}
+
+	/**
+	 * 当前步骤的上下文提示，包括计划状态、当前步骤、执行指南和完成协议
+	 * 		只使用getRunData()，在一次run()中不随行动结果变化，因此与系统提示一起提前构建
+	 * 		计划状态在不同步骤的run()之间变化，作为用户消息放在历史消息之后，不放在系统提示中，保证提示词前缀在步骤之间保持不变
+	 * @return 当前步骤上下文的用户消息
+	 */
+	protected Message getStepContextMessage() {
 		String stepPrompt = """
 				CURRENT PLAN STATUS:
 				{planStatus}
@@ -142,10 +205,8 @@ public class ToolCallAgent extends ReActAgent {
 				- Provide comprehensive summary before moving forward, including: all facts, data, and metrics
 				""";
 
-		SystemPromptTemplate promptTemplate = new SystemPromptTemplate(stepPrompt);
-		Message systemMessage = promptTemplate.createMessage(getData());
-		messages.add(systemMessage);
-		return systemMessage;
+		PromptTemplate promptTemplate = new PromptTemplate(stepPrompt);
+		return promptTemplate.createMessage(getRunData());
 	}
 
 	/**
@@ -169,20 +230,31 @@ public class ToolCallAgent extends ReActAgent {
 	protected String act() {
 		try {
 			List<String> results = new ArrayList<>();
+			for (ToolCall toolCall : response.getResult().getOutput().getToolCalls()) {
+				getListener().onToolCall(getName(), toolCall.name(), toolCall.arguments());
+			}
+			// 同一轮的多个工具调用由工具调用管理器并发执行，响应按调用顺序返回
 			ToolExecutionResult toolExecutionResult = toolCallingManager.executeToolCalls(userPrompt, response);
 			ToolResponseMessage toolResponseMessage = (ToolResponseMessage) toolExecutionResult.conversationHistory()
 				.get(toolExecutionResult.conversationHistory().size() - 1);
-			String text = toolResponseMessage.getResponses().getFirst().responseData();
 			ChatMemories.memory.add(getConversationId(), toolResponseMessage);
-			results.add(text);
-			LOGGER.info("🔧 Tool {}'s executing result: {}", getName(), text);
+			for (ToolResponseMessage.ToolResponse toolResponse : toolResponseMessage.getResponses()) {
+				String text = toolResponse.responseData();
+				results.add(text);
+				getListener().onToolResult(getName(), toolResponse.name(), text);
+				LOGGER.info("🔧 Tool {}'s executing result: {}", toolResponse.name(), text);
+			}
 			return String.join("\n\n", results);
 		} catch (Exception e) {
-			ToolCall toolCall = response.getResult().getOutput().getToolCalls().get(0);
-			ToolResponseMessage.ToolResponse toolResponse = new ToolResponseMessage.ToolResponse(toolCall.id(),
-					toolCall.name(), "Error: " + e.getMessage());
-			ToolResponseMessage toolResponseMessage = new ToolResponseMessage(List.of(toolResponse), Map.of());
-			ChatMemories.memory.add(getConversationId(), toolResponseMessage);
+			// 每个工具调用都需要对应的响应，否则下一轮请求会被模型拒绝
+			List<ToolResponseMessage.ToolResponse> toolResponses = new ArrayList<>();
+			for (ToolCall toolCall : response.getResult().getOutput().getToolCalls()) {
+				ToolResponseMessage.ToolResponse toolResponse = new ToolResponseMessage.ToolResponse(toolCall.id(),
+						toolCall.name(), "Error: " + e.getMessage());
+				toolResponses.add(toolResponse);
+				getListener().onToolResult(getName(), toolCall.name(), toolResponse.responseData());
+			}
+			ChatMemories.memory.add(getConversationId(), new ToolResponseMessage(toolResponses, Map.of()));
 			LOGGER.error(e.getMessage());
 			return "Error: " + e.getMessage();
 		}
@@ -196,11 +268,19 @@ public class ToolCallAgent extends ReActAgent {
 	 */
 	private boolean _think(int retry) {
 		try {
-			List<Message> messages = new ArrayList<>();
-			addThinkPrompt(messages);
+			// 提示词按变化频率排列：静态的系统提示、历史消息、本轮的步骤上下文和下一步提示
+			// 前缀在多轮之间逐字节不变，可以命中服务端的提示词缓存
+			PreparedThink prepared = takePreparedThink();
+			List<Message> messages = new ArrayList<>(prepared.prefix());
+			messages.addAll(ChatMemories.memory.get(getConversationId(), MEMORY_RETRIEVE_SIZE));
+			messages.add(prepared.stepContext());
 
 			// calltool with mem
-			ChatOptions chatOptions = ToolCallingChatOptions.builder().internalToolExecutionEnabled(false).build();
+			// 会话ID和当前步骤通过ToolContext传给工具，不会发送给模型
+			ChatOptions chatOptions = ToolCallingChatOptions.builder()
+					.internalToolExecutionEnabled(false)
+					.toolContext(getToolContext())
+					.build();
 			Message nextStepMessage = getNextStepMessage();
 			messages.add(nextStepMessage);
 
@@ -210,8 +290,9 @@ public class ToolCallAgent extends ReActAgent {
 			response = chatClient
 					.prompt(userPrompt)
 					.advisors(memoryAdvisor -> memoryAdvisor.param(CHAT_MEMORY_CONVERSATION_ID_KEY, getConversationId())
-							.param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 100))
-					.tools(getToolCallList())
+							// 历史消息已经放入提示词，记忆advisor只负责保存本轮对话
+							.param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 0))
+					.tools(prepared.tools())
 					.call()
 					.chatResponse();
 
@@ -237,4 +318,8 @@ public class ToolCallAgent extends ReActAgent {
 			return false;
 		}
 	}
+
+	private record PreparedThink(long generation, List<Message> prefix, Message stepContext,
+			List<ToolCallback> tools) {
+	}
 }
@@ -0,0 +1,331 @@
+package dev.xiushen.wanus.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import dev.xiushen.wanus.utils.TokenUtils;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界的会话记忆
+ *      每个会话按估算的token数设置预算，超出时从最早的消息开始丢弃，丢弃后开头失去对应工具调用的工具响应也一并丢弃
+ *      长时间未访问的会话过期清除，会话数超过上限时按最近最少使用淘汰
+ *      设置了压缩器时，会话超过压缩阈值后把最近几轮之前的消息交给压缩器处理，最近几轮保持原样
+ *      压缩在会话锁外进行，完成后会话开头未变化时才替换为压缩结果
+ *      统计保留的会话数、消息数、字节数、token数以及压缩前后的token数
+ */
+public class BoundedChatMemory implements ChatMemory {
+
+    private final String name;
+    private volatile int maxTokensPerConversation;
+    private volatile Cache<String, Conversation> conversations;
+
+    private final AtomicLong retainedMessages = new AtomicLong();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong retainedTokens = new AtomicLong();
+    private final AtomicLong evictedMessages = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong compactedTokensBefore = new AtomicLong();
+    private final AtomicLong compactedTokensAfter = new AtomicLong();
+
+    private volatile MessageCompactor compactor;
+    private volatile int compactionThresholdTokens;
+    private volatile int keepRecentTurns;
+
+    /**
+     * @param name 记忆名称，用于统计
+     * @param maxTokensPerConversation 单个会话保留的token预算
+     * @param maxConversations 保留的会话数上限
+     * @param idleTtl 会话未被访问的过期时间
+     */
+    public BoundedChatMemory(String name, int maxTokensPerConversation, long maxConversations, Duration idleTtl) {
+        this.name = name;
+        this.maxTokensPerConversation = maxTokensPerConversation;
+        this.conversations = newCache(maxConversations, idleTtl);
+    }
+
+    private Cache<String, Conversation> newCache(long maxConversations, Duration idleTtl) {
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxConversations)
+                .expireAfterAccess(idleTtl)
+                .removalListener((RemovalNotification<String, Conversation> notification) -> release(notification.getValue()))
+                .build();
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        while (true) {
+            Conversation conversation = conversations.asMap().computeIfAbsent(conversationId, id -> new Conversation());
+            Compaction compaction;
+            synchronized (conversation) {
+                // 会话刚好被淘汰时重新创建
+                if (conversation.released) {
+                    continue;
+                }
+                for (Message message : messages) {
+                    Entry entry = new Entry(message, TokenUtils.estimateTokens(message), TokenUtils.byteSize(message), false);
+                    conversation.entries.addLast(entry);
+                    retain(conversation, entry);
+                }
+                compaction = prepareCompaction(conversation);
+                if (compaction == null) {
+                    trim(conversation);
+                    return;
+                }
+                conversation.compacting = true;
+            }
+            compact(conversation, compaction);
+            return;
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        Conversation conversation = conversations.getIfPresent(conversationId);
+        if (conversation == null || lastN <= 0) {
+            return List.of();
+        }
+        List<Message> messages = new ArrayList<>();
+        synchronized (conversation) {
+            int skip = Math.max(0, conversation.entries.size() - lastN);
+            for (Entry entry : conversation.entries) {
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                // 截取后开头的工具响应没有对应的工具调用，发给模型会报错
+                if (messages.isEmpty() && entry.message instanceof ToolResponseMessage) {
+                    continue;
+                }
+                messages.add(entry.message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 开启记忆压缩
+     * @param compactor 压缩器
+     * @param compactionThresholdTokens 会话超过该token数后压缩
+     * @param keepRecentTurns 保持原样的最近轮数，一轮从一条用户消息开始
+     */
+    public void setCompaction(MessageCompactor compactor, int compactionThresholdTokens, int keepRecentTurns) {
+        this.compactionThresholdTokens = compactionThresholdTokens;
+        this.keepRecentTurns = Math.max(1, keepRecentTurns);
+        this.compactor = compactor;
+    }
+
+    /**
+     * 设置会话的token预算、会话数上限和过期时间，应用启动时按配置调用，已有的会话转移到新的缓存
+     */
+    public synchronized void setLimits(int maxTokensPerConversation, long maxConversations, Duration idleTtl) {
+        Cache<String, Conversation> previous = conversations;
+        Cache<String, Conversation> next = newCache(maxConversations, idleTtl);
+        next.putAll(previous.asMap());
+        this.maxTokensPerConversation = maxTokensPerConversation;
+        this.conversations = next;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        conversations.invalidate(conversationId);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Stats getStats() {
+        long tokensBefore = compactedTokensBefore.get();
+        double compressionRatio = tokensBefore > 0 ? (double) compactedTokensAfter.get() / tokensBefore : 1.0;
+        return new Stats(name, conversations.size(), retainedMessages.get(), retainedBytes.get(),
+                retainedTokens.get(), evictedMessages.get(), compactions.get(), tokensBefore,
+                compactedTokensAfter.get(), compressionRatio);
+    }
+
+    /**
+     * 在会话锁内选出待压缩的消息，同一会话同时只有一次压缩
+     */
+    private Compaction prepareCompaction(Conversation conversation) {
+        MessageCompactor messageCompactor = compactor;
+        if (messageCompactor == null || conversation.compacting || conversation.tokens <= compactionThresholdTokens) {
+            return null;
+        }
+
+        // 已压缩的消息总是位于会话开头，待压缩的是其后到最近几轮之前的消息
+        List<Entry> entries = new ArrayList<>(conversation.entries);
+        int start = 0;
+        while (start < entries.size() && entries.get(start).compacted) {
+            start++;
+        }
+        int end = entries.size();
+        int turns = 0;
+        while (end > start) {
+            if (entries.get(end - 1).message instanceof UserMessage && ++turns == keepRecentTurns) {
+                end--;
+                break;
+            }
+            end--;
+        }
+        if (turns < keepRecentTurns || end <= start) {
+            return null;
+        }
+        return new Compaction(messageCompactor, List.copyOf(entries.subList(0, end)), start);
+    }
+
+    /**
+     * 压缩器可能调用模型，在会话锁外执行，避免阻塞同一会话的读写
+     *      压缩期间待压缩的消息被淘汰或会话被清除时放弃本次结果
+     */
+    private void compact(Conversation conversation, Compaction compaction) {
+        List<Entry> older = compaction.prefix().subList(compaction.start(), compaction.prefix().size());
+        List<Message> olderMessages = new ArrayList<>(older.size());
+        long tokensBefore = 0;
+        for (Entry entry : older) {
+            olderMessages.add(entry.message);
+            tokensBefore += entry.tokens;
+        }
+
+        List<Message> summarized = null;
+        try {
+            summarized = compaction.compactor().compact(olderMessages);
+        } finally {
+            synchronized (conversation) {
+                conversation.compacting = false;
+                if (summarized != null && !conversation.released && startsWith(conversation, compaction.prefix())) {
+                    replace(conversation, compaction, summarized, tokensBefore);
+                }
+                trim(conversation);
+            }
+        }
+    }
+
+    private static boolean startsWith(Conversation conversation, List<Entry> prefix) {
+        if (conversation.entries.size() < prefix.size()) {
+            return false;
+        }
+        Iterator<Entry> iterator = conversation.entries.iterator();
+        for (Entry entry : prefix) {
+            if (iterator.next() != entry) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void replace(Conversation conversation, Compaction compaction, List<Message> summarized, long tokensBefore) {
+        List<Entry> entries = new ArrayList<>(conversation.entries);
+        int start = compaction.start();
+        int end = compaction.prefix().size();
+        for (int i = start; i < end; i++) {
+            release(entries.get(i));
+        }
+        List<Entry> replaced = new ArrayList<>(entries.subList(0, start));
+        long tokensAfter = 0;
+        for (Message message : summarized) {
+            Entry entry = new Entry(message, TokenUtils.estimateTokens(message), TokenUtils.byteSize(message), true);
+            replaced.add(entry);
+            tokensAfter += entry.tokens;
+        }
+        replaced.addAll(entries.subList(end, entries.size()));
+
+        conversation.entries.clear();
+        conversation.tokens = 0;
+        for (Entry entry : replaced) {
+            conversation.entries.addLast(entry);
+            conversation.tokens += entry.tokens;
+        }
+        for (int i = start; i < start + summarized.size(); i++) {
+            retain(replaced.get(i));
+        }
+
+        compactions.incrementAndGet();
+        compactedTokensBefore.addAndGet(tokensBefore);
+        compactedTokensAfter.addAndGet(tokensAfter);
+    }
+
+    private void retain(Conversation conversation, Entry entry) {
+        conversation.tokens += entry.tokens;
+        retain(entry);
+    }
+
+    private void retain(Entry entry) {
+        retainedMessages.incrementAndGet();
+        retainedBytes.addAndGet(entry.bytes);
+        retainedTokens.addAndGet(entry.tokens);
+    }
+
+    private void release(Entry entry) {
+        retainedMessages.decrementAndGet();
+        retainedBytes.addAndGet(-entry.bytes);
+        retainedTokens.addAndGet(-entry.tokens);
+    }
+
+    private void trim(Conversation conversation) {
+        // 至少保留最新的一条消息
+        while (conversation.tokens > maxTokensPerConversation && conversation.entries.size() > 1) {
+            evict(conversation);
+        }
+        while (conversation.entries.size() > 1 && conversation.entries.peekFirst().message instanceof ToolResponseMessage) {
+            evict(conversation);
+        }
+    }
+
+    private void evict(Conversation conversation) {
+        Entry entry = conversation.entries.removeFirst();
+        conversation.tokens -= entry.tokens;
+        release(entry);
+        evictedMessages.incrementAndGet();
+    }
+
+    private void release(Conversation conversation) {
+        if (conversation == null) {
+            return;
+        }
+        synchronized (conversation) {
+            conversation.released = true;
+            while (!conversation.entries.isEmpty()) {
+                evict(conversation);
+            }
+        }
+    }
+
+    private static class Conversation {
+        private final Deque<Entry> entries = new ArrayDeque<>();
+        private long tokens;
+        private boolean released;
+        private boolean compacting;
+    }
+
+    /**
+     * @param compacted 是否为压缩产生的消息，不再重复压缩
+     */
+    private record Entry(Message message, int tokens, int bytes, boolean compacted) {
+    }
+
+    /**
+     * @param prefix 选出待压缩消息时会话开头到待压缩部分结尾的消息，用于确认压缩期间这部分没有变化
+     * @param start 待压缩部分在prefix中的起始位置
+     */
+    private record Compaction(MessageCompactor compactor, List<Entry> prefix, int start) {
+    }
+
+    /**
+     * @param compressionRatio 压缩后与压缩前token数之比
+     */
+    public record Stats(String name, long conversations, long messages, long bytes, long tokens, long evictedMessages,
+                        long compactions, long compactedTokensBefore, long compactedTokensAfter,
+                        double compressionRatio) {
+    }
+}
@@ -0,0 +1,249 @@
+package dev.xiushen.wanus.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Chrome磁盘缓存管理
+ *      缓存目录分成固定数量的槽位，每个Chrome进程启动时租用一个空闲槽位作为--disk-cache-dir，进程关闭后归还，
+ *      Chrome不支持多个进程同时使用同一个缓存目录，槽位保证同一时刻只有一个进程使用，重建或回收后的进程沿用上一个进程的缓存
+ *      每个进程使用一个全新的用户数据目录，从配置的模板目录复制，Cookie等会话数据不会在进程之间保留
+ *      所有槽位的总大小超过上限时，按最近使用时间清空最久未使用的空闲槽位
+ */
+public class BrowserCacheManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrowserCacheManager.class);
+
+    private static final String SLOT_PREFIX = "slot-";
+
+    private final Path directory;
+    private final Path profileTemplate;
+    private final long maxBytes;
+    private final boolean[] leased;
+
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong coldStarts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param directory 缓存目录
+     * @param slots 槽位数量，即可以同时使用持久缓存的Chrome进程数量
+     * @param maxBytes 所有槽位的总大小上限
+     * @param profileTemplate 用户数据目录模板，为null或不存在时使用空目录
+     */
+    public BrowserCacheManager(Path directory, int slots, long maxBytes, Path profileTemplate) {
+        this.directory = directory;
+        this.profileTemplate = profileTemplate;
+        this.maxBytes = maxBytes;
+        this.leased = new boolean[Math.max(1, slots)];
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create browser cache directory " + directory, e);
+        }
+    }
+
+    /**
+     * 租用一个空闲槽位，没有空闲槽位时返回null，调用方不使用持久缓存
+     */
+    public Lease acquire() {
+        int slot = -1;
+        synchronized (leased) {
+            for (int i = 0; i < leased.length; i++) {
+                if (!leased[i]) {
+                    leased[i] = true;
+                    slot = i;
+                    break;
+                }
+            }
+        }
+        if (slot < 0) {
+            return null;
+        }
+
+        Path cacheDirectory = directory.resolve(SLOT_PREFIX + slot);
+        try {
+            if (!Files.isDirectory(cacheDirectory) || isEmpty(cacheDirectory)) {
+                coldStarts.incrementAndGet();
+            }
+            Files.createDirectories(cacheDirectory);
+            Path userDataDirectory = Files.createTempDirectory("wanus-chrome-profile-");
+            if (profileTemplate != null && Files.isDirectory(profileTemplate)) {
+                copy(profileTemplate, userDataDirectory);
+            }
+            leases.incrementAndGet();
+            return new Lease(slot, cacheDirectory, userDataDirectory, maxBytes / leased.length);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to prepare browser cache slot {}: {}", slot, e.getMessage());
+            synchronized (leased) {
+                leased[slot] = false;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Chrome进程关闭后归还槽位，删除临时的用户数据目录，并按总大小上限清理
+     */
+    public void release(Lease lease) {
+        if (lease == null) {
+            return;
+        }
+        delete(lease.userDataDirectory());
+        try {
+            Files.setLastModifiedTime(lease.cacheDirectory(), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            LOGGER.debug("Failed to touch browser cache slot {}: {}", lease.slot(), e.getMessage());
+        }
+        synchronized (leased) {
+            leased[lease.slot()] = false;
+        }
+        cleanup();
+    }
+
+    /**
+     * 总大小超过上限时按最近使用时间从旧到新清空空闲槽位
+     */
+    private void cleanup() {
+        List<Slot> slots = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < leased.length; i++) {
+            Path cacheDirectory = directory.resolve(SLOT_PREFIX + i);
+            if (!Files.isDirectory(cacheDirectory)) {
+                continue;
+            }
+            long size = size(cacheDirectory);
+            total += size;
+            slots.add(new Slot(i, cacheDirectory, size, lastModified(cacheDirectory)));
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+
+        slots.sort(Comparator.comparingLong(Slot::lastUsed));
+        for (Slot slot : slots) {
+            if (total <= maxBytes) {
+                break;
+            }
+            synchronized (leased) {
+                if (leased[slot.index()]) {
+                    continue;
+                }
+                // 清理期间占用槽位，避免被重新租用
+                leased[slot.index()] = true;
+            }
+            try {
+                delete(slot.directory());
+                total -= slot.size();
+                evictions.incrementAndGet();
+                LOGGER.info("Evicted browser cache slot {} ({} MB)", slot.index(), slot.size() / 1024 / 1024);
+            } finally {
+                synchronized (leased) {
+                    leased[slot.index()] = false;
+                }
+            }
+        }
+    }
+
+    public Stats getStats() {
+        int inUse = 0;
+        synchronized (leased) {
+            for (boolean slot : leased) {
+                if (slot) {
+                    inUse++;
+                }
+            }
+        }
+        return new Stats(leased.length, inUse, size(directory), maxBytes, leases.get(), coldStarts.get(),
+                evictions.get());
+    }
+
+    private static boolean isEmpty(Path path) throws IOException {
+        try (Stream<Path> entries = Files.list(path)) {
+            return entries.findAny().isEmpty();
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long size(Path path) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> {
+                try {
+                    return Files.size(file);
+                } catch (IOException e) {
+                    return 0;
+                }
+            }).sum();
+        } catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
+    }
+
+    private static void copy(Path source, Path target) throws IOException {
+        Files.walkFileTree(source, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.copy(file, target.resolve(source.relativize(file).toString()), StandardCopyOption.REPLACE_EXISTING);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void delete(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    LOGGER.debug("Failed to delete {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Failed to delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    private record Slot(int index, Path directory, long size, long lastUsed) {
+    }
+
+    /**
+     * 一个Chrome进程租用的缓存槽位
+     * @param cacheSizeBytes 传给Chrome的--disk-cache-size
+     */
+    public record Lease(int slot, Path cacheDirectory, Path userDataDirectory, long cacheSizeBytes) {
+    }
+
+    /**
+     * @param coldStarts 租用时槽位为空、需要从网络重新下载的次数
+     */
+    public record Stats(int slots, int inUse, long sizeBytes, long maxBytes, long leases, long coldStarts,
+                        long evictions) {
+    }
+}
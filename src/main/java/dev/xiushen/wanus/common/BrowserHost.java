@@ -0,0 +1,271 @@
+package dev.xiushen.wanus.common;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeDriverService;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.chromium.HasCdp;
+import org.openqa.selenium.remote.CommandInfo;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.support.decorators.Decorated;
+import org.openqa.selenium.support.decorators.WebDriverDecorator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * 一个Chrome进程，通过CDP在其中创建多个相互隔离的浏览器上下文
+ *      每个上下文相当于一个无痕窗口，Cookie、存储和缓存互不可见，创建上下文只需要几毫秒，不需要启动新的进程
+ *      所有WebDriver会话共用一个chromedriver服务，每个上下文通过debuggerAddress连接到同一个Chrome，
+ *      各自绑定到自己上下文的标签页，不同上下文的操作可以并发执行
+ */
+public final class BrowserHost {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrowserHost.class);
+
+    private final ChromeDriverService service;
+    private final ChromeDriver primary;
+    private final String debuggerAddress;
+    private final Consumer<WebDriver> targetInitializer;
+    private final ReentrantLock cdpLock = new ReentrantLock();
+    private final AtomicInteger contexts = new AtomicInteger();
+
+    /**
+     * @param targetInitializer 每个上下文打开新的标签页后调用，例如设置网络拦截规则
+     */
+    public BrowserHost(ChromeOptions options, Consumer<WebDriver> targetInitializer) throws IOException {
+        this.targetInitializer = targetInitializer;
+        this.service = ChromeDriverService.createDefaultService();
+        this.service.start();
+        try {
+            this.primary = new ChromeDriver(service, options);
+        } catch (RuntimeException e) {
+            service.stop();
+            throw e;
+        }
+        Object chromeOptions = primary.getCapabilities().getCapability("goog:chromeOptions");
+        if (!(chromeOptions instanceof Map<?, ?> optionsMap) || optionsMap.get("debuggerAddress") == null) {
+            shutdown();
+            throw new IllegalStateException("Chrome did not report a debugger address");
+        }
+        this.debuggerAddress = optionsMap.get("debuggerAddress").toString();
+        LOGGER.info("Started browser host at {}", debuggerAddress);
+    }
+
+    /**
+     * 主WebDriver，用于记录进程和执行CDP命令
+     */
+    public ChromeDriver getPrimary() {
+        return primary;
+    }
+
+    /**
+     * 当前已创建的上下文数量
+     */
+    public int getContextCount() {
+        return contexts.get();
+    }
+
+    public boolean isAlive() {
+        try {
+            primary.getWindowHandle();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建一个新的隔离上下文会话
+     */
+    public BrowserSession newContext() {
+        contexts.incrementAndGet();
+        try {
+            return new ContextSession();
+        } catch (RuntimeException e) {
+            contexts.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * 关闭Chrome进程和chromedriver服务
+     */
+    public void close() {
+        shutdown();
+    }
+
+    private void shutdown() {
+        try {
+            primary.quit();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to quit browser host {}: {}", debuggerAddress, e.getMessage());
+        }
+        service.stop();
+    }
+
+    private Map<String, Object> cdp(String command, Map<String, Object> parameters) {
+        cdpLock.lock();
+        try {
+            return primary.executeCdpCommand(command, parameters);
+        } finally {
+            cdpLock.unlock();
+        }
+    }
+
+    /**
+     * 属于指定上下文的页面目标ID
+     */
+    private Set<String> pageTargets(String browserContextId) {
+        Set<String> targets = new HashSet<>();
+        Object targetInfos = cdp("Target.getTargets", Map.of()).get("targetInfos");
+        if (targetInfos instanceof List<?> infos) {
+            for (Object info : infos) {
+                if (info instanceof Map<?, ?> target
+                        && "page".equals(target.get("type"))
+                        && browserContextId.equals(target.get("browserContextId"))) {
+                    targets.add(String.valueOf(target.get("targetId")));
+                }
+            }
+        }
+        return targets;
+    }
+
+    private class ContextSession implements BrowserSession {
+        private final CdpRemoteWebDriver attached;
+        private final WebDriver driver;
+        private volatile String browserContextId;
+
+        ContextSession() {
+            ChromeOptions options = new ChromeOptions();
+            options.setExperimentalOption("debuggerAddress", debuggerAddress);
+            // 直接连接chromedriver服务，退出时不会像ChromeDriver那样停止其他会话共用的服务
+            this.attached = new CdpRemoteWebDriver(service.getUrl(), options);
+            try {
+                openContext();
+            } catch (RuntimeException e) {
+                attached.quit();
+                throw e;
+            }
+            // 连接到同一个Chrome的会话能看到所有上下文的标签页，只保留自己上下文的标签页
+            this.driver = new WebDriverDecorator<WebDriver>() {
+                @Override
+                public Object call(Decorated<?> target, Method method, Object[] args) throws Throwable {
+                    if (target.getOriginal() == attached && "getWindowHandles".equals(method.getName())) {
+                        return windowHandles();
+                    }
+                    return super.call(target, method, args);
+                }
+            }.decorate(attached);
+        }
+
+        private void openContext() {
+            String contextId = String.valueOf(cdp("Target.createBrowserContext", Map.of("disposeOnDetach", false))
+                    .get("browserContextId"));
+            openPage(contextId);
+            this.browserContextId = contextId;
+        }
+
+        /**
+         * 在上下文中打开一个空白标签页并切换过去
+         */
+        private String openPage(String contextId) {
+            String targetId = String.valueOf(cdp("Target.createTarget",
+                    Map.of("url", "about:blank", "browserContextId", contextId)).get("targetId"));
+            attached.switchTo().window(targetId);
+            targetInitializer.accept(attached);
+            return targetId;
+        }
+
+        private void disposeContext(String contextId) {
+            try {
+                cdp("Target.disposeBrowserContext", Map.of("browserContextId", contextId));
+            } catch (Exception e) {
+                LOGGER.warn("Failed to dispose browser context {}: {}", contextId, e.getMessage());
+            }
+        }
+
+        private Set<String> windowHandles() {
+            Set<String> handles = attached.getWindowHandles();
+            Set<String> targets = pageTargets(browserContextId);
+            Set<String> filtered = new LinkedHashSet<>();
+            for (String handle : handles) {
+                if (targets.contains(handle)) {
+                    filtered.add(handle);
+                }
+            }
+            // 不能退回全部句柄，否则切换或关闭标签页时可能操作到其他会话的上下文
+            // 上下文中的标签页都已关闭时重新打开一个空白页
+            if (filtered.isEmpty()) {
+                filtered.add(openPage(browserContextId));
+            }
+            return filtered;
+        }
+
+        @Override
+        public WebDriver getDriver() {
+            return driver;
+        }
+
+        @Override
+        public boolean isActive() {
+            try {
+                attached.getWindowHandle();
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        /**
+         * 换成一个全新的上下文，旧上下文连同其中的标签页、Cookie和存储一起销毁
+         */
+        @Override
+        public void reset() {
+            String previous = browserContextId;
+            openContext();
+            disposeContext(previous);
+        }
+
+        @Override
+        public void close() {
+            try {
+                disposeContext(browserContextId);
+                attached.quit();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to close browser context session: {}", e.getMessage());
+            } finally {
+                contexts.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 支持chromedriver的CDP命令扩展的RemoteWebDriver，CDP命令作用于当前标签页
+     */
+    private static class CdpRemoteWebDriver extends RemoteWebDriver implements HasCdp {
+        private static final String EXECUTE_CDP = "executeCdpCommand";
+
+        CdpRemoteWebDriver(URL url, Capabilities capabilities) {
+            super(new HttpCommandExecutor(
+                    Map.of(EXECUTE_CDP, new CommandInfo("/session/:sessionId/goog/cdp/execute", HttpMethod.POST)),
+                    url), capabilities);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> executeCdpCommand(String commandName, Map<String, Object> parameters) {
+            Object value = execute(EXECUTE_CDP, Map.of("cmd", commandName, "params", parameters)).getValue();
+            return value instanceof Map<?, ?> ? (Map<String, Object>) value : Map.of();
+        }
+    }
+}
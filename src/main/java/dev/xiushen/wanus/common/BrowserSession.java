@@ -0,0 +1,29 @@
+package dev.xiushen.wanus.common;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * 浏览器会话池中的一个会话，可以是独立的Chrome进程，也可以是共享Chrome进程中的隔离上下文
+ */
+public interface BrowserSession {
+
+    /**
+     * 操作该会话的WebDriver
+     */
+    WebDriver getDriver();
+
+    /**
+     * 健康检查，借出空闲会话前调用
+     */
+    boolean isActive();
+
+    /**
+     * 归还到池中前清理上一个使用者留下的页面、Cookie和存储
+     */
+    void reset();
+
+    /**
+     * 关闭会话并释放资源
+     */
+    void close();
+}
@@ -0,0 +1,429 @@
+package dev.xiushen.wanus.common;
+
+import org.openqa.selenium.WebDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 浏览器会话池
+ *      每个会话（计划或并发执行的步骤）独占一个浏览器，首次使用时从池中借出，计划结束后归还
+ *      归还的浏览器清理标签页和Cookie后放回空闲队列供下一个计划使用，使用次数达到上限或健康检查失败时关闭重建
+ *      空闲超时的浏览器由后台线程回收，池满时借出请求等待直到超时
+ *      已借出的浏览器只在所属计划不在执行中、且超过借出超时未被使用时才当作遗弃回收
+ */
+public class BrowserSessionPool implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrowserSessionPool.class);
+
+    private final Supplier<BrowserSession> factory;
+    private final int maxSessions;
+    private final int minIdle;
+    private final int maxUses;
+    private final Duration idleTtl;
+    private final Duration leaseTimeout;
+    private final Duration checkoutTimeout;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Map<String, Session> leased = new HashMap<>();
+    private final Set<String> activeKeyPrefixes = ConcurrentHashMap.newKeySet();
+    private final Deque<Session> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private int total;
+    private boolean closed;
+
+    private final AtomicLong checkouts = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong unhealthy = new AtomicLong();
+
+    /**
+     * @param factory 创建浏览器会话
+     * @param maxSessions 同时存在的浏览器数量上限
+     * @param minIdle 保持预热的空闲浏览器数量
+     * @param maxUses 每个浏览器最多被借出的次数，达到后关闭重建
+     * @param idleTtl 空闲浏览器的回收时间
+     * @param leaseTimeout 已借出但未在执行中的会话超过该时间未使用时回收
+     * @param checkoutTimeout 池满时借出请求的最长等待时间
+     */
+    public BrowserSessionPool(
+            Supplier<BrowserSession> factory,
+            int maxSessions,
+            int minIdle,
+            int maxUses,
+            Duration idleTtl,
+            Duration leaseTimeout,
+            Duration checkoutTimeout) {
+        this.factory = factory;
+        this.maxSessions = Math.max(1, maxSessions);
+        this.minIdle = Math.min(Math.max(0, minIdle), this.maxSessions);
+        this.maxUses = Math.max(1, maxUses);
+        this.idleTtl = idleTtl;
+        this.leaseTimeout = leaseTimeout;
+        this.checkoutTimeout = checkoutTimeout;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("browser-pool-evictor").daemon().factory());
+        long period = Math.max(1, Math.min(idleTtl.toSeconds(), 60));
+        this.evictor.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 获取会话占用的浏览器，首次调用时从池中借出
+     * @param key 会话键，同一个键总是得到同一个浏览器
+     */
+    public WebDriver checkout(String key) {
+        Session session;
+        boolean acquired = false;
+        lock.lock();
+        try {
+            session = leased.get(key);
+            if (session == null) {
+                session = acquire(key);
+                acquired = true;
+            }
+            session.lastUsed = System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            return prepare(session, key, acquired);
+        } catch (RuntimeException e) {
+            if (acquired) {
+                lock.lock();
+                try {
+                    leased.remove(key);
+                    session.key = null;
+                    total--;
+                    available.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 创建浏览器或对借出的空闲浏览器做健康检查，比较慢，不在池的锁内执行
+     *      同一会话的并发调用在会话锁上等待第一次创建完成
+     */
+    private WebDriver prepare(Session session, String key, boolean acquired) {
+        session.init.lock();
+        try {
+            if (!key.equals(session.key)) {
+                throw new IllegalStateException("Browser session for " + key + " has been released");
+            }
+            if (session.browser == null) {
+                session.browser = factory.get();
+                session.uses = 0;
+                created.incrementAndGet();
+            } else if (acquired && !session.browser.isActive()) {
+                unhealthy.incrementAndGet();
+                session.browser.close();
+                session.browser = null;
+                session.browser = factory.get();
+                session.uses = 0;
+                created.incrementAndGet();
+            }
+            if (acquired) {
+                session.uses++;
+            }
+            return session.browser.getDriver();
+        } finally {
+            session.init.unlock();
+        }
+    }
+
+    /**
+     * 分配一个空闲浏览器或新建名额，池满时等待，只在持有锁时调用
+     */
+    private Session acquire(String key) {
+        long start = System.nanoTime();
+        long remaining = checkoutTimeout.toNanos();
+        boolean waited = false;
+        while (idle.isEmpty() && total >= maxSessions) {
+            if (closed) {
+                throw new IllegalStateException("Browser session pool is closed");
+            }
+            if (remaining <= 0) {
+                throw new IllegalStateException("Timed out after " + checkoutTimeout.toSeconds()
+                        + "s waiting for a browser session, " + maxSessions + " sessions in use");
+            }
+            waited = true;
+            try {
+                remaining = available.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a browser session", e);
+            }
+        }
+
+        Session session = idle.pollFirst();
+        if (session == null) {
+            session = new Session();
+            total++;
+        }
+        session.key = key;
+        leased.put(key, session);
+
+        long waitNanos = System.nanoTime() - start;
+        checkouts.incrementAndGet();
+        if (waited) {
+            waits.incrementAndGet();
+        }
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        return session;
+    }
+
+    /**
+     * 标记计划开始执行，归还前计划及其步骤占用的浏览器不会被当作遗弃回收
+     */
+    public void retain(String keyPrefix) {
+        activeKeyPrefixes.add(keyPrefix);
+    }
+
+    /**
+     * 更新会话浏览器的最近使用时间，会话尚未借出浏览器时忽略
+     */
+    public void touch(String key) {
+        lock.lock();
+        try {
+            Session session = leased.get(key);
+            if (session != null) {
+                session.lastUsed = System.nanoTime();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还会话键等于keyPrefix或以keyPrefix + "_"开头的所有浏览器，用于计划结束时归还计划及其步骤占用的浏览器
+     */
+    public void release(String keyPrefix) {
+        activeKeyPrefixes.remove(keyPrefix);
+        List<Session> released = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, Session>> iterator = leased.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Session> entry = iterator.next();
+                if (matches(entry.getKey(), keyPrefix)) {
+                    released.add(entry.getValue());
+                    iterator.remove();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        released.forEach(this::checkin);
+    }
+
+    private static boolean matches(String key, String keyPrefix) {
+        return key.equals(keyPrefix) || key.startsWith(keyPrefix + "_");
+    }
+
+    private boolean isActive(String key) {
+        for (String keyPrefix : activeKeyPrefixes) {
+            if (matches(key, keyPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void checkin(Session session) {
+        boolean reusable = session.browser != null && session.uses < maxUses;
+        if (reusable) {
+            try {
+                session.browser.reset();
+            } catch (Exception e) {
+                LOGGER.warn("Failed to reset browser session, recycling it: {}", e.getMessage());
+                reusable = false;
+            }
+        }
+        if (!reusable && session.browser != null) {
+            recycled.incrementAndGet();
+            session.browser.close();
+            session.browser = null;
+            session.uses = 0;
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                total--;
+                if (session.browser != null) {
+                    session.browser.close();
+                }
+                return;
+            }
+            session.key = null;
+            session.lastUsed = System.nanoTime();
+            if (session.browser != null) {
+                idle.addFirst(session);
+            } else {
+                total--;
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 回收空闲超时的浏览器和遗弃的已借出浏览器，并补足预热的空闲浏览器
+     */
+    private void maintain() {
+        long now = System.nanoTime();
+        long expiredBefore = now - idleTtl.toNanos();
+        long abandonedBefore = now - leaseTimeout.toNanos();
+        List<Session> expiredIdle = new ArrayList<>();
+        List<Session> abandoned = new ArrayList<>();
+        int missingIdle;
+        lock.lock();
+        try {
+            Iterator<Session> iterator = idle.descendingIterator();
+            while (iterator.hasNext() && idle.size() - expiredIdle.size() > minIdle) {
+                Session session = iterator.next();
+                if (session.lastUsed < expiredBefore) {
+                    expiredIdle.add(session);
+                }
+            }
+            idle.removeAll(expiredIdle);
+            total -= expiredIdle.size();
+
+            Iterator<Map.Entry<String, Session>> leasedIterator = leased.entrySet().iterator();
+            while (leasedIterator.hasNext()) {
+                Map.Entry<String, Session> entry = leasedIterator.next();
+                Session session = entry.getValue();
+                if (session.browser != null && session.lastUsed < abandonedBefore && !isActive(entry.getKey())) {
+                    abandoned.add(session);
+                    leasedIterator.remove();
+                }
+            }
+            total -= abandoned.size();
+
+            missingIdle = closed ? 0 : Math.min(minIdle - idle.size(), maxSessions - total);
+            if (missingIdle > 0) {
+                total += missingIdle;
+            }
+            if (!expiredIdle.isEmpty() || !abandoned.isEmpty()) {
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Session session : expiredIdle) {
+            evicted.incrementAndGet();
+            session.browser.close();
+        }
+        for (Session session : abandoned) {
+            LOGGER.warn("Reclaiming browser session {} unused for {}s", session.key, leaseTimeout.toSeconds());
+            evicted.incrementAndGet();
+            session.browser.close();
+        }
+        for (int i = 0; i < missingIdle; i++) {
+            warmUp();
+        }
+    }
+
+    private void warmUp() {
+        Session session = new Session();
+        try {
+            session.browser = factory.get();
+            created.incrementAndGet();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to warm up browser session: {}", e.getMessage());
+        }
+        lock.lock();
+        try {
+            if (session.browser == null || closed) {
+                total--;
+                if (session.browser != null) {
+                    session.browser.close();
+                }
+                return;
+            }
+            session.lastUsed = System.nanoTime();
+            idle.addLast(session);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        lock.lock();
+        try {
+            long count = checkouts.get();
+            double averageWaitMillis = count == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / count;
+            return new Stats(maxSessions, total, leased.size(), idle.size(),
+                    (double) leased.size() / maxSessions, count, waits.get(), averageWaitMillis,
+                    maxWaitNanos.get() / 1_000_000.0, created.get(), recycled.get(), evicted.get(), unhealthy.get());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭池中所有浏览器，借出中的浏览器同样关闭
+     */
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        List<Session> sessions = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            sessions.addAll(idle);
+            sessions.addAll(leased.values());
+            idle.clear();
+            leased.clear();
+            total = 0;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Session session : sessions) {
+            if (session.browser != null) {
+                session.browser.close();
+            }
+        }
+    }
+
+    private static class Session {
+        private final ReentrantLock init = new ReentrantLock();
+        private volatile String key;
+        private volatile BrowserSession browser;
+        private int uses;
+        private volatile long lastUsed = System.nanoTime();
+    }
+
+    /**
+     * @param utilization 借出中的浏览器占上限的比例
+     * @param waits 需要等待的借出次数
+     */
+    public record Stats(int maxSessions, int total, int leased, int idle, double utilization, long checkouts,
+                        long waits, double averageWaitMillis, double maxWaitMillis, long created, long recycled,
+                        long evicted, long unhealthy) {
+    }
+}
@@ -1,10 +1,21 @@
 package dev.xiushen.wanus.common;
 
-import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import dev.xiushen.wanus.config.ManusProperties;
 
+/**
+ * 各ChatClient使用的会话记忆
+ *      会话按token预算截断，闲置过期或会话数超过上限后淘汰，避免内存和提示词无限增长
+ *      预算和上限由wanus.memory配置，这里按配置的默认值创建，启动时由ChatMemoryConfig设置为实际配置
+ */
 public class ChatMemories {
-    public static final ChatMemory planningMemory = new InMemoryChatMemory();
-    public static final ChatMemory memory = new InMemoryChatMemory();
-    public static final ChatMemory finalizeMemory = new InMemoryChatMemory();
+    private static final ManusProperties.Memory DEFAULTS = new ManusProperties.Memory();
+
+    public static final BoundedChatMemory planningMemory = create("planning", DEFAULTS.getPlanningMaxTokens());
+    public static final BoundedChatMemory memory = create("agent", DEFAULTS.getAgentMaxTokens());
+    public static final BoundedChatMemory finalizeMemory = create("finalize", DEFAULTS.getFinalizeMaxTokens());
+
+    private static BoundedChatMemory create(String name, int maxTokensPerConversation) {
+        return new BoundedChatMemory(name, maxTokensPerConversation, DEFAULTS.getMaxConversations(),
+                DEFAULTS.getIdleTtl());
+    }
 }
@@ -1,6 +1,7 @@
 package dev.xiushen.wanus.common;
 
 import dev.xiushen.wanus.WanusApplication;
+import dev.xiushen.wanus.config.ManusProperties;
 import jakarta.annotation.PreDestroy;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.JavascriptExecutor;
@@ -13,6 +14,7 @@ import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -23,7 +25,6 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 @Primary
@@ -33,13 +34,55 @@ public class ChromeDriverRunner implements ApplicationRunner {
 
     private static final String PID_FILE = "chrome-driver.pid";
 
-    private final AtomicReference<ChromeDriver> driver = new AtomicReference<>();
+    private static final String DEFAULT_SESSION = "default";
+
+    private final BrowserSessionPool sessionPool;
+
+    private final ManusProperties.Browser browser;
+
+    private final List<BrowserHost> hosts = new ArrayList<>();
+
+    private final NetworkPolicy networkPolicy;
+
+    private final Map<BrowserHost, BrowserCacheManager.Lease> hostCacheLeases = new HashMap<>();
+
+    private final BrowserCacheManager cacheManager;
 
     private File pidFile;
 
-    public ChromeDriverRunner() {
+    public ChromeDriverRunner(ManusProperties manusProperties) {
         this.pidFile = new File(System.getProperty("java.io.tmpdir"), PID_FILE);
 
+        this.browser = manusProperties.getBrowser();
+        ManusProperties.Network network = browser.getNetwork();
+        this.networkPolicy = new NetworkPolicy(
+                network.isEnabled(),
+                network.getBlockedResourceTypes(),
+                network.getBlockedDomains(),
+                network.getBlockedUrlPatterns());
+        ManusProperties.Cache cache = browser.getCache();
+        boolean processMode = "process".equalsIgnoreCase(browser.getMode());
+        if (cache.isEnabled() && !processMode) {
+            // context模式下的浏览器上下文都是无痕上下文，不读写磁盘缓存
+            LOGGER.warn("Browser disk cache only applies to process mode, it is disabled in {} mode", browser.getMode());
+        }
+        this.cacheManager = cache.isEnabled() && processMode
+                ? new BrowserCacheManager(
+                        Paths.get(cache.getDirectory()),
+                        cache.getSlots(),
+                        cache.getMaxSize().toBytes(),
+                        StringUtils.hasText(cache.getProfileTemplate()) ? Paths.get(cache.getProfileTemplate()) : null)
+                : null;
+        ManusProperties.Pool pool = browser.getPool();
+        this.sessionPool = new BrowserSessionPool(
+                this::createSession,
+                pool.getMaxSessions(),
+                pool.getMinIdle(),
+                pool.getMaxUses(),
+                pool.getIdleTtl(),
+                pool.getLeaseTimeout(),
+                pool.getCheckoutTimeout());
+
         // 启动时清理可能存在的僵尸进程
         cleanupOrphanedProcesses();
 
@@ -147,54 +190,139 @@ public class ChromeDriverRunner implements ApplicationRunner {
         }
     }
 
-    public ChromeDriver getDriver() {
-        return driver.updateAndGet(existing -> {
-            if (existing != null && isDriverActive(existing)) {
-                return existing;
+    /**
+     * 获取当前工具调用所属会话的浏览器，不同计划和并发执行的步骤使用不同的浏览器
+     */
+    public WebDriver getDriver() {
+        String conversationId = ToolCallContext.getConversationId();
+        return sessionPool.checkout(conversationId != null ? conversationId : DEFAULT_SESSION);
+    }
+
+    /**
+     * 标记计划开始执行，执行期间其占用的浏览器不会被回收
+     */
+    public void retain(String planId) {
+        sessionPool.retain(planId);
+    }
+
+    /**
+     * 更新会话浏览器的最近使用时间
+     */
+    public void touch(String conversationId) {
+        sessionPool.touch(conversationId);
+    }
+
+    /**
+     * 归还计划及其步骤占用的浏览器
+     */
+    public void release(String planId) {
+        sessionPool.release(planId);
+    }
+
+    public BrowserSessionPool.Stats getPoolStats() {
+        return sessionPool.getStats();
+    }
+
+    /**
+     * 网络拦截规则，切换到新打开的标签页后需要重新应用
+     */
+    public NetworkPolicy getNetworkPolicy() {
+        return networkPolicy;
+    }
+
+    /**
+     * 磁盘缓存统计，未开启磁盘缓存时返回null
+     */
+    public BrowserCacheManager.Stats getCacheStats() {
+        return cacheManager != null ? cacheManager.getStats() : null;
+    }
+
+    /**
+     * 创建池中的一个浏览器会话
+     *      context模式下在少量共享的Chrome进程中创建隔离的浏览器上下文，process模式下每个会话启动一个Chrome进程
+     */
+    private BrowserSession createSession() {
+        if ("process".equalsIgnoreCase(browser.getMode())) {
+            BrowserCacheManager.Lease lease = acquireCache();
+            try {
+                return new ProcessSession(createNewDriver(lease), lease);
+            } catch (RuntimeException e) {
+                releaseCache(lease);
+                throw e;
+            }
+        }
+        BrowserHost host = selectHost();
+        BrowserSession session = host.newContext();
+        try {
+            executeAntiDetectionScript(session.getDriver());
+        } catch (Exception e) {
+            LOGGER.warn("Failed to run anti-detection script in browser context: {}", e.getMessage());
+        }
+        return session;
+    }
+
+    /**
+     * 选择上下文最少且未满的Chrome进程，全部已满时在进程数上限内启动新的进程
+     */
+    private BrowserHost selectHost() {
+        synchronized (hosts) {
+            Iterator<BrowserHost> iterator = hosts.iterator();
+            while (iterator.hasNext()) {
+                BrowserHost host = iterator.next();
+                if (!host.isAlive()) {
+                    LOGGER.warn("Browser host is no longer alive, removing it");
+                    iterator.remove();
+                    host.close();
+                    releaseCache(hostCacheLeases.remove(host));
+                }
             }
-            return createNewDriver();
-        });
+
+            int contextsPerHost = Math.max(1, browser.getContextsPerHost());
+            Optional<BrowserHost> available = hosts.stream()
+                    .filter(host -> host.getContextCount() < contextsPerHost)
+                    .min(Comparator.comparingInt(BrowserHost::getContextCount));
+            if (available.isPresent()) {
+                return available.get();
+            }
+            if (hosts.isEmpty() || hosts.size() < browser.getMaxHosts()) {
+                BrowserHost host = createHost();
+                hosts.add(host);
+                return host;
+            }
+            // 进程数和每个进程的上下文数都已达到上限时，仍在负载最低的进程中创建，总数由会话池限制
+            return hosts.stream().min(Comparator.comparingInt(BrowserHost::getContextCount)).orElseThrow();
+        }
     }
 
-    private ChromeDriver createNewDriver() {
+    private BrowserHost createHost() {
+        BrowserCacheManager.Lease lease = acquireCache();
+        try {
+            BrowserHost host = new BrowserHost(createOptions(lease), networkPolicy::apply);
+            if (lease != null) {
+                hostCacheLeases.put(host, lease);
+            }
+            String pid = getProcessId(host.getPrimary());
+            if (pid != null) {
+                recordProcessId(pid);
+            }
+            LOGGER.info("Created new browser host for isolated contexts");
+            return host;
+        } catch (Exception e) {
+            releaseCache(lease);
+            LOGGER.error("Failed to create browser host", e);
+            throw new RuntimeException("Failed to initialize ChromeDriver", e);
+        }
+    }
+
+    private ChromeDriver createNewDriver(BrowserCacheManager.Lease lease) {
         org.openqa.selenium.chrome.ChromeDriver newDriver = null;
         try {
-            ChromeOptions options = new ChromeOptions();
-
-            // 基础配置
-            options.addArguments("--remote-allow-origins=*");
-            options.addArguments("--disable-blink-features=AutomationControlled"); // 关键：禁用自动化控制检测
-            options.addArguments("--headless=new");
-
-            // 模拟真实浏览器环境
-            options.addArguments("--disable-infobars"); // 禁用信息条
-            options.addArguments("--disable-notifications"); // 禁用通知
-            options.addArguments("--disable-dev-shm-usage"); // 禁用/dev/shm使用
-            options.addArguments("--lang=zh-CN,zh,en-US,en"); // 设置语言
-
-            // 添加随机化的用户代理
-            options.addArguments("--user-agent=" + getRandomUserAgent());
-
-            // 添加随机化的浏览器窗口大小
-            Dimension randomSize = getRandomWindowSize();
-            options.addArguments("--window-size=" + randomSize.width + "," + randomSize.height);
-
-            // 禁用自动化标志
-            Map<String, Object> prefs = new HashMap<>();
-            prefs.put("credentials_enable_service", false);
-            prefs.put("profile.password_manager_enabled", false);
-            options.setExperimentalOption("prefs", prefs);
-
-            // 设置 webdriver 属性
-            Map<String, Object> properties = new HashMap<>();
-            properties.put("navigator.webdriver", false);
-            options.setExperimentalOption("excludeSwitches", List.of("enable-automation"));
-
-            newDriver = new ChromeDriver(options);
+            newDriver = new ChromeDriver(createOptions(lease));
             String pid = getProcessId(newDriver);
             if (pid != null) {
                 recordProcessId(pid);
             }
+            networkPolicy.apply(newDriver);
 
             executeAntiDetectionScript(newDriver);
             LOGGER.info("Created new ChromeDriver instance with anti-detection");
@@ -212,6 +340,58 @@ public class ChromeDriverRunner implements ApplicationRunner {
         }
     }
 
+    private BrowserCacheManager.Lease acquireCache() {
+        return cacheManager != null ? cacheManager.acquire() : null;
+    }
+
+    private void releaseCache(BrowserCacheManager.Lease lease) {
+        if (cacheManager != null && lease != null) {
+            cacheManager.release(lease);
+        }
+    }
+
+    /**
+     * @param lease 磁盘缓存槽位，为null时使用Chrome默认的临时目录
+     */
+    private ChromeOptions createOptions(BrowserCacheManager.Lease lease) {
+        ChromeOptions options = new ChromeOptions();
+
+        // 沿用缓存槽位中上一个进程留下的磁盘缓存，用户数据目录每个进程单独一个
+        if (lease != null) {
+            options.addArguments("--user-data-dir=" + lease.userDataDirectory().toAbsolutePath());
+            options.addArguments("--disk-cache-dir=" + lease.cacheDirectory().toAbsolutePath());
+            options.addArguments("--disk-cache-size=" + lease.cacheSizeBytes());
+        }
+
+        // 基础配置
+        options.addArguments("--remote-allow-origins=*");
+        options.addArguments("--disable-blink-features=AutomationControlled"); // 关键：禁用自动化控制检测
+        options.addArguments("--headless=new");
+
+        // 模拟真实浏览器环境
+        options.addArguments("--disable-infobars"); // 禁用信息条
+        options.addArguments("--disable-notifications"); // 禁用通知
+        options.addArguments("--disable-dev-shm-usage"); // 禁用/dev/shm使用
+        options.addArguments("--lang=zh-CN,zh,en-US,en"); // 设置语言
+
+        // 添加随机化的用户代理
+        options.addArguments("--user-agent=" + getRandomUserAgent());
+
+        // 添加随机化的浏览器窗口大小
+        Dimension randomSize = getRandomWindowSize();
+        options.addArguments("--window-size=" + randomSize.width + "," + randomSize.height);
+
+        // 禁用自动化标志
+        Map<String, Object> prefs = new HashMap<>(networkPolicy.chromePrefs());
+        prefs.put("credentials_enable_service", false);
+        prefs.put("profile.password_manager_enabled", false);
+        options.setExperimentalOption("prefs", prefs);
+
+        // 设置 webdriver 属性
+        options.setExperimentalOption("excludeSwitches", List.of("enable-automation"));
+        return options;
+    }
+
     private String getRandomUserAgent() {
         List<String> userAgents = Arrays.asList(
                 "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36",
@@ -254,11 +434,25 @@ public class ChromeDriverRunner implements ApplicationRunner {
             return true;
         } catch (Exception e) {
             LOGGER.warn("Existing ChromeDriver is not active", e);
-            closeDriver(driver);
             return false;
         }
     }
 
+    /**
+     * 浏览器归还到池中前清理上一个计划留下的状态：只保留一个标签页，清空Cookie和存储，回到空白页
+     */
+    private void resetDriver(ChromeDriver driver) {
+        List<String> handles = new ArrayList<>(driver.getWindowHandles());
+        for (int i = 1; i < handles.size(); i++) {
+            driver.switchTo().window(handles.get(i));
+            driver.close();
+        }
+        driver.switchTo().window(handles.getFirst());
+        driver.manage().deleteAllCookies();
+        driver.get("about:blank");
+        ((JavascriptExecutor) driver).executeScript("try { localStorage.clear(); sessionStorage.clear(); } catch (e) {}");
+    }
+
     private void closeDriver(WebDriver driver) {
         try {
             if (driver != null) {
@@ -283,11 +477,13 @@ public class ChromeDriverRunner implements ApplicationRunner {
 
     private void cleanupAllChromeProcesses() {
         try {
-            // 首先尝试正常关闭当前driver
-            org.openqa.selenium.chrome.ChromeDriver currentDriver = driver.get();
-            if (currentDriver != null) {
-                closeDriver(currentDriver);
-                driver.set(null);
+            // 首先尝试正常关闭池中的所有driver
+            sessionPool.close();
+            synchronized (hosts) {
+                hosts.forEach(BrowserHost::close);
+                hosts.clear();
+                hostCacheLeases.values().forEach(this::releaseCache);
+                hostCacheLeases.clear();
             }
 
             // 使用系统命令清理所有相关进程
@@ -314,4 +510,38 @@ public class ChromeDriverRunner implements ApplicationRunner {
         LOGGER.info("Spring container shutting down - cleaning up Chrome resources");
         cleanupAllChromeProcesses();
     }
-}
\ No newline at end of file
+
+    /**
+     * 独占一个Chrome进程的浏览器会话
+     */
+    private class ProcessSession implements BrowserSession {
+        private final ChromeDriver driver;
+        private final BrowserCacheManager.Lease cacheLease;
+
+        ProcessSession(ChromeDriver driver, BrowserCacheManager.Lease cacheLease) {
+            this.driver = driver;
+            this.cacheLease = cacheLease;
+        }
+
+        @Override
+        public WebDriver getDriver() {
+            return driver;
+        }
+
+        @Override
+        public boolean isActive() {
+            return isDriverActive(driver);
+        }
+
+        @Override
+        public void reset() {
+            resetDriver(driver);
+        }
+
+        @Override
+        public void close() {
+            closeDriver(driver);
+            releaseCache(cacheLease);
+        }
+    }
+}
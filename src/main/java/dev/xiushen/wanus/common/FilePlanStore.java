@@ -0,0 +1,349 @@
+package dev.xiushen.wanus.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import dev.xiushen.wanus.enums.StepStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于本地文件的计划存储，进程重启后可以恢复计划
+ *      计划的每次变更以一行JSON追加到预写日志，由单独的写线程批量写入，每批只做一次fsync
+ *      日志记录数达到snapshotInterval后把全部计划写成快照并清空日志，启动时先加载快照再重放日志
+ *      每条日志记录都是计划的完整状态，重复重放不影响结果；进程崩溃时写了一半的最后一行会被忽略
+ *      写入失败时保留这一批记录，截掉写了一半的内容后重试，失败期间通过getStats()报告为不健康
+ */
+public class FilePlanStore implements PlanStore, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilePlanStore.class);
+
+    private static final String WAL_FILE = "plans.wal";
+    private static final String SNAPSHOT_FILE = "plans.snapshot";
+    private static final String OP_PUT = "put";
+    private static final String OP_REMOVE = "remove";
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final Gson gson = new Gson();
+    private final Path directory;
+    private final int snapshotInterval;
+    private final Duration retention;
+    private final Map<String, Plan> plans = new ConcurrentHashMap<>();
+    private final Map<String, Long> updatedAt = new ConcurrentHashMap<>();
+    private final BlockingQueue<PlanRecord> pendingRecords = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private FileChannel wal;
+    /**
+     * 最近一次成功写入并同步后的日志长度，写入失败时截断到这个位置再重试
+     */
+    private long walSize;
+    private int walRecords;
+    private volatile boolean closed;
+    private volatile IOException writeFailure;
+
+    /**
+     * @param directory 日志和快照所在目录
+     * @param snapshotInterval 日志累计多少条记录后生成快照
+     * @param retention 已结束的计划在生成快照时保留的时长
+     */
+    public FilePlanStore(Path directory, int snapshotInterval, Duration retention) throws IOException {
+        this.directory = directory;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        this.retention = retention;
+
+        Files.createDirectories(directory);
+        load();
+        this.wal = FileChannel.open(directory.resolve(WAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.walSize = wal.size();
+        this.writer = Thread.ofPlatform().daemon().name("plan-store-writer").start(this::writeLoop);
+        LOGGER.info("Loaded {} plans from {}", plans.size(), directory);
+    }
+
+    @Override
+    public Plan get(String planId) {
+        return plans.get(planId);
+    }
+
+    @Override
+    public void create(Plan plan) {
+        plans.put(plan.getPlanId(), plan);
+        update(plan);
+    }
+
+    @Override
+    public void update(Plan plan) {
+        if (!plans.containsKey(plan.getPlanId())) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        updatedAt.put(plan.getPlanId(), now);
+        // 在调用线程上生成记录，保证日志顺序和修改顺序一致
+        append(PlanRecord.of(plan, now));
+    }
+
+    @Override
+    public void remove(String planId) {
+        if (plans.remove(planId) != null) {
+            updatedAt.remove(planId);
+            append(PlanRecord.removal(planId));
+        }
+    }
+
+    @Override
+    public Collection<Plan> list() {
+        return Collections.unmodifiableCollection(plans.values());
+    }
+
+    private void append(PlanRecord record) {
+        if (closed) {
+            LOGGER.warn("Plan store is closed, change to plan {} is not persisted", record.planId);
+            return;
+        }
+        pendingRecords.add(record);
+    }
+
+    /**
+     * 日志是否正常写入，写入失败且尚未重试成功时为false
+     */
+    public boolean isHealthy() {
+        return writeFailure == null;
+    }
+
+    public Stats getStats() {
+        IOException failure = writeFailure;
+        return new Stats(plans.size(), pendingRecords.size(), failure == null,
+                failure != null ? failure.getMessage() : null);
+    }
+
+    private void writeLoop() {
+        List<PlanRecord> batch = new ArrayList<>();
+        while (!closed || !pendingRecords.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    PlanRecord first = pendingRecords.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                }
+                pendingRecords.drainTo(batch);
+                writeBatch(batch);
+                batch.clear();
+                if (walRecords >= snapshotInterval) {
+                    snapshot();
+                }
+                writeFailure = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                writeFailure = e;
+                if (closed) {
+                    // 关闭时的快照包含内存中的全部计划，未写入的记录不会丢失
+                    LOGGER.error("Failed to write plan log while closing, {} records left to the final snapshot",
+                            batch.size() + pendingRecords.size(), e);
+                    return;
+                }
+                LOGGER.error("Failed to write plan log, retrying {} records in {}s", batch.size(),
+                        RETRY_DELAY.toSeconds(), e);
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeBatch(List<PlanRecord> batch) throws IOException {
+        // 上一次失败可能留下写了一半的记录，重试前先截掉，避免和重试的第一条记录拼成一行
+        if (wal.size() > walSize) {
+            wal.truncate(walSize);
+        }
+        StringBuilder lines = new StringBuilder();
+        for (PlanRecord record : batch) {
+            lines.append(gson.toJson(record)).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            wal.write(buffer);
+        }
+        wal.force(false);
+        walSize = wal.size();
+        walRecords += batch.size();
+    }
+
+    /**
+     * 把当前全部计划写入快照并清空日志，只在写线程或关闭时调用
+     */
+    private void snapshot() throws IOException {
+        long expiredBefore = System.currentTimeMillis() - retention.toMillis();
+        List<PlanRecord> records = new ArrayList<>();
+        for (Plan plan : plans.values()) {
+            long lastUpdated = updatedAt.getOrDefault(plan.getPlanId(), System.currentTimeMillis());
+            if (plan.isFinished() && lastUpdated < expiredBefore) {
+                plans.remove(plan.getPlanId());
+                updatedAt.remove(plan.getPlanId());
+                continue;
+            }
+            records.add(PlanRecord.of(plan, lastUpdated));
+        }
+
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        Path tempFile = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(gson.toJson(records).getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        // 快照已包含日志中的全部变更，排队中还未写入的记录会写入新的日志并在重放时覆盖快照
+        wal.truncate(0);
+        wal.force(true);
+        walSize = 0;
+        walRecords = 0;
+        LOGGER.info("Plan store snapshot written with {} plans", records.size());
+    }
+
+    private void load() throws IOException {
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshotFile)) {
+            List<PlanRecord> records = gson.fromJson(Files.readString(snapshotFile, StandardCharsets.UTF_8),
+                    new TypeToken<List<PlanRecord>>() {}.getType());
+            if (records != null) {
+                records.forEach(this::apply);
+            }
+        }
+
+        Path walFile = directory.resolve(WAL_FILE);
+        if (Files.exists(walFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(walFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        apply(gson.fromJson(line, PlanRecord.class));
+                        walRecords++;
+                    } catch (JsonSyntaxException e) {
+                        LOGGER.warn("Ignoring truncated plan log record: {}", line);
+                    }
+                }
+            }
+        }
+    }
+
+    private void apply(PlanRecord record) {
+        if (record == null || record.planId == null) {
+            return;
+        }
+        if (OP_REMOVE.equals(record.op)) {
+            plans.remove(record.planId);
+            updatedAt.remove(record.planId);
+            return;
+        }
+        plans.put(record.planId, record.toPlan());
+        updatedAt.put(record.planId, record.updatedAt);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+        wal.close();
+    }
+
+    /**
+     * @param pendingRecords 排队等待写入日志的记录数
+     * @param healthy 日志是否正常写入
+     * @param lastError 写入失败的原因，正常时为空
+     */
+    public record Stats(int plans, int pendingRecords, boolean healthy, String lastError) {
+    }
+
+    /**
+     * 日志和快照中的一条计划记录
+     */
+    private static class PlanRecord {
+        private String op;
+        private String planId;
+        private String query;
+        private String title;
+        private List<String> steps;
+        private List<List<Integer>> dependencies;
+        private List<String> statuses;
+        private List<String> notes;
+        private long updatedAt;
+
+        static PlanRecord of(Plan plan, long updatedAt) {
+            PlanRecord record = new PlanRecord();
+            record.op = OP_PUT;
+            record.planId = plan.getPlanId();
+            record.updatedAt = updatedAt;
+            synchronized (plan) {
+                record.query = plan.getQuery();
+                record.title = plan.getTitle();
+                record.steps = new ArrayList<>();
+                record.dependencies = plan.isSequential() ? null : new ArrayList<>();
+                record.statuses = new ArrayList<>();
+                record.notes = new ArrayList<>();
+                for (PlanStep step : plan.getSteps()) {
+                    record.steps.add(step.getText());
+                    if (record.dependencies != null) {
+                        record.dependencies.add(step.getDependencies());
+                    }
+                    record.statuses.add(plan.getStatus(step.getIndex()).getValue());
+                    record.notes.add(plan.getNotes(step.getIndex()));
+                }
+            }
+            return record;
+        }
+
+        static PlanRecord removal(String planId) {
+            PlanRecord record = new PlanRecord();
+            record.op = OP_REMOVE;
+            record.planId = planId;
+            record.updatedAt = System.currentTimeMillis();
+            return record;
+        }
+
+        Plan toPlan() {
+            List<String> planSteps = steps != null ? steps : List.of();
+            List<StepStatus> stepStatuses = new ArrayList<>();
+            if (statuses != null) {
+                statuses.forEach(status -> stepStatuses.add(StepStatus.fromValue(status)));
+            }
+            return Plan.restore(planId, query, title, planSteps, dependencies, stepStatuses,
+                    notes != null ? notes : List.of());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package dev.xiushen.wanus.common;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 基于规则的记忆压缩，不调用模型
+ *      去掉工具响应中的base64图片、大段二进制和HTML标签，压缩空白后保留开头和结尾，中间用省略说明代替
+ *      逐条替换消息，工具调用和工具响应的对应关系不变
+ */
+public class HeuristicMessageCompactor implements MessageCompactor {
+
+    private static final Pattern DATA_URI_PATTERN = Pattern.compile("data:[\\w/+.-]+;base64,[A-Za-z0-9+/=]+");
+    private static final Pattern BASE64_PATTERN = Pattern.compile("[A-Za-z0-9+/=]{200,}");
+    private static final Pattern HTML_TAG_PATTERN = Pattern.compile("<(script|style)[^>]*>.*?</\\1>|<[^>]+>",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    private final int maxChars;
+
+    /**
+     * @param maxChars 每段内容压缩后保留的最大字符数
+     */
+    public HeuristicMessageCompactor(int maxChars) {
+        this.maxChars = Math.max(100, maxChars);
+    }
+
+    @Override
+    public List<Message> compact(List<Message> messages) {
+        List<Message> compacted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            compacted.add(compact(message));
+        }
+        return compacted;
+    }
+
+    private Message compact(Message message) {
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                responses.add(new ToolResponseMessage.ToolResponse(response.id(), response.name(),
+                        shorten(response.responseData())));
+            }
+            return new ToolResponseMessage(responses, toolResponseMessage.getMetadata());
+        }
+        if (message instanceof AssistantMessage assistantMessage) {
+            return new AssistantMessage(shorten(assistantMessage.getText()), assistantMessage.getMetadata(),
+                    assistantMessage.getToolCalls());
+        }
+        if (message instanceof UserMessage userMessage) {
+            return new UserMessage(shorten(userMessage.getText()));
+        }
+        return message;
+    }
+
+    String shorten(String text) {
+        if (text == null || text.length() <= maxChars) {
+            return text;
+        }
+        String cleaned = DATA_URI_PATTERN.matcher(text).replaceAll("[image omitted]");
+        cleaned = BASE64_PATTERN.matcher(cleaned).replaceAll("[binary omitted]");
+        if (cleaned.indexOf('<') >= 0) {
+            cleaned = HTML_TAG_PATTERN.matcher(cleaned).replaceAll(" ");
+        }
+        cleaned = WHITESPACE_PATTERN.matcher(cleaned).replaceAll(" ").trim();
+        if (cleaned.length() <= maxChars) {
+            return cleaned;
+        }
+
+        int head = maxChars * 2 / 3;
+        int tail = maxChars - head;
+        return cleaned.substring(0, head)
+                + " ... [" + (cleaned.length() - head - tail) + " chars omitted] ... "
+                + cleaned.substring(cleaned.length() - tail);
+    }
+}
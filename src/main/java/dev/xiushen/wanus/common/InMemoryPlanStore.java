@@ -0,0 +1,39 @@
+package dev.xiushen.wanus.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collection;
+
+/**
+ * 仅保存在内存中的计划存储，进程重启后计划丢失
+ */
+public class InMemoryPlanStore implements PlanStore {
+
+    private final Cache<String, Plan> plans = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+    @Override
+    public Plan get(String planId) {
+        return plans.getIfPresent(planId);
+    }
+
+    @Override
+    public void create(Plan plan) {
+        plans.put(plan.getPlanId(), plan);
+    }
+
+    @Override
+    public void update(Plan plan) {
+        // Plan在内存中原地修改，不需要额外处理
+    }
+
+    @Override
+    public void remove(String planId) {
+        plans.invalidate(planId);
+    }
+
+    @Override
+    public Collection<Plan> list() {
+        return plans.asMap().values();
+    }
+}
@@ -0,0 +1,68 @@
+package dev.xiushen.wanus.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+
+import java.util.List;
+
+/**
+ * 使用模型生成摘要的记忆压缩
+ *      把较早的若干轮对话（包括工具调用和工具响应）整体替换为一条摘要消息，调用失败时退回规则压缩
+ *      直接使用ChatModel而不是带记忆的ChatClient，摘要请求不会再写入记忆
+ */
+public class LlmMessageCompactor implements MessageCompactor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LlmMessageCompactor.class);
+
+    private static final String SUMMARY_PROMPT = """
+            Summarize the following agent conversation history for the agent itself to continue the task.
+            Keep every fact, URL, file path, number and result that later steps may need, and note which tools were
+            used and whether they succeeded. Drop raw HTML, screenshots, logs and repeated content. Be concise.
+
+            %s
+            """;
+
+    private final ChatModel chatModel;
+    private final HeuristicMessageCompactor fallback;
+
+    public LlmMessageCompactor(ChatModel chatModel, HeuristicMessageCompactor fallback) {
+        this.chatModel = chatModel;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public List<Message> compact(List<Message> messages) {
+        StringBuilder history = new StringBuilder();
+        for (Message message : messages) {
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    history.append("[tool ").append(response.name()).append("] ")
+                            .append(fallback.shorten(response.responseData())).append("\n");
+                }
+            } else if (message instanceof AssistantMessage assistantMessage) {
+                history.append("[assistant] ").append(fallback.shorten(assistantMessage.getText())).append("\n");
+                if (assistantMessage.hasToolCalls()) {
+                    for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                        history.append("[tool call ").append(toolCall.name()).append("] ")
+                                .append(fallback.shorten(toolCall.arguments())).append("\n");
+                    }
+                }
+            } else {
+                history.append("[").append(message.getMessageType().getValue()).append("] ")
+                        .append(fallback.shorten(message.getText())).append("\n");
+            }
+        }
+
+        try {
+            String summary = chatModel.call(SUMMARY_PROMPT.formatted(history));
+            return List.of(new UserMessage("Summary of earlier conversation:\n" + summary));
+        } catch (Exception e) {
+            LOGGER.warn("Failed to summarize conversation history, using heuristic compaction: {}", e.getMessage());
+            return fallback.compact(messages);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package dev.xiushen.wanus.common;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+/**
+ * 会话记忆压缩，把较早的消息替换为更短的内容
+ *      返回的消息会原样替换输入的消息，实现需要保证工具调用和工具响应的对应关系仍然成立
+ */
+public interface MessageCompactor {
+
+    List<Message> compact(List<Message> messages);
+}
@@ -0,0 +1,155 @@
+package dev.xiushen.wanus.common;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chromium.HasCdp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 浏览器网络请求策略
+ *      智能体只读取页面文本和可交互元素，图片、字体、音视频以及广告和统计脚本的请求通过CDP的Network.setBlockedURLs直接拦截
+ *      资源类型按文件扩展名拦截，图片另外通过Chrome内容设置在进程级别禁用，覆盖没有扩展名的图片地址
+ *      每次页面加载后根据Resource Timing统计传输的字节数、命中缓存节省的字节数和被拦截的请求数
+ */
+public class NetworkPolicy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkPolicy.class);
+
+    private static final Map<String, List<String>> RESOURCE_TYPE_EXTENSIONS = Map.of(
+            "image", List.of("png", "jpg", "jpeg", "gif", "webp", "avif", "bmp", "ico", "svg"),
+            "font", List.of("woff", "woff2", "ttf", "otf", "eot"),
+            "media", List.of("mp4", "webm", "ogg", "mp3", "m4a", "wav", "flac", "m3u8", "mov"));
+
+    private static final String MEASURE_SCRIPT = """
+            const entries = performance.getEntriesByType('navigation').concat(performance.getEntriesByType('resource'));
+            let transferred = 0, cached = 0, blocked = 0;
+            for (const entry of entries) {
+                transferred += entry.transferSize || 0;
+                if (!entry.transferSize && entry.encodedBodySize > 0) {
+                    cached += entry.encodedBodySize;
+                } else if (!entry.transferSize && !entry.decodedBodySize && !entry.responseStart) {
+                    blocked++;
+                }
+            }
+            return {requests: entries.length, transferred: transferred, cached: cached, blocked: blocked};
+            """;
+
+    private final boolean enabled;
+    private final boolean blockImages;
+    private final List<String> blockedPatterns;
+
+    private final AtomicLong navigations = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final AtomicLong blockedRequests = new AtomicLong();
+
+    /**
+     * @param blockedResourceTypes 拦截的资源类型：image、font、media
+     * @param blockedDomains 拦截的域名，同时匹配子域名
+     * @param blockedUrlPatterns 额外拦截的URL模式，支持*通配符
+     */
+    public NetworkPolicy(
+            boolean enabled,
+            List<String> blockedResourceTypes,
+            List<String> blockedDomains,
+            List<String> blockedUrlPatterns) {
+        this.enabled = enabled;
+        List<String> patterns = new ArrayList<>();
+        boolean images = false;
+        for (String type : blockedResourceTypes) {
+            String normalized = type.trim().toLowerCase(Locale.ROOT);
+            List<String> extensions = RESOURCE_TYPE_EXTENSIONS.get(normalized);
+            if (extensions == null) {
+                LOGGER.warn("Unknown resource type to block: {}", type);
+                continue;
+            }
+            images |= normalized.equals("image");
+            for (String extension : extensions) {
+                patterns.add("*." + extension);
+                patterns.add("*." + extension + "?*");
+            }
+        }
+        for (String domain : blockedDomains) {
+            patterns.add("*://" + domain + "/*");
+            patterns.add("*://*." + domain + "/*");
+        }
+        patterns.addAll(blockedUrlPatterns);
+        this.blockImages = enabled && images;
+        this.blockedPatterns = List.copyOf(patterns);
+    }
+
+    /**
+     * 启动Chrome时的偏好设置，禁用图片后即使地址没有扩展名也不会加载
+     */
+    public Map<String, Object> chromePrefs() {
+        return blockImages ? Map.of("profile.managed_default_content_settings.images", 2) : Map.of();
+    }
+
+    /**
+     * 对浏览器当前的标签页应用拦截规则，新建会话、重置会话和切换到新标签页后调用
+     */
+    public void apply(WebDriver driver) {
+        if (!enabled || blockedPatterns.isEmpty() || !(driver instanceof HasCdp cdp)) {
+            return;
+        }
+        try {
+            cdp.executeCdpCommand("Network.enable", Map.of());
+            cdp.executeCdpCommand("Network.setBlockedURLs", Map.of("urls", blockedPatterns));
+        } catch (Exception e) {
+            LOGGER.warn("Failed to apply network blocking rules: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 统计当前页面加载的网络开销，并计入累计指标
+     */
+    public PageLoad measure(WebDriver driver) {
+        try {
+            Object result = ((JavascriptExecutor) driver).executeScript(MEASURE_SCRIPT);
+            if (!(result instanceof Map<?, ?> values)) {
+                return null;
+            }
+            PageLoad pageLoad = new PageLoad(number(values.get("requests")), number(values.get("transferred")),
+                    number(values.get("cached")), number(values.get("blocked")));
+            navigations.incrementAndGet();
+            requests.addAndGet(pageLoad.requests());
+            transferredBytes.addAndGet(pageLoad.transferredBytes());
+            cachedBytes.addAndGet(pageLoad.cachedBytes());
+            blockedRequests.addAndGet(pageLoad.blockedRequests());
+            return pageLoad;
+        } catch (Exception e) {
+            LOGGER.debug("Failed to measure page load: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(enabled, blockedPatterns.size(), navigations.get(), requests.get(), transferredBytes.get(),
+                cachedBytes.get(), blockedRequests.get());
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    /**
+     * 一次页面加载的网络开销
+     * @param cachedBytes 从缓存读取、没有经过网络的字节数
+     * @param blockedRequests 被拦截或失败的请求数
+     */
+    public record PageLoad(long requests, long transferredBytes, long cachedBytes, long blockedRequests) {
+
+        public String summary() {
+            return String.format("%d requests, %d KB transferred, %d KB served from cache, %d requests blocked",
+                    requests, transferredBytes / 1024, cachedBytes / 1024, blockedRequests);
+        }
+    }
+
+    public record Stats(boolean enabled, int blockedPatterns, long navigations, long requests, long transferredBytes,
+                        long cachedBytes, long blockedRequests) {
+    }
+}
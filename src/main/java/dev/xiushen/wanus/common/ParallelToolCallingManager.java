@@ -0,0 +1,195 @@
+package dev.xiushen.wanus.common;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.function.FunctionCallback;
+import org.springframework.ai.model.tool.DefaultToolCallingManager;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 并发执行工具调用
+ *      模型在一条消息中请求的多个工具调用并发执行，所有结果按调用顺序放入同一条工具响应消息
+ *      同一顺序组内的工具共享状态（例如同一个浏览器），组内的调用按模型给出的顺序依次执行，不同组之间并发
+ *      每个工具（或顺序组）可以配置全局并发上限，所有智能体的调用共享该上限，总并发由maxConcurrentCalls限制
+ *      单个工具调用失败只影响自己的响应，错误信息作为该调用的结果返回给模型
+ *      执行期间把提示词选项中ToolContext的会话ID和当前步骤绑定到执行线程，工具通过ToolCallContext读取，不直接传给工具
+ *      M6的ToolCallingChatOptions和ToolCallbackResolver仍以已废弃的FunctionCallback类型返回工具，相关方法抑制废弃警告
+ */
+public class ParallelToolCallingManager implements ToolCallingManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelToolCallingManager.class);
+
+    private final ToolCallingManager delegate;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ExecutorService toolExecutor;
+    private final Semaphore callPermits;
+    private final Map<String, String> toolGroups = new HashMap<>();
+    private final Map<String, Semaphore> toolPermits = new ConcurrentHashMap<>();
+    private final Map<String, Integer> concurrencyLimits;
+
+    /**
+     * @param toolCallbackResolver 提示词选项中找不到工具时使用的解析器
+     * @param toolExecutor 执行工具调用的线程池
+     * @param maxConcurrentCalls 所有智能体同时执行的工具调用数量上限
+     * @param sequentialGroups 顺序组名称到组内工具名称的映射
+     * @param concurrencyLimits 工具名称或顺序组名称到全局并发上限的映射
+     */
+    public ParallelToolCallingManager(
+            ToolCallbackResolver toolCallbackResolver,
+            ExecutorService toolExecutor,
+            int maxConcurrentCalls,
+            Map<String, List<String>> sequentialGroups,
+            Map<String, Integer> concurrencyLimits) {
+        this.delegate = DefaultToolCallingManager.builder().toolCallbackResolver(toolCallbackResolver).build();
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.toolExecutor = toolExecutor;
+        this.callPermits = new Semaphore(Math.max(1, maxConcurrentCalls));
+        sequentialGroups.forEach((group, tools) -> tools.forEach(tool -> toolGroups.put(tool, group)));
+        this.concurrencyLimits = Map.copyOf(concurrencyLimits);
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        Optional<AssistantMessage> toolCallMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst();
+        if (toolCallMessage.isEmpty()) {
+            throw new IllegalStateException("No tool call requested by the chat model");
+        }
+        AssistantMessage assistantMessage = toolCallMessage.get();
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+
+        Map<String, FunctionCallback> callbacks = new HashMap<>();
+        Map<String, Object> toolContext = null;
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options) {
+            options.getToolCallbacks().forEach(callback -> callbacks.putIfAbsent(callback.getName(), callback));
+            toolContext = options.getToolContext();
+        }
+
+        // 同一顺序组的调用放入同一个任务依次执行，其他调用各自一个任务
+        ToolResponseMessage.ToolResponse[] responses = new ToolResponseMessage.ToolResponse[toolCalls.size()];
+        boolean[] returnDirect = new boolean[toolCalls.size()];
+        Map<String, List<Integer>> batches = new LinkedHashMap<>();
+        for (int i = 0; i < toolCalls.size(); i++) {
+            String group = toolGroups.get(toolCalls.get(i).name());
+            batches.computeIfAbsent(group != null ? group : "#" + i, key -> new ArrayList<>()).add(i);
+        }
+
+        Map<String, Object> context = toolContext;
+        List<Future<?>> futures = new ArrayList<>();
+        for (List<Integer> batch : batches.values()) {
+            Runnable task = () -> {
+                for (int i : batch) {
+                    AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+                    FunctionCallback callback = resolve(callbacks, toolCall.name());
+                    returnDirect[i] = callback instanceof ToolCallback toolCallback
+                            && toolCallback.getToolMetadata().returnDirect();
+                    responses[i] = new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                            call(callback, toolCall, context));
+                }
+            };
+            if (batches.size() == 1) {
+                // 只有一个任务时直接在当前线程执行
+                task.run();
+            } else {
+                futures.add(toolExecutor.submit(task));
+            }
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Tool execution interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Tool execution failed", e.getCause());
+        }
+
+        ToolResponseMessage toolResponseMessage = new ToolResponseMessage(Arrays.asList(responses), Map.of());
+        List<Message> conversationHistory = new ArrayList<>(prompt.copy().getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(toolResponseMessage);
+
+        boolean allReturnDirect = true;
+        for (boolean direct : returnDirect) {
+            allReturnDirect &= direct;
+        }
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(allReturnDirect)
+                .build();
+    }
+
+    @SuppressWarnings("deprecation")
+    private FunctionCallback resolve(Map<String, FunctionCallback> callbacks, String toolName) {
+        FunctionCallback callback = callbacks.get(toolName);
+        if (callback == null) {
+            callback = toolCallbackResolver.resolve(toolName);
+        }
+        return callback;
+    }
+
+    @SuppressWarnings("deprecation")
+    private String call(FunctionCallback callback, AssistantMessage.ToolCall toolCall, Map<String, Object> toolContext) {
+        if (callback == null) {
+            return "Error: No tool found for name: " + toolCall.name();
+        }
+        String permitKey = toolGroups.getOrDefault(toolCall.name(), toolCall.name());
+        Semaphore permits = toolPermits(permitKey);
+        try {
+            // 先取得工具自身的许可再占用全局许可，等待中的调用不占用全局名额
+            if (permits != null) {
+                permits.acquire();
+            }
+            try {
+                callPermits.acquire();
+                try {
+                    return ToolCallContext.call(toolContext, () -> callback.call(toolCall.arguments()));
+                } finally {
+                    callPermits.release();
+                }
+            } finally {
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Error: tool call interrupted";
+        } catch (Exception e) {
+            LOGGER.error("Tool {} failed: {}", toolCall.name(), e.getMessage());
+            return "Error: " + e.getMessage();
+        }
+    }
+
+    private Semaphore toolPermits(String key) {
+        Integer limit = concurrencyLimits.get(key);
+        if (limit == null) {
+            return null;
+        }
+        return toolPermits.computeIfAbsent(key, k -> new Semaphore(Math.max(1, limit)));
+    }
+}
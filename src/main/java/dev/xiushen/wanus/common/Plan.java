@@ -0,0 +1,215 @@
+package dev.xiushen.wanus.common;
+
+import dev.xiushen.wanus.enums.StepStatus;
+
+import java.util.*;
+
+/**
+ * 计划数据，步骤状态和备注按步骤索引保存在数组中
+ *      维护第一个未结束步骤的游标，查找下一个可执行步骤时不需要从头扫描，也不需要复制步骤列表
+ *      计划会被计划流程、并发执行的步骤和规划工具同时访问，所有读写都在对象锁内完成
+ */
+public class Plan {
+
+    private final String planId;
+    private String query;
+    private String title;
+    private List<PlanStep> steps;
+    private StepStatus[] statuses;
+    private String[] notes;
+    private boolean sequential;
+    private int cursor;
+
+    public Plan(String planId, String title, List<String> steps, List<List<Integer>> dependencies) {
+        this.planId = planId;
+        this.title = title;
+        this.sequential = dependencies == null;
+        this.steps = buildSteps(steps, dependencies);
+        this.statuses = new StepStatus[steps.size()];
+        Arrays.fill(this.statuses, StepStatus.NOT_STARTED);
+        this.notes = new String[steps.size()];
+        Arrays.fill(this.notes, "");
+    }
+
+    /**
+     * 从持久化的状态恢复计划
+     *      中断时执行中的步骤没有完成，恢复为未开始，重新执行
+     */
+    public static Plan restore(String planId, String query, String title, List<String> steps,
+                               List<List<Integer>> dependencies, List<StepStatus> statuses, List<String> notes) {
+        Plan plan = new Plan(planId, title, steps, dependencies);
+        plan.query = query;
+        for (int i = 0; i < steps.size(); i++) {
+            StepStatus status = i < statuses.size() ? statuses.get(i) : StepStatus.NOT_STARTED;
+            plan.statuses[i] = status == StepStatus.IN_PROGRESS ? StepStatus.NOT_STARTED : status;
+            plan.notes[i] = i < notes.size() && notes.get(i) != null ? notes.get(i) : "";
+        }
+        return plan;
+    }
+
+    private static List<PlanStep> buildSteps(List<String> steps, List<List<Integer>> dependencies) {
+        List<PlanStep> planSteps = new ArrayList<>(steps.size());
+        for (int i = 0; i < steps.size(); i++) {
+            planSteps.add(new PlanStep(i, steps.get(i), dependencies != null ? dependencies.get(i) : null));
+        }
+        return Collections.unmodifiableList(planSteps);
+    }
+
+    public String getPlanId() {
+        return planId;
+    }
+
+    /**
+     * 生成该计划的用户请求，用于重启后恢复执行
+     */
+    public synchronized String getQuery() {
+        return query;
+    }
+
+    public synchronized void setQuery(String query) {
+        this.query = query;
+    }
+
+    public synchronized String getTitle() {
+        return title;
+    }
+
+    public synchronized void setTitle(String title) {
+        this.title = title;
+    }
+
+    /**
+     * 步骤列表，不可修改，更新步骤时会整体替换
+     */
+    public synchronized List<PlanStep> getSteps() {
+        return steps;
+    }
+
+    public synchronized int size() {
+        return steps.size();
+    }
+
+    /**
+     * 是否按顺序执行，创建计划时未声明步骤依赖即为顺序执行
+     */
+    public synchronized boolean isSequential() {
+        return sequential;
+    }
+
+    public synchronized StepStatus getStatus(int stepIndex) {
+        return statuses[stepIndex];
+    }
+
+    public synchronized String getNotes(int stepIndex) {
+        return notes[stepIndex];
+    }
+
+    /**
+     * 所有步骤都已结束（完成或阻塞）
+     */
+    public synchronized boolean isFinished() {
+        for (StepStatus status : statuses) {
+            if (status.isActive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized int countSteps(StepStatus status) {
+        int count = 0;
+        for (StepStatus stepStatus : statuses) {
+            if (stepStatus == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 更新步骤状态和备注
+     * @param stepIndex 步骤索引
+     * @param status 步骤状态，为null时不修改
+     * @param stepNotes 步骤备注，为null时不修改
+     */
+    public synchronized void markStep(int stepIndex, StepStatus status, String stepNotes) {
+        if (stepIndex < 0 || stepIndex >= steps.size()) {
+            throw new IndexOutOfBoundsException(
+                    "Invalid step_index: " + stepIndex + ". Valid indices range from 0 to " + (steps.size() - 1) + ".");
+        }
+        if (status != null) {
+            statuses[stepIndex] = status;
+            if (status.isActive() && stepIndex < cursor) {
+                cursor = stepIndex;
+            }
+        }
+        if (stepNotes != null) {
+            notes[stepIndex] = stepNotes;
+        }
+    }
+
+    /**
+     * 替换计划步骤，内容未变化的步骤保留原有的状态和备注
+     *      原有的步骤依赖按索引声明，步骤变化后不再可靠，更新后计划退回顺序执行
+     */
+    public synchronized void updateSteps(List<String> newSteps) {
+        StepStatus[] newStatuses = new StepStatus[newSteps.size()];
+        String[] newNotes = new String[newSteps.size()];
+        for (int i = 0; i < newSteps.size(); i++) {
+            if (i < steps.size() && newSteps.get(i).equals(steps.get(i).getText())) {
+                newStatuses[i] = statuses[i];
+                newNotes[i] = notes[i];
+            } else {
+                newStatuses[i] = StepStatus.NOT_STARTED;
+                newNotes[i] = "";
+            }
+        }
+        this.steps = buildSteps(newSteps, null);
+        this.statuses = newStatuses;
+        this.notes = newNotes;
+        this.sequential = true;
+        this.cursor = 0;
+    }
+
+    /**
+     * 获取可以开始执行的步骤并将其标记为执行中
+     *      顺序执行时，只有没有步骤在执行时才返回第一个未结束的步骤
+     *      声明了依赖时，返回依赖均已结束（完成或阻塞）且不在执行中的步骤
+     * @param running 正在执行的步骤索引
+     * @param limit 最多返回的步骤数
+     */
+    public synchronized List<PlanStep> claimReadySteps(Collection<Integer> running, int limit) {
+        while (cursor < statuses.length && !statuses[cursor].isActive()) {
+            cursor++;
+        }
+        if (cursor >= statuses.length || limit <= 0) {
+            return List.of();
+        }
+
+        if (sequential) {
+            if (!running.isEmpty()) {
+                return List.of();
+            }
+            statuses[cursor] = StepStatus.IN_PROGRESS;
+            return List.of(steps.get(cursor));
+        }
+
+        List<PlanStep> readySteps = new ArrayList<>();
+        for (int i = cursor; i < statuses.length && readySteps.size() < limit; i++) {
+            if (statuses[i].isActive() && !running.contains(i) && dependenciesFinished(steps.get(i))) {
+                statuses[i] = StepStatus.IN_PROGRESS;
+                readySteps.add(steps.get(i));
+            }
+        }
+        return readySteps;
+    }
+
+    private boolean dependenciesFinished(PlanStep step) {
+        for (int dependency : step.getDependencies()) {
+            if (statuses[dependency].isActive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
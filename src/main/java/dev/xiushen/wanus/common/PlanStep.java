@@ -0,0 +1,52 @@
+package dev.xiushen.wanus.common;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 计划中的单个步骤，创建时解析出执行该步骤的智能体类型，步骤内容创建后不再变化
+ */
+public class PlanStep {
+
+    private static final Pattern AGENT_TYPE_PATTERN = Pattern.compile("\\[\\s*([^]]+)\\s*]");
+
+    private final int index;
+    private final String text;
+    private final String agentType;
+    private final List<Integer> dependencies;
+
+    public PlanStep(int index, String text, List<Integer> dependencies) {
+        this.index = index;
+        this.text = text;
+        this.agentType = parseAgentType(text);
+        this.dependencies = dependencies != null ? List.copyOf(dependencies) : List.of();
+    }
+
+    private static String parseAgentType(String text) {
+        Matcher matcher = AGENT_TYPE_PATTERN.matcher(text);
+        return matcher.find() ? matcher.group(1).trim().toLowerCase() : null;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * 步骤开头[AGENT_NAME]标记的智能体类型（小写），没有标记时返回null
+     */
+    public String getAgentType() {
+        return agentType;
+    }
+
+    /**
+     * 该步骤依赖的前置步骤索引，计划未声明依赖时为空
+     */
+    public List<Integer> getDependencies() {
+        return dependencies;
+    }
+}
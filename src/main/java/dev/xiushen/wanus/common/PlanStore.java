@@ -0,0 +1,29 @@
+package dev.xiushen.wanus.common;
+
+import java.util.Collection;
+
+/**
+ * 计划存储，PlanningService和PlanningFlow通过它读写计划
+ *      Plan对象在内存中原地修改，修改之后需要调用update()让存储实现持久化当前状态
+ */
+public interface PlanStore {
+
+    /**
+     * 获取计划，不存在时返回null
+     */
+    Plan get(String planId);
+
+    /**
+     * 保存新创建的计划
+     */
+    void create(Plan plan);
+
+    /**
+     * 记录计划的最新状态
+     */
+    void update(Plan plan);
+
+    void remove(String planId);
+
+    Collection<Plan> list();
+}
@@ -0,0 +1,427 @@
+package dev.xiushen.wanus.common;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import dev.xiushen.wanus.enums.StepStatus;
+import dev.xiushen.wanus.utils.TokenUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * 计划模板存储，执行成功的计划按请求保存为模板，相同或相似的请求直接复用步骤，不再调用规划模型
+ *      模板按规范化请求的哈希分成256个分片文件保存在磁盘上，内存中只缓存最近使用的分片，模板数量不受堆大小限制
+ *      相似匹配使用MinHash签名和LSH分桶，桶索引同样按分片保存，查找时只读取命中桶对应的候选模板，再按Jaccard相似度确认
+ *      分片文件只追加写入，进程崩溃时写了一半的最后一行会被忽略，新模板直接写入缓存中的分片，不重新读取文件
+ *      模板数量上限平均分到各分片，分片超过上限或有过期模板时删除最早的模板并重写分片文件和相关的桶索引
+ */
+public class PlanTemplateStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlanTemplateStore.class);
+
+    private static final int SHARD_COUNT = 256;
+    private static final int BANDS = 16;
+    private static final int ROWS_PER_BAND = 4;
+    private static final long[] SEEDS = new long[BANDS * ROWS_PER_BAND];
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+
+    static {
+        Random random = new Random(0x5eedL);
+        for (int i = 0; i < SEEDS.length; i++) {
+            SEEDS[i] = random.nextLong();
+        }
+    }
+
+    private final Gson gson = new Gson();
+    private final Path templateDirectory;
+    private final Path bandDirectory;
+    private final double similarityThreshold;
+    private final int maxTemplatesPerShard;
+    private final long maxAgeMillis;
+    private final LoadingCache<Integer, Map<String, TemplateRecord>> templateShards;
+    private final LoadingCache<Integer, Map<String, Set<String>>> bandShards;
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong similarityHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+
+    /**
+     * @param directory 模板文件所在目录
+     * @param similarityThreshold 相似匹配的Jaccard相似度阈值，大于等于1时只做精确匹配
+     * @param cachedShards 内存中缓存的分片数量上限
+     * @param maxTemplates 保存的模板数量上限，平均分到各分片，不大于0时不限制
+     * @param maxAge 模板的保留时间，为null或不大于0时不过期
+     */
+    public PlanTemplateStore(
+            Path directory,
+            double similarityThreshold,
+            int cachedShards,
+            int maxTemplates,
+            Duration maxAge) throws IOException {
+        this.templateDirectory = directory.resolve("templates");
+        this.bandDirectory = directory.resolve("bands");
+        this.similarityThreshold = similarityThreshold;
+        this.maxTemplatesPerShard = maxTemplates > 0
+                ? Math.max(1, (maxTemplates + SHARD_COUNT - 1) / SHARD_COUNT) : Integer.MAX_VALUE;
+        this.maxAgeMillis = maxAge != null && maxAge.isPositive() ? maxAge.toMillis() : 0;
+        Files.createDirectories(templateDirectory);
+        Files.createDirectories(bandDirectory);
+
+        this.templateShards = CacheBuilder.newBuilder()
+                .maximumSize(cachedShards)
+                .build(CacheLoader.from(this::loadTemplateShard));
+        this.bandShards = CacheBuilder.newBuilder()
+                .maximumSize(cachedShards)
+                .build(CacheLoader.from(this::loadBandShard));
+    }
+
+    /**
+     * 查找可以复用的计划模板，先按规范化请求精确匹配，未命中且开启相似匹配时按相似度查找
+     */
+    public Optional<PlanTemplate> find(String query) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            return Optional.empty();
+        }
+        String key = DigestUtils.sha256Hex(normalized);
+        TemplateRecord exact = templateShards.getUnchecked(shardOf(key)).get(key);
+        if (exact != null && !isExpired(exact)) {
+            exactHits.incrementAndGet();
+            return Optional.of(exact.toTemplate());
+        }
+
+        if (similarityThreshold < 1) {
+            Set<String> tokens = tokenize(normalized);
+            TemplateRecord best = null;
+            double bestSimilarity = similarityThreshold;
+            for (String candidateKey : findCandidates(tokens)) {
+                TemplateRecord candidate = templateShards.getUnchecked(shardOf(candidateKey)).get(candidateKey);
+                if (candidate == null || isExpired(candidate)) {
+                    continue;
+                }
+                double similarity = jaccard(tokens, tokenize(candidate.query));
+                if (similarity >= bestSimilarity) {
+                    best = candidate;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best != null) {
+                similarityHits.incrementAndGet();
+                LOGGER.info("Plan template matched with similarity {}", String.format("%.3f", bestSimilarity));
+                return Optional.of(best.toTemplate());
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * 保存执行成功的计划，只有全部步骤都完成的计划才会成为模板，已有相同请求且未过期的模板时不覆盖
+     */
+    public synchronized void record(Plan plan) {
+        TemplateRecord record = TemplateRecord.of(plan);
+        if (record == null) {
+            return;
+        }
+        String normalized = normalize(record.query);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        record.key = DigestUtils.sha256Hex(normalized);
+        record.query = normalized;
+        int shard = shardOf(record.key);
+        TemplateRecord existing = templateShards.getUnchecked(shard).get(record.key);
+        if (existing != null && !isExpired(existing)) {
+            return;
+        }
+
+        try {
+            if (existing != null) {
+                // 过期的同名模板先删除，新模板替换它
+                removeTemplates(shard, List.of(existing));
+            }
+            // 写入文件后直接更新缓存中的分片，写入前被淘汰的分片重新读取时会包含新写入的行
+            appendLine(shardFile(templateDirectory, shard), gson.toJson(record));
+            templateShards.getUnchecked(shard).put(record.key, record);
+            for (String band : bands(tokenize(normalized))) {
+                int bandShard = shardOf(band);
+                appendLine(shardFile(bandDirectory, bandShard), gson.toJson(new BandRecord(band, record.key)));
+                bandShards.getUnchecked(bandShard)
+                        .computeIfAbsent(band, key -> ConcurrentHashMap.newKeySet())
+                        .add(record.key);
+            }
+            recorded.incrementAndGet();
+            enforceRetention(shard);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to record plan template for plan {}: {}", plan.getPlanId(), e.getMessage());
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(exactHits.get(), similarityHits.get(), misses.get(), recorded.get(), removed.get());
+    }
+
+    private boolean isExpired(TemplateRecord record) {
+        return maxAgeMillis > 0 && record.createdAt < System.currentTimeMillis() - maxAgeMillis;
+    }
+
+    /**
+     * 删除分片中过期的模板和超过分片上限的最早的模板
+     */
+    private void enforceRetention(int shard) throws IOException {
+        List<TemplateRecord> records = new ArrayList<>(templateShards.getUnchecked(shard).values());
+        records.sort(Comparator.comparingLong((TemplateRecord record) -> record.createdAt).reversed());
+        List<TemplateRecord> stale = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (i >= maxTemplatesPerShard || isExpired(records.get(i))) {
+                stale.add(records.get(i));
+            }
+        }
+        if (!stale.isEmpty()) {
+            removeTemplates(shard, stale);
+            LOGGER.info("Removed {} plan templates from shard {}", stale.size(), shard);
+        }
+    }
+
+    /**
+     * 从分片和桶索引中删除模板，重写对应的分片文件
+     */
+    private void removeTemplates(int shard, List<TemplateRecord> stale) throws IOException {
+        Map<String, TemplateRecord> records = templateShards.getUnchecked(shard);
+        Map<Integer, List<BandRecord>> staleBands = new HashMap<>();
+        for (TemplateRecord record : stale) {
+            records.remove(record.key);
+            for (String band : bands(tokenize(record.query))) {
+                staleBands.computeIfAbsent(shardOf(band), key -> new ArrayList<>()).add(new BandRecord(band, record.key));
+            }
+        }
+        rewrite(shardFile(templateDirectory, shard), records.values().stream().map(gson::toJson).toList());
+
+        for (Map.Entry<Integer, List<BandRecord>> entry : staleBands.entrySet()) {
+            Map<String, Set<String>> bands = bandShards.getUnchecked(entry.getKey());
+            for (BandRecord record : entry.getValue()) {
+                Set<String> keys = bands.get(record.band());
+                if (keys != null) {
+                    keys.remove(record.key());
+                    if (keys.isEmpty()) {
+                        bands.remove(record.band());
+                    }
+                }
+            }
+            List<String> lines = new ArrayList<>();
+            bands.forEach((band, keys) -> keys.forEach(key -> lines.add(gson.toJson(new BandRecord(band, key)))));
+            rewrite(shardFile(bandDirectory, entry.getKey()), lines);
+        }
+        removed.addAndGet(stale.size());
+    }
+
+    private Set<String> findCandidates(Set<String> tokens) {
+        Set<String> candidates = new LinkedHashSet<>();
+        for (String band : bands(tokens)) {
+            candidates.addAll(bandShards.getUnchecked(shardOf(band)).getOrDefault(band, Set.of()));
+        }
+        return candidates;
+    }
+
+    private Map<String, TemplateRecord> loadTemplateShard(Integer shard) {
+        Map<String, TemplateRecord> records = new ConcurrentHashMap<>();
+        readLines(shardFile(templateDirectory, shard), line -> {
+            TemplateRecord record = gson.fromJson(line, TemplateRecord.class);
+            if (record != null && record.key != null) {
+                records.putIfAbsent(record.key, record);
+            }
+        });
+        return records;
+    }
+
+    private Map<String, Set<String>> loadBandShard(Integer shard) {
+        Map<String, Set<String>> bands = new ConcurrentHashMap<>();
+        readLines(shardFile(bandDirectory, shard), line -> {
+            BandRecord record = gson.fromJson(line, BandRecord.class);
+            if (record != null && record.band != null && record.key != null) {
+                bands.computeIfAbsent(record.band, band -> ConcurrentHashMap.newKeySet()).add(record.key);
+            }
+        });
+        return bands;
+    }
+
+    private static void readLines(Path file, Consumer<String> consumer) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    consumer.accept(line);
+                } catch (JsonSyntaxException e) {
+                    LOGGER.warn("Ignoring truncated plan template record in {}", file.getFileName());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void appendLine(Path file, String line) throws IOException {
+        Files.writeString(file, line + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 先写临时文件再原子替换，重写过程中崩溃时保留原来的分片文件
+     */
+    private static void rewrite(Path file, List<String> lines) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tempFile, lines, StandardCharsets.UTF_8);
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Path shardFile(Path directory, int shard) {
+        return directory.resolve(String.format("%02x.jsonl", shard));
+    }
+
+    private static int shardOf(String hexKey) {
+        return Integer.parseInt(hexKey.substring(0, 2), 16) % SHARD_COUNT;
+    }
+
+    /**
+     * 规范化请求：统一小写、合并空白、去掉首尾的标点
+     */
+    static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String normalized = WHITESPACE_PATTERN.matcher(query.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+        return normalized.replaceAll("^[\\p{Punct}\\p{IsPunctuation}\\s]+|[\\p{Punct}\\p{IsPunctuation}\\s]+$", "");
+    }
+
+    /**
+     * 分词：连续的汉字按相邻两字切分，其他文字按单词切分
+     */
+    static Set<String> tokenize(String normalized) {
+        return TokenUtils.terms(normalized);
+    }
+
+    /**
+     * MinHash签名分成若干段，每段的哈希作为一个LSH桶，相似度高的请求大概率至少落入一个相同的桶
+     */
+    private static List<String> bands(Set<String> tokens) {
+        long[] signature = new long[SEEDS.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String token : tokens) {
+            long base = Hashing.murmur3_128().hashString(token, StandardCharsets.UTF_8).asLong();
+            for (int i = 0; i < SEEDS.length; i++) {
+                long hash = mix(base ^ SEEDS[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+
+        List<String> bands = new ArrayList<>(BANDS);
+        for (int band = 0; band < BANDS; band++) {
+            StringBuilder rows = new StringBuilder().append(band);
+            for (int row = 0; row < ROWS_PER_BAND; row++) {
+                rows.append(':').append(signature[band * ROWS_PER_BAND + row]);
+            }
+            bands.add(DigestUtils.sha256Hex(rows.toString()));
+        }
+        return bands;
+    }
+
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int intersection = 0;
+        for (String token : a) {
+            if (b.contains(token)) {
+                intersection++;
+            }
+        }
+        return intersection / (double) (a.size() + b.size() - intersection);
+    }
+
+    /**
+     * 可复用的计划模板
+     * @param dependencies 步骤依赖，为null时按顺序执行
+     */
+    public record PlanTemplate(String title, List<String> steps, List<List<Integer>> dependencies) {
+    }
+
+    /**
+     * @param exactHits 精确匹配命中次数
+     * @param similarityHits 相似匹配命中次数
+     * @param misses 未命中次数
+     * @param recorded 本次启动以来新增的模板数量
+     * @param removed 本次启动以来因过期或超过数量上限删除的模板数量
+     */
+    public record Stats(long exactHits, long similarityHits, long misses, long recorded, long removed) {
+    }
+
+    private static class TemplateRecord {
+        private String key;
+        private String query;
+        private String title;
+        private List<String> steps;
+        private List<List<Integer>> dependencies;
+        private long createdAt;
+
+        static TemplateRecord of(Plan plan) {
+            synchronized (plan) {
+                if (plan.getQuery() == null || plan.size() == 0 || plan.countSteps(StepStatus.COMPLETED) != plan.size()) {
+                    return null;
+                }
+                TemplateRecord record = new TemplateRecord();
+                record.query = plan.getQuery();
+                record.title = plan.getTitle();
+                record.steps = new ArrayList<>();
+                record.dependencies = plan.isSequential() ? null : new ArrayList<>();
+                for (PlanStep step : plan.getSteps()) {
+                    record.steps.add(step.getText());
+                    if (record.dependencies != null) {
+                        record.dependencies.add(step.getDependencies());
+                    }
+                }
+                record.createdAt = System.currentTimeMillis();
+                return record;
+            }
+        }
+
+        PlanTemplate toTemplate() {
+            return new PlanTemplate(title, steps, dependencies);
+        }
+    }
+
+    private record BandRecord(String band, String key) {
+    }
+}
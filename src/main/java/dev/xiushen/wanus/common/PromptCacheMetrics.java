@@ -0,0 +1,10 @@
+package dev.xiushen.wanus.common;
+
+/**
+ * 各ChatClient的提示词缓存统计
+ */
+public class PromptCacheMetrics {
+    public static final PromptCacheMetricsAdvisor planningMetrics = new PromptCacheMetricsAdvisor("planning");
+    public static final PromptCacheMetricsAdvisor agentMetrics = new PromptCacheMetricsAdvisor("agent");
+    public static final PromptCacheMetricsAdvisor finalizeMetrics = new PromptCacheMetricsAdvisor("finalize");
+}
@@ -0,0 +1,78 @@
+package dev.xiushen.wanus.common;
+
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.core.Ordered;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 统计模型调用的提示词token数和命中服务端提示词缓存的token数
+ *      缓存命中数来自OpenAI兼容接口返回的usage.prompt_tokens_details.cached_tokens
+ */
+public class PromptCacheMetricsAdvisor implements CallAroundAdvisor {
+
+    private final String name;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong cachedTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+
+    public PromptCacheMetricsAdvisor(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        AdvisedResponse advisedResponse = chain.nextAroundCall(advisedRequest);
+        record(advisedResponse.response());
+        return advisedResponse;
+    }
+
+    private void record(ChatResponse response) {
+        if (response == null || response.getMetadata() == null || response.getMetadata().getUsage() == null) {
+            return;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        calls.incrementAndGet();
+        promptTokens.addAndGet(toLong(usage.getPromptTokens()));
+        completionTokens.addAndGet(toLong(usage.getCompletionTokens()));
+        if (usage.getNativeUsage() instanceof OpenAiApi.Usage openAiUsage && openAiUsage.promptTokensDetails() != null) {
+            cachedTokens.addAndGet(toLong(openAiUsage.promptTokensDetails().cachedTokens()));
+        }
+    }
+
+    private static long toLong(Number value) {
+        return value == null ? 0 : value.longValue();
+    }
+
+    public Stats getStats() {
+        long prompt = promptTokens.get();
+        long cached = cachedTokens.get();
+        return new Stats(name, calls.get(), prompt, cached, completionTokens.get(),
+                prompt > 0 ? (double) cached / prompt : 0.0);
+    }
+
+    @Override
+    public String getName() {
+        return "PromptCacheMetricsAdvisor-" + name;
+    }
+
+    @Override
+    public int getOrder() {
+        // 最靠近模型调用，统计的是实际发送给模型的请求
+        return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+
+    /**
+     * @param cacheHitRatio 命中缓存的提示词token占比
+     */
+    public record Stats(String name, long calls, long promptTokens, long cachedTokens, long completionTokens,
+                        double cacheHitRatio) {
+    }
+}
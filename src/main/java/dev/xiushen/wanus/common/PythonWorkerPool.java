@@ -0,0 +1,570 @@
+package dev.xiushen.wanus.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import dev.xiushen.wanus.utils.ProcessRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 常驻的Python工作进程池
+ *      每次执行都启动python3需要付出解释器启动和numpy、pandas等模块的导入开销，工作进程启动时预先导入这些模块，之后反复执行代码
+ *      Java与工作进程通过stdin/stdout上的分帧协议通信：每帧是一行十进制字节长度加上UTF-8内容，请求为代码，响应为JSON
+ *      工作进程把协议使用的文件描述符复制到私有的描述符上，读取fd 0得到EOF，不会破坏协议
+ *      执行期间fd 1和fd 2重定向到临时文件，子进程和C扩展直接写入描述符的输出执行后追加到结果中
+ *      每次执行使用全新的全局命名空间和内置函数副本，执行后恢复工作目录、环境变量和sys.path，预先导入的模块保留在sys.modules中
+ *      超时后结束工作进程的整个进程树，内存超限、执行次数达到上限或进程异常时关闭重建
+ */
+public class PythonWorkerPool implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PythonWorkerPool.class);
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * 工作进程启动并导入预加载模块的最长等待时间
+     */
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+
+    /**
+     * 借出工作进程的最长等待时间，超过后返回繁忙
+     */
+    private static final Duration CHECKOUT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String WORKER_SCRIPT = """
+            import builtins, gc, importlib, json, os, sys, tempfile, traceback
+            from collections import deque
+
+            proto_in = os.fdopen(os.dup(0), 'rb')
+            proto_out = os.fdopen(os.dup(1), 'wb')
+            null_fd = os.open(os.devnull, os.O_RDONLY)
+            os.dup2(null_fd, 0)
+            os.dup2(2, 1)
+            sys.stdin = open(os.devnull)
+
+            preloaded = []
+            for name in filter(None, sys.argv[1].split(',')):
+                try:
+                    importlib.import_module(name)
+                    preloaded.append(name)
+                except Exception:
+                    pass
+
+            memory_limit = int(sys.argv[2])
+            if memory_limit > 0:
+                try:
+                    import resource
+                    resource.setrlimit(resource.RLIMIT_AS, (memory_limit, memory_limit))
+                except Exception:
+                    pass
+            max_chars = int(sys.argv[3])
+
+            try:
+                import ctypes
+                libc = ctypes.CDLL(None)
+            except Exception:
+                libc = None
+
+            base_cwd = os.getcwd()
+            base_env = dict(os.environ)
+            base_path = list(sys.path)
+
+
+            class BoundedWriter:
+                def __init__(self, limit):
+                    self.head_limit = limit // 4
+                    self.head = []
+                    self.head_size = 0
+                    self.tail = deque()
+                    self.tail_size = 0
+                    self.tail_limit = limit - self.head_limit
+                    self.omitted = 0
+
+                def write(self, text):
+                    text = str(text)
+                    written = len(text)
+                    if self.head_size < self.head_limit:
+                        part = text[:self.head_limit - self.head_size]
+                        self.head.append(part)
+                        self.head_size += len(part)
+                        text = text[len(part):]
+                    if text:
+                        self.tail.append(text)
+                        self.tail_size += len(text)
+                        while self.tail_size > self.tail_limit:
+                            extra = self.tail_size - self.tail_limit
+                            first = self.tail[0]
+                            if len(first) <= extra:
+                                self.tail.popleft()
+                                self.tail_size -= len(first)
+                                self.omitted += len(first)
+                            else:
+                                self.tail[0] = first[extra:]
+                                self.tail_size -= extra
+                                self.omitted += extra
+                    return written
+
+                def flush(self):
+                    pass
+
+                def isatty(self):
+                    return False
+
+                def getvalue(self):
+                    middle = '\\n... [%d characters omitted] ...\\n' % self.omitted if self.omitted else ''
+                    return ''.join(self.head) + middle + ''.join(self.tail)
+
+
+            def reset():
+                try:
+                    os.chdir(base_cwd)
+                except Exception:
+                    pass
+                os.environ.clear()
+                os.environ.update(base_env)
+                sys.path[:] = base_path
+                sys.argv = ['']
+                plt = sys.modules.get('matplotlib.pyplot')
+                if plt is not None:
+                    try:
+                        plt.close('all')
+                    except Exception:
+                        pass
+                gc.collect()
+
+
+            def capture_fds(captured):
+                saved = os.dup(1), os.dup(2)
+                os.dup2(captured.fileno(), 1)
+                os.dup2(captured.fileno(), 2)
+                return saved
+
+
+            def restore_fds(saved):
+                if libc is not None:
+                    try:
+                        libc.fflush(None)
+                    except Exception:
+                        pass
+                for fd, original in zip((1, 2), saved):
+                    os.dup2(original, fd)
+                    os.close(original)
+
+
+            def read_captured(captured, out):
+                captured.seek(0)
+                while True:
+                    chunk = captured.read(65536)
+                    if not chunk:
+                        break
+                    out.write(chunk.decode('utf-8', 'replace'))
+
+
+            def run(code):
+                out = BoundedWriter(max_chars)
+                namespace = {'__name__': '__main__', '__builtins__': dict(vars(builtins))}
+                ok, recycle = True, False
+                captured = tempfile.TemporaryFile()
+                saved = capture_fds(captured)
+                sys.stdout = sys.stderr = out
+                try:
+                    exec(compile(code, '<code>', 'exec'), namespace)
+                except SystemExit as e:
+                    if e.code not in (None, 0):
+                        ok = False
+                        out.write('SystemExit: %s\\n' % e.code)
+                except BaseException as e:
+                    ok = False
+                    recycle = isinstance(e, MemoryError)
+                    traceback.print_exception(type(e), e, e.__traceback__.tb_next, file=out)
+                finally:
+                    sys.stdout, sys.stderr = sys.__stdout__, sys.__stderr__
+                    restore_fds(saved)
+                    namespace.clear()
+                    reset()
+                try:
+                    read_captured(captured, out)
+                finally:
+                    captured.close()
+                return {'ok': ok, 'output': out.getvalue(), 'recycle': recycle}
+
+
+            def read_frame():
+                header = proto_in.readline()
+                if not header:
+                    return None
+                return proto_in.read(int(header)).decode('utf-8')
+
+
+            def write_frame(value):
+                data = json.dumps(value).encode('utf-8')
+                proto_out.write(b'%d\\n' % len(data))
+                proto_out.write(data)
+                proto_out.flush()
+
+
+            write_frame({'ok': True, 'output': ','.join(preloaded), 'recycle': False})
+            while True:
+                code = read_frame()
+                if code is None:
+                    break
+                write_frame(run(code))
+            """;
+
+    private final List<String> command;
+    private final List<String> preloadModules;
+    private final long memoryLimitBytes;
+    private final int maxWorkers;
+    private final int minIdle;
+    private final int maxRuns;
+    private final int maxOutputChars;
+    private final Duration timeout;
+    private final Path workingDirectory;
+
+    private final Semaphore permits;
+    private final BlockingDeque<Worker> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("python-worker-", 0).factory());
+    private volatile boolean closed;
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalStartupMillis = new AtomicLong();
+
+    /**
+     * @param command 启动Python解释器的命令
+     * @param preloadModules 预先导入的模块
+     * @param memoryLimitBytes 工作进程的内存上限，0表示不限制
+     * @param maxWorkers 工作进程数量上限，即同时执行的代码数量
+     * @param minIdle 保持预热的空闲工作进程数量
+     * @param maxRuns 每个工作进程最多执行的次数
+     * @param maxOutputChars 单次执行保留的输出字符数
+     * @param timeout 单次执行的超时时间
+     * @param workingDirectory 工作进程的工作目录
+     */
+    public PythonWorkerPool(
+            List<String> command,
+            List<String> preloadModules,
+            long memoryLimitBytes,
+            int maxWorkers,
+            int minIdle,
+            int maxRuns,
+            int maxOutputChars,
+            Duration timeout,
+            Path workingDirectory) {
+        this.command = List.copyOf(command);
+        this.preloadModules = List.copyOf(preloadModules);
+        this.memoryLimitBytes = Math.max(0, memoryLimitBytes);
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.minIdle = Math.min(Math.max(0, minIdle), this.maxWorkers);
+        this.maxRuns = Math.max(1, maxRuns);
+        this.maxOutputChars = Math.max(1000, maxOutputChars);
+        this.timeout = timeout;
+        this.workingDirectory = workingDirectory;
+        this.permits = new Semaphore(this.maxWorkers, true);
+
+        // 预热在后台进行，导入pandas等模块较慢，不阻塞应用启动
+        executor.execute(this::warmUp);
+    }
+
+    /**
+     * 执行一段Python代码，返回print等输出，执行失败时输出中包含异常堆栈
+     */
+    public Result execute(String code) {
+        if (closed) {
+            return new Result(false, "Python worker pool is closed.");
+        }
+        try {
+            if (!permits.tryAcquire(CHECKOUT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                return new Result(false, "All " + maxWorkers + " Python workers are busy, try again later.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Result(false, "Interrupted while waiting for a Python worker.");
+        }
+
+        Worker worker = null;
+        try {
+            worker = checkout();
+            executions.incrementAndGet();
+            return worker.execute(code);
+        } catch (TimeoutException e) {
+            if (worker == null) {
+                failures.incrementAndGet();
+                return new Result(false, "Python worker did not start within " + STARTUP_TIMEOUT.toSeconds()
+                        + " seconds.");
+            }
+            timeouts.incrementAndGet();
+            LOGGER.warn("Python execution timed out after {}s, killed worker {}", timeout.toSeconds(),
+                    worker.process.pid());
+            worker.broken = true;
+            return new Result(false, "Execution timed out after " + timeout.toSeconds()
+                    + " seconds and was terminated.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (worker != null) {
+                worker.broken = true;
+            }
+            return new Result(false, "Interrupted while executing Python code.");
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            LOGGER.warn("Python worker failed: {}", e.getMessage());
+            if (worker != null) {
+                worker.broken = true;
+            }
+            return new Result(false, "Python worker failed: " + e.getMessage());
+        } finally {
+            if (worker != null) {
+                checkin(worker);
+            }
+            permits.release();
+        }
+    }
+
+    private Worker checkout() throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        Worker worker;
+        while ((worker = idle.pollFirst()) != null) {
+            if (worker.process.isAlive()) {
+                return worker;
+            }
+            discard(worker);
+        }
+        return start();
+    }
+
+    private void checkin(Worker worker) {
+        if (closed || worker.broken || worker.runs >= maxRuns || !worker.process.isAlive()) {
+            discard(worker);
+            executor.execute(this::warmUp);
+            return;
+        }
+        // 预热与借出同时启动工作进程时可能短暂超过上限，多出的进程直接关闭
+        if (total.get() > maxWorkers) {
+            discard(worker);
+            return;
+        }
+        idle.addFirst(worker);
+    }
+
+    private void discard(Worker worker) {
+        recycled.incrementAndGet();
+        total.decrementAndGet();
+        worker.close();
+    }
+
+    /**
+     * 补足预热的空闲工作进程
+     */
+    private void warmUp() {
+        while (!closed && idle.size() < minIdle) {
+            if (total.get() >= maxWorkers) {
+                return;
+            }
+            try {
+                Worker worker = start();
+                if (closed) {
+                    discard(worker);
+                    return;
+                }
+                idle.addLast(worker);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to warm up Python worker: {}", e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private Worker start() throws IOException, InterruptedException, TimeoutException, ExecutionException {
+        long startNanos = System.nanoTime();
+        Files.createDirectories(workingDirectory);
+        List<String> cmd = new ArrayList<>(command);
+        cmd.add("-u");
+        cmd.add("-c");
+        cmd.add(WORKER_SCRIPT);
+        cmd.add(String.join(",", preloadModules));
+        cmd.add(String.valueOf(memoryLimitBytes));
+        cmd.add(String.valueOf(maxOutputChars));
+        ProcessBuilder builder = new ProcessBuilder(cmd).directory(workingDirectory.toFile());
+        // 数值计算库默认按CPU核数创建线程，每个线程都占用虚拟内存，限制为单线程避免触发内存上限
+        Map<String, String> environment = builder.environment();
+        environment.put("OPENBLAS_NUM_THREADS", "1");
+        environment.put("OMP_NUM_THREADS", "1");
+        environment.put("MKL_NUM_THREADS", "1");
+        environment.put("PYTHONIOENCODING", "utf-8");
+        Process process = builder.start();
+        total.incrementAndGet();
+
+        Worker worker = new Worker(process);
+        try {
+            Frame ready = worker.read(STARTUP_TIMEOUT);
+            long startupMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            started.incrementAndGet();
+            totalStartupMillis.addAndGet(startupMillis);
+            LOGGER.info("Started Python worker {} in {}ms, preloaded modules: {}", process.pid(), startupMillis,
+                    ready.output());
+            return worker;
+        } catch (IOException | InterruptedException | TimeoutException | ExecutionException e) {
+            total.decrementAndGet();
+            worker.close();
+            throw e;
+        }
+    }
+
+    public Stats getStats() {
+        long count = started.get();
+        return new Stats(maxWorkers, total.get(), idle.size(), maxWorkers - permits.availablePermits(),
+                executions.get(), started.get(), recycled.get(), timeouts.get(), failures.get(),
+                count == 0 ? 0 : (double) totalStartupMillis.get() / count);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Worker worker;
+        while ((worker = idle.pollFirst()) != null) {
+            total.decrementAndGet();
+            worker.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private class Worker {
+        private final Process process;
+        private final InputStream input;
+        private final OutputStream output;
+        private int runs;
+        private boolean broken;
+
+        private Worker(Process process) {
+            this.process = process;
+            this.input = new BufferedInputStream(process.getInputStream());
+            this.output = new BufferedOutputStream(process.getOutputStream());
+            // 执行之外写入fd 1和fd 2的输出（例如执行结束后仍在运行的子进程）不属于协议，持续读取避免管道写满
+            executor.execute(() -> {
+                try (BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        LOGGER.debug("python worker {}: {}", process.pid(), line);
+                    }
+                } catch (IOException e) {
+                    // 工作进程关闭
+                }
+            });
+        }
+
+        private Result execute(String code)
+                throws IOException, InterruptedException, TimeoutException, ExecutionException {
+            runs++;
+            byte[] data = code.getBytes(StandardCharsets.UTF_8);
+            output.write((data.length + "\n").getBytes(StandardCharsets.US_ASCII));
+            output.write(data);
+            output.flush();
+            Frame frame = read(timeout);
+            broken = frame.recycle();
+            return new Result(frame.ok(), frame.output());
+        }
+
+        /**
+         * 读取一帧响应，超时后结束工作进程，阻塞的读取随之结束
+         */
+        private Frame read(Duration wait) throws InterruptedException, TimeoutException, ExecutionException,
+                IOException {
+            Future<Frame> future = executor.submit(this::readFrame);
+            try {
+                return future.get(wait.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | InterruptedException e) {
+                close();
+                future.cancel(true);
+                throw e;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw e;
+            }
+        }
+
+        private Frame readFrame() throws IOException {
+            StringBuilder header = new StringBuilder();
+            int b;
+            while ((b = input.read()) != '\n') {
+                if (b == -1) {
+                    throw new EOFException("Python worker exited with code " + exitCode());
+                }
+                header.append((char) b);
+            }
+            int length;
+            try {
+                length = Integer.parseInt(header.toString().trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid frame header from Python worker: " + header);
+            }
+            byte[] data = input.readNBytes(length);
+            if (data.length < length) {
+                throw new EOFException("Python worker exited with code " + exitCode());
+            }
+            try {
+                return GSON.fromJson(new String(data, StandardCharsets.UTF_8), Frame.class);
+            } catch (JsonSyntaxException e) {
+                throw new IOException("Invalid response from Python worker", e);
+            }
+        }
+
+        private String exitCode() {
+            try {
+                return process.waitFor(1, TimeUnit.SECONDS) ? String.valueOf(process.exitValue()) : "unknown";
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "unknown";
+            }
+        }
+
+        private void close() {
+            try {
+                output.close();
+            } catch (IOException e) {
+                // 工作进程已经退出
+            }
+            try {
+                ProcessRunner.killTree(process);
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private record Frame(boolean ok, String output, boolean recycle) {
+    }
+
+    /**
+     * 一次代码执行的结果
+     * @param success 代码是否正常执行完成，没有抛出异常和超时
+     */
+    public record Result(boolean success, String output) {
+    }
+
+    /**
+     * @param busy 正在执行代码的工作进程数量
+     * @param averageStartupMillis 工作进程启动并完成预加载的平均耗时
+     */
+    public record Stats(int maxWorkers, int total, int idle, int busy, long executions, long started,
+                        long recycled, long timeouts, long failures, double averageStartupMillis) {
+    }
+}
@@ -0,0 +1,295 @@
+package dev.xiushen.wanus.common;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.api.AdvisedResponse;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAroundAdvisorChain;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.model.function.FunctionCallback;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 模型响应缓存
+ *      位于记忆advisor之后，缓存键是完整提示词（系统提示、历史消息、用户消息、工具列表）规范化后的哈希，
+ *      规范化会去掉计划ID、工具调用ID和多余空白，不同计划中内容相同的请求可以命中
+ *      开启相似度匹配后，精确匹配未命中时在结构相同（系统提示、工具列表、消息类型序列一致）的缓存项中按向量相似度查找
+ *      相似度按最近一条用户消息及之后的工具结果计算，只有文本响应参与相似度匹配，工具调用依赖当前页面和工具状态，只在精确匹配时复用
+ *      命中时直接返回缓存的响应，响应中的工具调用会换成新的ID，避免同一会话中出现重复的工具调用ID
+ */
+public class ResponseCacheAdvisor implements CallAroundAdvisor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCacheAdvisor.class);
+
+    private static final Pattern PLAN_ID_PATTERN = Pattern.compile("plan_\\d+_\\d+(_step_\\d+)?");
+    private static final Pattern TOOL_CALL_ID_PATTERN = Pattern.compile("call_[A-Za-z0-9_-]+");
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("\\s+");
+    private static final int MAX_EMBEDDING_CHARS = 8000;
+
+    private final Cache<String, ChatResponse> responses;
+    private final EmbeddingModel embeddingModel;
+    private final double similarityThreshold;
+    private final int maxEntries;
+    private final Deque<IndexEntry> similarityIndex = new ArrayDeque<>();
+    private final AtomicLong similarityHits = new AtomicLong();
+
+    /**
+     * @param ttl 缓存有效期
+     * @param maxEntries 缓存条数上限
+     * @param embeddingModel 用于相似度匹配的向量模型，为null时只做精确匹配
+     * @param similarityThreshold 相似度匹配的余弦相似度阈值
+     */
+    public ResponseCacheAdvisor(Duration ttl, int maxEntries, EmbeddingModel embeddingModel, double similarityThreshold) {
+        this.responses = CacheBuilder.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public AdvisedResponse aroundCall(AdvisedRequest advisedRequest, CallAroundAdvisorChain chain) {
+        String promptText = normalize(advisedRequest);
+        String key = DigestUtils.sha256Hex(promptText);
+
+        ChatResponse cached = responses.getIfPresent(key);
+        float[] embedding = null;
+        String structureKey = null;
+        if (cached == null && embeddingModel != null) {
+            structureKey = structureKey(advisedRequest);
+            embedding = embed(recentText(advisedRequest));
+            cached = findSimilar(structureKey, embedding);
+        }
+        if (cached != null) {
+            LOGGER.info("LLM response cache hit: {}", key);
+            return new AdvisedResponse(withFreshToolCallIds(cached), advisedRequest.adviseContext());
+        }
+
+        AdvisedResponse advisedResponse = chain.nextAroundCall(advisedRequest);
+        ChatResponse response = advisedResponse.response();
+        if (isCacheable(response)) {
+            responses.put(key, response);
+            if (embedding != null && !response.getResult().getOutput().hasToolCalls()) {
+                index(new IndexEntry(key, structureKey, embedding));
+            }
+        }
+        return advisedResponse;
+    }
+
+    private static boolean isCacheable(ChatResponse response) {
+        if (response == null || response.getResult() == null || response.getResult().getOutput() == null) {
+            return false;
+        }
+        AssistantMessage output = response.getResult().getOutput();
+        return output.hasToolCalls() || (output.getText() != null && !output.getText().isBlank());
+    }
+
+    /**
+     * 把请求渲染为规范化的文本
+     */
+    private static String normalize(AdvisedRequest request) {
+        StringBuilder text = new StringBuilder();
+        text.append("[system]").append(request.systemText()).append('\n');
+        for (Message message : request.messages()) {
+            appendMessage(text, message);
+        }
+        text.append("[user]").append(request.userText()).append('\n');
+        text.append("[tools]").append(toolNames(request)).append('\n');
+        return normalize(text);
+    }
+
+    /**
+     * 请求中区分不同请求的部分：最近一条用户消息及其后的工具调用和结果，系统提示、工具列表和较早的历史在结构相同的请求中基本一致
+     */
+    private static String recentText(AdvisedRequest request) {
+        List<Message> messages = request.messages();
+        int start = 0;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage) {
+                start = i;
+                break;
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        for (Message message : messages.subList(start, messages.size())) {
+            appendMessage(text, message);
+        }
+        text.append("[user]").append(request.userText()).append('\n');
+        return normalize(text);
+    }
+
+    /**
+     * 去掉计划ID、工具调用ID和多余空白
+     */
+    private static String normalize(CharSequence text) {
+        String normalized = PLAN_ID_PATTERN.matcher(text).replaceAll("plan_#");
+        normalized = TOOL_CALL_ID_PATTERN.matcher(normalized).replaceAll("call_#");
+        return WHITESPACE_PATTERN.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private static void appendMessage(StringBuilder text, Message message) {
+        text.append('[').append(message.getMessageType().getValue()).append(']');
+        if (message.getText() != null) {
+            text.append(message.getText());
+        }
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                text.append("{call ").append(toolCall.name()).append(' ').append(toolCall.arguments()).append('}');
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                text.append("{result ").append(response.name()).append(' ').append(response.responseData()).append('}');
+            }
+        }
+        text.append('\n');
+    }
+
+    private static List<String> toolNames(AdvisedRequest request) {
+        List<String> names = new ArrayList<>(request.functionNames());
+        for (FunctionCallback callback : request.functionCallbacks()) {
+            names.add(callback.getName());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    /**
+     * 相似度匹配只在结构相同的请求之间进行，避免把不同阶段的请求当作相似请求
+     */
+    private static String structureKey(AdvisedRequest request) {
+        StringBuilder structure = new StringBuilder(request.systemText()).append('|').append(toolNames(request));
+        for (Message message : request.messages()) {
+            structure.append('|').append(message.getMessageType().getValue());
+        }
+        return DigestUtils.sha256Hex(structure.toString());
+    }
+
+    private float[] embed(String text) {
+        try {
+            // 超长时保留结尾，最新的工具结果在最后
+            return embeddingModel.embed(text.length() > MAX_EMBEDDING_CHARS
+                    ? text.substring(text.length() - MAX_EMBEDDING_CHARS)
+                    : text);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to embed prompt for similarity lookup: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized ChatResponse findSimilar(String structureKey, float[] embedding) {
+        if (embedding == null) {
+            return null;
+        }
+        IndexEntry best = null;
+        double bestSimilarity = similarityThreshold;
+        Iterator<IndexEntry> iterator = similarityIndex.iterator();
+        while (iterator.hasNext()) {
+            IndexEntry entry = iterator.next();
+            if (responses.getIfPresent(entry.key) == null) {
+                // 缓存项已过期或被淘汰
+                iterator.remove();
+                continue;
+            }
+            if (!entry.structureKey.equals(structureKey)) {
+                continue;
+            }
+            double similarity = cosineSimilarity(embedding, entry.embedding);
+            if (similarity >= bestSimilarity) {
+                best = entry;
+                bestSimilarity = similarity;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        similarityHits.incrementAndGet();
+        return responses.getIfPresent(best.key);
+    }
+
+    private synchronized void index(IndexEntry entry) {
+        similarityIndex.addLast(entry);
+        while (similarityIndex.size() > maxEntries) {
+            similarityIndex.removeFirst();
+        }
+    }
+
+    private static double cosineSimilarity(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private static ChatResponse withFreshToolCallIds(ChatResponse response) {
+        List<Generation> generations = new ArrayList<>();
+        for (Generation generation : response.getResults()) {
+            AssistantMessage output = generation.getOutput();
+            if (!output.hasToolCalls()) {
+                generations.add(generation);
+                continue;
+            }
+            List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+            for (AssistantMessage.ToolCall toolCall : output.getToolCalls()) {
+                toolCalls.add(new AssistantMessage.ToolCall("call_" + UUID.randomUUID().toString().replace("-", ""),
+                        toolCall.type(), toolCall.name(), toolCall.arguments()));
+            }
+            generations.add(new Generation(new AssistantMessage(output.getText(), output.getMetadata(), toolCalls),
+                    generation.getMetadata()));
+        }
+        return new ChatResponse(generations, response.getMetadata());
+    }
+
+    public Stats getStats() {
+        CacheStats stats = responses.stats();
+        return new Stats(responses.size(), stats.hitCount() + similarityHits.get(), similarityHits.get(),
+                stats.missCount() - similarityHits.get(), stats.evictionCount());
+    }
+
+    @Override
+    public String getName() {
+        return "ResponseCacheAdvisor";
+    }
+
+    @Override
+    public int getOrder() {
+        // 在记忆advisor之后执行，缓存键包含历史消息
+        return Advisor.DEFAULT_CHAT_MEMORY_PRECEDENCE_ORDER + 100;
+    }
+
+    private record IndexEntry(String key, String structureKey, float[] embedding) {
+    }
+
+    /**
+     * @param hits 命中次数，包括相似度匹配命中
+     * @param similarityHits 相似度匹配命中次数
+     */
+    public record Stats(long size, long hits, long similarityHits, long misses, long evictions) {
+    }
+}
@@ -0,0 +1,60 @@
+package dev.xiushen.wanus.common;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 工具调用的上下文
+ *      智能体通过ToolContext传入会话ID和当前步骤，工具调用管理器在执行工具前绑定到当前线程，
+ *      工具实现（例如浏览器会话池）据此区分不同计划和步骤的调用，不需要在每个工具方法上增加参数
+ */
+public final class ToolCallContext {
+
+    public static final String CONVERSATION_ID = "conversationId";
+
+    public static final String STEP_TEXT = "stepText";
+
+    private static final ThreadLocal<Map<String, Object>> CONTEXT = new ThreadLocal<>();
+
+    private ToolCallContext() {
+    }
+
+    /**
+     * 当前线程正在执行的工具调用所属的会话ID，不在工具调用中时为null
+     */
+    public static String getConversationId() {
+        return get(CONVERSATION_ID);
+    }
+
+    /**
+     * 当前线程正在执行的工具调用所属的计划步骤，不在计划步骤中时为null
+     */
+    public static String getStepText() {
+        return get(STEP_TEXT);
+    }
+
+    private static String get(String key) {
+        Map<String, Object> context = CONTEXT.get();
+        Object value = context != null ? context.get(key) : null;
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * 在绑定了工具上下文的线程中执行工具调用，结束后恢复原来的值
+     */
+    public static <T> T call(Map<String, Object> toolContext, Supplier<T> call) {
+        Map<String, Object> previous = CONTEXT.get();
+        if (toolContext != null) {
+            CONTEXT.set(toolContext);
+        }
+        try {
+            return call.get();
+        } finally {
+            if (previous != null) {
+                CONTEXT.set(previous);
+            } else {
+                CONTEXT.remove();
+            }
+        }
+    }
+}
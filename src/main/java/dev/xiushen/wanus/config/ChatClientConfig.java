@@ -1,14 +1,21 @@
 package dev.xiushen.wanus.config;
 
 import dev.xiushen.wanus.common.ChatMemories;
+import dev.xiushen.wanus.common.PromptCacheMetrics;
+import dev.xiushen.wanus.common.ResponseCacheAdvisor;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.SimpleLoggerAdvisor;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 @Configuration
 public class ChatClientConfig {
 
@@ -153,33 +160,60 @@ public class ChatClientConfig {
 			When you are done with the task, you can finalize the plan by summarizing the steps taken and the output of each step, call Summary tool to record the result.
 
 			""";
+    /**
+     * 模型响应缓存，用于chatClient和finalizeChatClient
+     *      planningChatClient不使用：创建计划时模型会调用规划工具写入计划，命中缓存会跳过这次工具调用，计划不会被创建
+     */
+    @Bean
+    public ResponseCacheAdvisor responseCacheAdvisor(
+            ManusProperties manusProperties,
+            ObjectProvider<EmbeddingModel> embeddingModelProvider) {
+        ManusProperties.LlmCache llmCache = manusProperties.getLlmCache();
+        EmbeddingModel embeddingModel = llmCache.isSimilarityEnabled() ? embeddingModelProvider.getIfAvailable() : null;
+        return new ResponseCacheAdvisor(llmCache.getTtl(), llmCache.getMaxEntries(), embeddingModel,
+                llmCache.getSimilarityThreshold());
+    }
+
     @Bean
     public ChatClient planningChatClient(ChatModel chatModel) {
         return ChatClient.builder(chatModel)
                 .defaultSystem(PLANNING_SYSTEM_PROMPT)
                 .defaultAdvisors(new MessageChatMemoryAdvisor(ChatMemories.planningMemory))
                 .defaultAdvisors(new SimpleLoggerAdvisor())
+                .defaultAdvisors(PromptCacheMetrics.planningMetrics)
                 .build();
     }
 
     @Bean
-    public ChatClient chatClient(ChatModel chatModel) {
+    public ChatClient chatClient(
+            ChatModel chatModel,
+            ManusProperties manusProperties,
+            ResponseCacheAdvisor responseCacheAdvisor) {
         return ChatClient.builder(chatModel)
                 .defaultSystem(MANUS_SYSTEM_PROMPT)
                 .defaultAdvisors(new MessageChatMemoryAdvisor(ChatMemories.memory))
                 .defaultAdvisors(new SimpleLoggerAdvisor())
+                .defaultAdvisors(PromptCacheMetrics.agentMetrics)
+                .defaultAdvisors(responseCacheAdvisors(manusProperties, responseCacheAdvisor))
                 .defaultOptions(OpenAiChatOptions.builder().internalToolExecutionEnabled(false).build())
                 .build();
     }
 
     @Bean
-    public ChatClient finalizeChatClient(ChatModel chatModel) {
+    public ChatClient finalizeChatClient(
+            ChatModel chatModel,
+            ManusProperties manusProperties,
+            ResponseCacheAdvisor responseCacheAdvisor) {
         return ChatClient.builder(chatModel)
                 .defaultSystem(FINALIZE_SYSTEM_PROMPT)
                 .defaultAdvisors(new MessageChatMemoryAdvisor(ChatMemories.finalizeMemory))
                 .defaultAdvisors(new SimpleLoggerAdvisor())
+                .defaultAdvisors(PromptCacheMetrics.finalizeMetrics)
+                .defaultAdvisors(responseCacheAdvisors(manusProperties, responseCacheAdvisor))
                 .build();
     }
 
-
+    private static List<Advisor> responseCacheAdvisors(ManusProperties manusProperties, ResponseCacheAdvisor responseCacheAdvisor) {
+        return manusProperties.getLlmCache().isEnabled() ? List.of(responseCacheAdvisor) : List.of();
+    }
 }
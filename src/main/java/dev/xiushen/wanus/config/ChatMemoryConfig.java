@@ -0,0 +1,52 @@
+package dev.xiushen.wanus.config;
+
+import dev.xiushen.wanus.common.ChatMemories;
+import dev.xiushen.wanus.common.HeuristicMessageCompactor;
+import dev.xiushen.wanus.common.LlmMessageCompactor;
+import dev.xiushen.wanus.common.MessageCompactor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 会话记忆配置，按wanus.memory设置各记忆的token预算、会话数上限和过期时间，由wanus.memory.compaction.mode选择压缩方式
+ */
+@Configuration
+public class ChatMemoryConfig implements InitializingBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChatMemoryConfig.class);
+
+    private final ChatModel chatModel;
+    private final ManusProperties manusProperties;
+
+    public ChatMemoryConfig(ChatModel chatModel, ManusProperties manusProperties) {
+        this.chatModel = chatModel;
+        this.manusProperties = manusProperties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        ManusProperties.Memory memory = manusProperties.getMemory();
+        ChatMemories.planningMemory.setLimits(memory.getPlanningMaxTokens(), memory.getMaxConversations(),
+                memory.getIdleTtl());
+        ChatMemories.memory.setLimits(memory.getAgentMaxTokens(), memory.getMaxConversations(), memory.getIdleTtl());
+        ChatMemories.finalizeMemory.setLimits(memory.getFinalizeMaxTokens(), memory.getMaxConversations(),
+                memory.getIdleTtl());
+
+        ManusProperties.Compaction compaction = memory.getCompaction();
+        HeuristicMessageCompactor heuristicCompactor = new HeuristicMessageCompactor(compaction.getMaxChars());
+        MessageCompactor compactor = switch (compaction.getMode().toLowerCase()) {
+            case "none" -> null;
+            case "llm" -> new LlmMessageCompactor(chatModel, heuristicCompactor);
+            default -> heuristicCompactor;
+        };
+        if (compactor == null) {
+            return;
+        }
+        ChatMemories.memory.setCompaction(compactor, compaction.getThresholdTokens(), compaction.getKeepRecentTurns());
+        LOGGER.info("Agent memory compaction enabled: mode={}, threshold={} tokens, keep {} recent turns",
+                compaction.getMode(), compaction.getThresholdTokens(), compaction.getKeepRecentTurns());
+    }
+}
@@ -0,0 +1,55 @@
+package dev.xiushen.wanus.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 计划流程和工具调用执行线程配置
+ * 		计划执行过程中几乎全是阻塞调用（LLM、MCP、Selenium、子进程），开启虚拟线程后每个等待中的计划只占用很少的内存
+ * 		关闭后退化为固定大小的平台线程池
+ */
+@Configuration
+@EnableConfigurationProperties(ManusProperties.class)
+public class ExecutorConfig {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExecutorConfig.class);
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService flowExecutor(ManusProperties manusProperties) {
+        return newExecutor("wanus-flow-", manusProperties.getExecutor());
+    }
+
+    /**
+     * 执行计划中相互独立步骤的线程池
+     *      计划本身运行在flowExecutor上并等待步骤结束，步骤不能再提交到flowExecutor，否则平台线程池被计划占满时会死锁
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService stepExecutor(ManusProperties manusProperties) {
+        return newExecutor("wanus-step-", manusProperties.getExecutor());
+    }
+
+    /**
+     * 并发执行同一轮中多个工具调用的线程池
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService toolExecutor(ManusProperties manusProperties) {
+        return newExecutor("wanus-tool-", manusProperties.getExecutor());
+    }
+
+    static ExecutorService newExecutor(String namePrefix, ManusProperties.Executor executor) {
+        if (executor.isVirtualThreads()) {
+            LOGGER.info("Using virtual threads for {}", namePrefix);
+            ThreadFactory threadFactory = Thread.ofVirtual().name(namePrefix, 0).factory();
+            return Executors.newThreadPerTaskExecutor(threadFactory);
+        }
+        ThreadFactory threadFactory = Thread.ofPlatform().name(namePrefix, 0).daemon(true).factory();
+        return Executors.newFixedThreadPool(executor.getPlatformPoolSize(), threadFactory);
+    }
+}
@@ -27,15 +27,17 @@ import org.apache.hc.core5.util.Timeout;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.tool.ToolCallbackProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -56,22 +58,29 @@ public class ManusConfig {
 	private ToolCallbackProvider fileToolCallbackProvider;
 
 	@Bean
-	public PlanningFlow planningFlow(
+	public AgentFactory agentFactory(
 			ChatClient chatClient,
-			ToolCallingManager toolCallingManager) {
-		ManusAgent manusAgent = new ManusAgent(chatClient, manusToolCallbackProvider, toolCallingManager);
-		BrowserAgent browserAgent = new BrowserAgent(chatClient, browserToolCallbackProvider, toolCallingManager);
-		FileAgent fileAgent = new FileAgent(chatClient, fileToolCallbackProvider, toolCallingManager);
-		PythonAgent pythonAgent = new PythonAgent(chatClient, pythonToolCallbackProvider, toolCallingManager);
-
-		List<BaseAgent> agentList = new ArrayList<>();
-		agentList.add(manusAgent);
-		agentList.add(browserAgent);
-		agentList.add(fileAgent);
-		agentList.add(pythonAgent);
+			ToolCallingManager toolCallingManager,
+			@Qualifier("toolExecutor") ExecutorService toolExecutor,
+			ManusProperties manusProperties) {
+		return new AgentFactory(
+				chatClient,
+				toolCallingManager,
+				manusToolCallbackProvider,
+				browserToolCallbackProvider,
+				fileToolCallbackProvider,
+				pythonToolCallbackProvider,
+				manusProperties.getAgent().isPipelined() ? toolExecutor : null);
+	}
 
+	/**
+	 * 每次获取都会创建新的PlanningFlow及其智能体实例，保证并发请求之间的计划ID、步骤索引和智能体状态互不干扰
+	 */
+	@Bean
+	@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+	public PlanningFlow planningFlow(AgentFactory agentFactory) {
 		Map<String, Object> data = new HashMap<>();
-		return new PlanningFlow(agentList, data);
+		return new PlanningFlow(agentFactory.createAgents(), data);
 	}
 
 	@Bean
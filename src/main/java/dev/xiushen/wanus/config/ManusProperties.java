@@ -0,0 +1,1033 @@
+package dev.xiushen.wanus.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * wanus运行时配置，对应application.yml中的wanus前缀
+ */
+@ConfigurationProperties(prefix = "wanus")
+public class ManusProperties {
+
+    private final Executor executor = new Executor();
+
+    private final Plan plan = new Plan();
+
+    private final Memory memory = new Memory();
+
+    private final LlmCache llmCache = new LlmCache();
+
+    private final Tool tool = new Tool();
+
+    private final Agent agent = new Agent();
+
+    private final Browser browser = new Browser();
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public Plan getPlan() {
+        return plan;
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    public LlmCache getLlmCache() {
+        return llmCache;
+    }
+
+    public Tool getTool() {
+        return tool;
+    }
+
+    public Agent getAgent() {
+        return agent;
+    }
+
+    public Browser getBrowser() {
+        return browser;
+    }
+
+    public static class Executor {
+        /**
+         * 是否使用虚拟线程执行计划流程和阻塞的工具调用
+         */
+        private boolean virtualThreads = true;
+
+        /**
+         * 关闭虚拟线程时平台线程池的大小
+         */
+        private int platformPoolSize = 16;
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        public int getPlatformPoolSize() {
+            return platformPoolSize;
+        }
+
+        public void setPlatformPoolSize(int platformPoolSize) {
+            this.platformPoolSize = platformPoolSize;
+        }
+    }
+
+    public static class Plan {
+        /**
+         * 后台同时执行的计划数上限
+         */
+        private int maxConcurrent = 8;
+
+        /**
+         * 已受理但尚未完成的计划数上限（包含执行中的），超过后拒绝新的提交
+         */
+        private int maxPending = 64;
+
+        /**
+         * 计划执行结果的保留时间
+         */
+        private Duration resultTtl = Duration.ofHours(1);
+
+        /**
+         * 单个计划内相互独立的步骤最多同时执行的数量
+         */
+        private int maxParallelSteps = 4;
+
+        private final Store store = new Store();
+
+        private final Template template = new Template();
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int maxPending) {
+            this.maxPending = maxPending;
+        }
+
+        public Duration getResultTtl() {
+            return resultTtl;
+        }
+
+        public void setResultTtl(Duration resultTtl) {
+            this.resultTtl = resultTtl;
+        }
+
+        public int getMaxParallelSteps() {
+            return maxParallelSteps;
+        }
+
+        public void setMaxParallelSteps(int maxParallelSteps) {
+            this.maxParallelSteps = maxParallelSteps;
+        }
+
+        public Store getStore() {
+            return store;
+        }
+
+        public Template getTemplate() {
+            return template;
+        }
+    }
+
+    public static class Store {
+        /**
+         * 计划存储类型：file保存到本地文件，重启后可以恢复；memory只保存在内存中
+         */
+        private String type = "file";
+
+        /**
+         * file类型的日志和快照目录
+         */
+        private String directory = "data/plans";
+
+        /**
+         * 日志累计多少条记录后生成快照
+         */
+        private int snapshotInterval = 1000;
+
+        /**
+         * 启动时是否继续执行上次未完成的计划
+         */
+        private boolean resumeOnStartup = true;
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSnapshotInterval() {
+            return snapshotInterval;
+        }
+
+        public void setSnapshotInterval(int snapshotInterval) {
+            this.snapshotInterval = snapshotInterval;
+        }
+
+        public boolean isResumeOnStartup() {
+            return resumeOnStartup;
+        }
+
+        public void setResumeOnStartup(boolean resumeOnStartup) {
+            this.resumeOnStartup = resumeOnStartup;
+        }
+    }
+
+    public static class Template {
+        /**
+         * 是否复用执行成功的计划，命中时不再调用规划模型
+         */
+        private boolean enabled = true;
+
+        /**
+         * 模板文件目录
+         */
+        private String directory = "data/plan-templates";
+
+        /**
+         * 相似匹配的Jaccard相似度阈值，取值(0,1]，为1时只复用请求完全相同的计划
+         */
+        private double similarityThreshold = 1.0;
+
+        /**
+         * 内存中缓存的模板分片数量，共256个分片
+         */
+        private int cachedShards = 64;
+
+        /**
+         * 保存的模板数量上限，平均分到各分片，不大于0时不限制
+         */
+        private int maxTemplates = 10000;
+
+        /**
+         * 模板的保留时间，过期的模板不再复用，所在分片下次写入时删除
+         */
+        private Duration maxAge = Duration.ofDays(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+
+        public int getCachedShards() {
+            return cachedShards;
+        }
+
+        public void setCachedShards(int cachedShards) {
+            this.cachedShards = cachedShards;
+        }
+
+        public int getMaxTemplates() {
+            return maxTemplates;
+        }
+
+        public void setMaxTemplates(int maxTemplates) {
+            this.maxTemplates = maxTemplates;
+        }
+
+        public Duration getMaxAge() {
+            return maxAge;
+        }
+
+        public void setMaxAge(Duration maxAge) {
+            this.maxAge = maxAge;
+        }
+    }
+
+    public static class Memory {
+        /**
+         * 规划会话保留的token预算
+         */
+        private int planningMaxTokens = 16_000;
+
+        /**
+         * 智能体会话保留的token预算
+         */
+        private int agentMaxTokens = 32_000;
+
+        /**
+         * 总结会话保留的token预算
+         */
+        private int finalizeMaxTokens = 16_000;
+
+        /**
+         * 每种记忆保留的会话数上限，超过后按最近最少使用淘汰
+         */
+        private long maxConversations = 1000;
+
+        /**
+         * 会话未被访问的过期时间
+         */
+        private Duration idleTtl = Duration.ofHours(2);
+
+        private final Compaction compaction = new Compaction();
+
+        public int getPlanningMaxTokens() {
+            return planningMaxTokens;
+        }
+
+        public void setPlanningMaxTokens(int planningMaxTokens) {
+            this.planningMaxTokens = planningMaxTokens;
+        }
+
+        public int getAgentMaxTokens() {
+            return agentMaxTokens;
+        }
+
+        public void setAgentMaxTokens(int agentMaxTokens) {
+            this.agentMaxTokens = agentMaxTokens;
+        }
+
+        public int getFinalizeMaxTokens() {
+            return finalizeMaxTokens;
+        }
+
+        public void setFinalizeMaxTokens(int finalizeMaxTokens) {
+            this.finalizeMaxTokens = finalizeMaxTokens;
+        }
+
+        public long getMaxConversations() {
+            return maxConversations;
+        }
+
+        public void setMaxConversations(long maxConversations) {
+            this.maxConversations = maxConversations;
+        }
+
+        public Duration getIdleTtl() {
+            return idleTtl;
+        }
+
+        public void setIdleTtl(Duration idleTtl) {
+            this.idleTtl = idleTtl;
+        }
+
+        public Compaction getCompaction() {
+            return compaction;
+        }
+    }
+
+    public static class Compaction {
+        /**
+         * 智能体会话记忆的压缩方式：none不压缩；heuristic按规则截断工具响应；llm调用模型生成摘要
+         */
+        private String mode = "heuristic";
+
+        /**
+         * 会话超过该token数后压缩较早的消息
+         */
+        private int thresholdTokens = 12_000;
+
+        /**
+         * 保持原样的最近轮数
+         */
+        private int keepRecentTurns = 3;
+
+        /**
+         * 规则压缩时每段内容保留的最大字符数
+         */
+        private int maxChars = 800;
+
+        public String getMode() {
+            return mode;
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        public int getThresholdTokens() {
+            return thresholdTokens;
+        }
+
+        public void setThresholdTokens(int thresholdTokens) {
+            this.thresholdTokens = thresholdTokens;
+        }
+
+        public int getKeepRecentTurns() {
+            return keepRecentTurns;
+        }
+
+        public void setKeepRecentTurns(int keepRecentTurns) {
+            this.keepRecentTurns = keepRecentTurns;
+        }
+
+        public int getMaxChars() {
+            return maxChars;
+        }
+
+        public void setMaxChars(int maxChars) {
+            this.maxChars = maxChars;
+        }
+    }
+
+    public static class LlmCache {
+        /**
+         * 是否缓存智能体和总结的模型响应
+         */
+        private boolean enabled = true;
+
+        /**
+         * 缓存有效期
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+        /**
+         * 缓存条数上限
+         */
+        private int maxEntries = 1000;
+
+        /**
+         * 精确匹配未命中时是否按向量相似度查找，需要配置EmbeddingModel
+         */
+        private boolean similarityEnabled = false;
+
+        /**
+         * 相似度匹配的余弦相似度阈值
+         */
+        private double similarityThreshold = 0.97;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public boolean isSimilarityEnabled() {
+            return similarityEnabled;
+        }
+
+        public void setSimilarityEnabled(boolean similarityEnabled) {
+            this.similarityEnabled = similarityEnabled;
+        }
+
+        public double getSimilarityThreshold() {
+            return similarityThreshold;
+        }
+
+        public void setSimilarityThreshold(double similarityThreshold) {
+            this.similarityThreshold = similarityThreshold;
+        }
+    }
+
+    public static class Tool {
+        /**
+         * 所有智能体同时执行的工具调用数量上限
+         */
+        private int maxConcurrentCalls = 32;
+
+        /**
+         * 顺序组，组内的工具共享状态，同一轮的调用按模型给出的顺序依次执行
+         */
+        private Map<String, List<String>> sequentialGroups = new LinkedHashMap<>();
+
+        /**
+         * 工具名称或顺序组名称对应的全局并发上限，未配置的工具不单独限制
+         */
+        private Map<String, Integer> concurrencyLimits = new LinkedHashMap<>();
+
+        private final Python python = new Python();
+
+        public int getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+
+        public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+
+        public Map<String, List<String>> getSequentialGroups() {
+            return sequentialGroups;
+        }
+
+        public void setSequentialGroups(Map<String, List<String>> sequentialGroups) {
+            this.sequentialGroups = sequentialGroups;
+        }
+
+        public Map<String, Integer> getConcurrencyLimits() {
+            return concurrencyLimits;
+        }
+
+        public void setConcurrencyLimits(Map<String, Integer> concurrencyLimits) {
+            this.concurrencyLimits = concurrencyLimits;
+        }
+
+        public Python getPython() {
+            return python;
+        }
+    }
+
+    public static class Python {
+        /**
+         * 是否使用常驻的Python工作进程执行代码，关闭时每次执行启动一个新的python3进程
+         */
+        private boolean enabled = true;
+
+        /**
+         * 启动工作进程的命令
+         */
+        private List<String> command = List.of("python3");
+
+        /**
+         * 工作进程数量上限
+         */
+        private int maxWorkers = 4;
+
+        /**
+         * 保持预热的空闲工作进程数量
+         */
+        private int minIdle = 1;
+
+        /**
+         * 工作进程启动时预先导入的模块，未安装的模块跳过
+         */
+        private List<String> preloadModules = List.of("json", "re", "math", "datetime", "numpy", "pandas");
+
+        /**
+         * 单次执行的超时时间，超时后结束工作进程
+         */
+        private Duration timeout = Duration.ofSeconds(120);
+
+        /**
+         * 工作进程的内存上限（RLIMIT_AS），0表示不限制
+         */
+        private DataSize memoryLimit = DataSize.ofGigabytes(2);
+
+        /**
+         * 每个工作进程最多执行的次数，达到后关闭重建
+         */
+        private int maxRuns = 50;
+
+        /**
+         * 单次执行保留的输出字符数，超过时保留开头和结尾
+         */
+        private int maxOutputChars = 64_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getCommand() {
+            return command;
+        }
+
+        public void setCommand(List<String> command) {
+            this.command = command;
+        }
+
+        public int getMaxWorkers() {
+            return maxWorkers;
+        }
+
+        public void setMaxWorkers(int maxWorkers) {
+            this.maxWorkers = maxWorkers;
+        }
+
+        public int getMinIdle() {
+            return minIdle;
+        }
+
+        public void setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+        }
+
+        public List<String> getPreloadModules() {
+            return preloadModules;
+        }
+
+        public void setPreloadModules(List<String> preloadModules) {
+            this.preloadModules = preloadModules;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public DataSize getMemoryLimit() {
+            return memoryLimit;
+        }
+
+        public void setMemoryLimit(DataSize memoryLimit) {
+            this.memoryLimit = memoryLimit;
+        }
+
+        public int getMaxRuns() {
+            return maxRuns;
+        }
+
+        public void setMaxRuns(int maxRuns) {
+            this.maxRuns = maxRuns;
+        }
+
+        public int getMaxOutputChars() {
+            return maxOutputChars;
+        }
+
+        public void setMaxOutputChars(int maxOutputChars) {
+            this.maxOutputChars = maxOutputChars;
+        }
+    }
+
+    public static class Agent {
+        /**
+         * 是否在工具执行期间并行准备下一轮思考的提示词
+         */
+        private boolean pipelined = true;
+
+        public boolean isPipelined() {
+            return pipelined;
+        }
+
+        public void setPipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+        }
+    }
+
+    public static class Browser {
+        /**
+         * 会话隔离方式：context在共享的Chrome进程中为每个会话创建隔离的浏览器上下文，process为每个会话启动一个Chrome进程
+         */
+        private String mode = "context";
+
+        /**
+         * context模式下Chrome进程数量上限
+         */
+        private int maxHosts = 2;
+
+        /**
+         * context模式下每个Chrome进程中的上下文数量
+         */
+        private int contextsPerHost = 8;
+
+        /**
+         * 提供给BrowserAgent的浏览器状态中是否包含页面截图
+         */
+        private boolean stateScreenshot = false;
+
+        /**
+         * getHtml和getText返回的页面内容的token预算
+         */
+        private int contentTokenBudget = 2000;
+
+        /**
+         * 提示词中的可交互元素列表附带相对最近一次完整列表的变化，完整列表仍随每轮提示发送
+         */
+        private boolean elementDiff = false;
+
+        /**
+         * 同一份完整列表最多使用多少轮，之后重新发送当前的完整列表
+         */
+        private int fullElementsEvery = 5;
+
+        private final Pool pool = new Pool();
+
+        private final Interaction interaction = new Interaction();
+
+        private final Network network = new Network();
+
+        private final Cache cache = new Cache();
+
+        public String getMode() {
+            return mode;
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        public int getMaxHosts() {
+            return maxHosts;
+        }
+
+        public void setMaxHosts(int maxHosts) {
+            this.maxHosts = maxHosts;
+        }
+
+        public int getContextsPerHost() {
+            return contextsPerHost;
+        }
+
+        public void setContextsPerHost(int contextsPerHost) {
+            this.contextsPerHost = contextsPerHost;
+        }
+
+        public boolean isStateScreenshot() {
+            return stateScreenshot;
+        }
+
+        public void setStateScreenshot(boolean stateScreenshot) {
+            this.stateScreenshot = stateScreenshot;
+        }
+
+        public int getContentTokenBudget() {
+            return contentTokenBudget;
+        }
+
+        public void setContentTokenBudget(int contentTokenBudget) {
+            this.contentTokenBudget = contentTokenBudget;
+        }
+
+        public boolean isElementDiff() {
+            return elementDiff;
+        }
+
+        public void setElementDiff(boolean elementDiff) {
+            this.elementDiff = elementDiff;
+        }
+
+        public int getFullElementsEvery() {
+            return fullElementsEvery;
+        }
+
+        public void setFullElementsEvery(int fullElementsEvery) {
+            this.fullElementsEvery = fullElementsEvery;
+        }
+
+        public Pool getPool() {
+            return pool;
+        }
+
+        public Interaction getInteraction() {
+            return interaction;
+        }
+
+        public Network getNetwork() {
+            return network;
+        }
+
+        public Cache getCache() {
+            return cache;
+        }
+    }
+
+    public static class Cache {
+        /**
+         * 是否为Chrome进程提供持久的磁盘缓存，只在process模式下生效，context模式的无痕上下文不使用磁盘缓存
+         */
+        private boolean enabled = true;
+
+        /**
+         * 磁盘缓存目录
+         */
+        private String directory = "data/browser-cache";
+
+        /**
+         * 缓存槽位数量，即同时使用持久缓存的Chrome进程数量，超出的进程使用临时缓存
+         */
+        private int slots = 4;
+
+        /**
+         * 所有槽位的总大小上限，超出后清空最久未使用的槽位
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(1024);
+
+        /**
+         * 用户数据目录模板，每个Chrome进程启动时复制一份，为空时使用空目录
+         */
+        private String profileTemplate;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSlots() {
+            return slots;
+        }
+
+        public void setSlots(int slots) {
+            this.slots = slots;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public String getProfileTemplate() {
+            return profileTemplate;
+        }
+
+        public void setProfileTemplate(String profileTemplate) {
+            this.profileTemplate = profileTemplate;
+        }
+    }
+
+    public static class Network {
+        /**
+         * 是否拦截不需要的网络请求
+         */
+        private boolean enabled = true;
+
+        /**
+         * 拦截的资源类型：image、font、media
+         */
+        private List<String> blockedResourceTypes = List.of("image", "font", "media");
+
+        /**
+         * 拦截的域名，同时匹配子域名，例如广告和统计服务
+         */
+        private List<String> blockedDomains = List.of();
+
+        /**
+         * 额外拦截的URL模式，支持*通配符
+         */
+        private List<String> blockedUrlPatterns = List.of();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getBlockedResourceTypes() {
+            return blockedResourceTypes;
+        }
+
+        public void setBlockedResourceTypes(List<String> blockedResourceTypes) {
+            this.blockedResourceTypes = blockedResourceTypes;
+        }
+
+        public List<String> getBlockedDomains() {
+            return blockedDomains;
+        }
+
+        public void setBlockedDomains(List<String> blockedDomains) {
+            this.blockedDomains = blockedDomains;
+        }
+
+        public List<String> getBlockedUrlPatterns() {
+            return blockedUrlPatterns;
+        }
+
+        public void setBlockedUrlPatterns(List<String> blockedUrlPatterns) {
+            this.blockedUrlPatterns = blockedUrlPatterns;
+        }
+    }
+
+    public static class Interaction {
+        /**
+         * 默认交互方式：fast不做模拟延迟，realistic模拟人的操作节奏
+         */
+        private String profile = "fast";
+
+        /**
+         * 按域名单独配置的交互方式，同时匹配子域名
+         */
+        private Map<String, String> domainProfiles = new LinkedHashMap<>();
+
+        /**
+         * 点击后没有DOM变化和网络请求持续该时长即认为页面已经稳定
+         */
+        private Duration quietPeriod = Duration.ofMillis(300);
+
+        /**
+         * 点击后等待页面稳定的最长时间
+         */
+        private Duration settleTimeout = Duration.ofSeconds(5);
+
+        public String getProfile() {
+            return profile;
+        }
+
+        public void setProfile(String profile) {
+            this.profile = profile;
+        }
+
+        public Map<String, String> getDomainProfiles() {
+            return domainProfiles;
+        }
+
+        public void setDomainProfiles(Map<String, String> domainProfiles) {
+            this.domainProfiles = domainProfiles;
+        }
+
+        public Duration getQuietPeriod() {
+            return quietPeriod;
+        }
+
+        public void setQuietPeriod(Duration quietPeriod) {
+            this.quietPeriod = quietPeriod;
+        }
+
+        public Duration getSettleTimeout() {
+            return settleTimeout;
+        }
+
+        public void setSettleTimeout(Duration settleTimeout) {
+            this.settleTimeout = settleTimeout;
+        }
+    }
+
+    public static class Pool {
+        /**
+         * 同时存在的浏览器数量上限
+         */
+        private int maxSessions = 16;
+
+        /**
+         * 保持预热的空闲浏览器数量
+         */
+        private int minIdle = 0;
+
+        /**
+         * 每个浏览器最多被借出的次数，达到后关闭重建
+         */
+        private int maxUses = 50;
+
+        /**
+         * 空闲浏览器的回收时间
+         */
+        private Duration idleTtl = Duration.ofMinutes(10);
+
+        /**
+         * 已借出的浏览器所属计划不在执行中且超过该时间未使用时，当作遗弃回收
+         */
+        private Duration leaseTimeout = Duration.ofHours(2);
+
+        /**
+         * 池满时借出请求的最长等待时间
+         */
+        private Duration checkoutTimeout = Duration.ofSeconds(60);
+
+        public int getMaxSessions() {
+            return maxSessions;
+        }
+
+        public void setMaxSessions(int maxSessions) {
+            this.maxSessions = maxSessions;
+        }
+
+        public int getMinIdle() {
+            return minIdle;
+        }
+
+        public void setMinIdle(int minIdle) {
+            this.minIdle = minIdle;
+        }
+
+        public int getMaxUses() {
+            return maxUses;
+        }
+
+        public void setMaxUses(int maxUses) {
+            this.maxUses = maxUses;
+        }
+
+        public Duration getIdleTtl() {
+            return idleTtl;
+        }
+
+        public void setIdleTtl(Duration idleTtl) {
+            this.idleTtl = idleTtl;
+        }
+
+        public Duration getLeaseTimeout() {
+            return leaseTimeout;
+        }
+
+        public void setLeaseTimeout(Duration leaseTimeout) {
+            this.leaseTimeout = leaseTimeout;
+        }
+
+        public Duration getCheckoutTimeout() {
+            return checkoutTimeout;
+        }
+
+        public void setCheckoutTimeout(Duration checkoutTimeout) {
+            this.checkoutTimeout = checkoutTimeout;
+        }
+    }
+}
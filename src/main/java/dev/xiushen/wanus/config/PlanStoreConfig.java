@@ -0,0 +1,35 @@
+package dev.xiushen.wanus.config;
+
+import dev.xiushen.wanus.common.FilePlanStore;
+import dev.xiushen.wanus.common.InMemoryPlanStore;
+import dev.xiushen.wanus.common.PlanStore;
+import dev.xiushen.wanus.common.PlanTemplateStore;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * 计划存储配置，由wanus.plan.store.type选择存储实现，计划模板由wanus.plan.template配置
+ */
+@Configuration
+public class PlanStoreConfig {
+
+    @Bean
+    public PlanStore planStore(ManusProperties manusProperties) throws IOException {
+        ManusProperties.Plan plan = manusProperties.getPlan();
+        ManusProperties.Store store = plan.getStore();
+        if ("memory".equalsIgnoreCase(store.getType())) {
+            return new InMemoryPlanStore();
+        }
+        return new FilePlanStore(Path.of(store.getDirectory()), store.getSnapshotInterval(), plan.getResultTtl());
+    }
+
+    @Bean
+    public PlanTemplateStore planTemplateStore(ManusProperties manusProperties) throws IOException {
+        ManusProperties.Template template = manusProperties.getPlan().getTemplate();
+        return new PlanTemplateStore(Path.of(template.getDirectory()), template.getSimilarityThreshold(),
+                Math.max(1, template.getCachedShards()), template.getMaxTemplates(), template.getMaxAge());
+    }
+}
@@ -1,20 +1,29 @@
 package dev.xiushen.wanus.config;
 
 import dev.xiushen.wanus.common.ChromeDriverRunner;
+import dev.xiushen.wanus.common.ParallelToolCallingManager;
+import dev.xiushen.wanus.common.PlanStore;
+import dev.xiushen.wanus.common.PythonWorkerPool;
+import dev.xiushen.wanus.utils.CodeUtils;
 import dev.xiushen.wanus.tool.*;
 import io.modelcontextprotocol.client.McpAsyncClient;
 import io.modelcontextprotocol.client.McpSyncClient;
 import jakarta.annotation.Resource;
 import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.model.tool.ToolCallingManager;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
 import org.springframework.ai.tool.method.MethodToolCallbackProvider;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -28,12 +37,59 @@ public class ToolsConfig {
 
 	@Resource
 	private ChromeDriverRunner chromeDriverRunner;
+	@Resource
+	private PlanStore planStore;
+	@Resource
+	private ManusProperties manusProperties;
+
+	/**
+	 * 替换默认的工具调用管理器，同一轮中相互独立的工具调用并发执行
+	 */
+	@Bean
+	public ToolCallingManager toolCallingManager(
+			ToolCallbackResolver toolCallbackResolver,
+			@Qualifier("toolExecutor") ExecutorService toolExecutor,
+			ManusProperties manusProperties) {
+		ManusProperties.Tool tool = manusProperties.getTool();
+		return new ParallelToolCallingManager(
+				toolCallbackResolver,
+				toolExecutor,
+				tool.getMaxConcurrentCalls(),
+				tool.getSequentialGroups(),
+				tool.getConcurrencyLimits());
+	}
+
+	/**
+	 * executePythonCode使用的常驻Python工作进程池，wanus.tool.python.enabled为false时为null，每次执行启动新进程
+	 */
+	@Bean
+	public PythonWorkerPool pythonWorkerPool() {
+		ManusProperties.Python python = manusProperties.getTool().getPython();
+		if (!python.isEnabled()) {
+			return null;
+		}
+		return new PythonWorkerPool(
+				python.getCommand(),
+				python.getPreloadModules(),
+				python.getMemoryLimit().toBytes(),
+				python.getMaxWorkers(),
+				python.getMinIdle(),
+				python.getMaxRuns(),
+				python.getMaxOutputChars(),
+				python.getTimeout(),
+				Path.of(CodeUtils.WORKING_DIR));
+	}
+
+	@Bean
+	public PlanningService planningService() {
+		return new PlanningService(planStore);
+	}
 
 	@Bean
 	@Primary
-	public ToolCallbackProvider planningToolCallbackProvider() {
+	public ToolCallbackProvider planningToolCallbackProvider(PlanningService planningService) {
 		return MethodToolCallbackProvider.builder()
-				.toolObjects(new PlanningService())
+				.toolObjects(planningService)
 				.build();
 	}
 
@@ -56,9 +112,9 @@ public class ToolsConfig {
 								.toolObjects(
 										new LocalTimeService(),
 										new FileSaveService(),
-										new PythonService(),
+										new PythonService(pythonWorkerPool()),
 										new DocLoaderService(),
-										new BrowserService(chromeDriverRunner)
+										new BrowserService(chromeDriverRunner, manusProperties.getBrowser())
 								)
 								.build()
 								.getToolCallbacks()),
@@ -87,8 +143,8 @@ public class ToolsConfig {
                         Arrays.stream(MethodToolCallbackProvider
                                 .builder()
                                 .toolObjects(
-										new PythonService(),
-										new BrowserService(chromeDriverRunner)
+										new PythonService(pythonWorkerPool()),
+										new BrowserService(chromeDriverRunner, manusProperties.getBrowser())
 								)
                                 .build()
                                 .getToolCallbacks()),
@@ -110,7 +166,7 @@ public class ToolsConfig {
 						Arrays.stream(MethodToolCallbackProvider
 								.builder()
 								.toolObjects(
-										new PythonService()
+										new PythonService(pythonWorkerPool())
 								)
 								.build().getToolCallbacks()),
 						syncCallbacks.stream()
@@ -15,26 +15,149 @@
  */
 package dev.xiushen.wanus.controller;
 
-import dev.xiushen.wanus.flow.PlanningFlow;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.bind.annotation.RestController;
+import dev.xiushen.wanus.common.Plan;
+import dev.xiushen.wanus.common.PlanStep;
+import dev.xiushen.wanus.common.PlanStore;
+import dev.xiushen.wanus.enums.PlanRunStatus;
+import dev.xiushen.wanus.flow.PlanRun;
+import dev.xiushen.wanus.flow.PlanningFlowRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/manus")
 public class ManusController {
 
-	private final PlanningFlow planningFlow;
+	private static final long STREAM_TIMEOUT_MILLIS = Duration.ofMinutes(30).toMillis();
+
+	private final PlanningFlowRunner planningFlowRunner;
+	private final PlanStore planStore;
 
-	ManusController(PlanningFlow planningFlow) {
-		this.planningFlow = planningFlow;
+	ManusController(
+			PlanningFlowRunner planningFlowRunner,
+			PlanStore planStore) {
+		this.planningFlowRunner = planningFlowRunner;
+		this.planStore = planStore;
 	}
 
 	@GetMapping("/chat")
-	public String simpleChat(@RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query) {
-		planningFlow.setActivePlanId("plan_" + System.currentTimeMillis());
-		return planningFlow.execute(query);
+	public CompletableFuture<String> simpleChat(@RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query) {
+		PlanRun planRun;
+		try {
+			planRun = planningFlowRunner.submit(query);
+		} catch (RejectedExecutionException e) {
+			throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+		}
+		return planRun.whenFinished().thenApply(finished -> {
+			if (finished.getStatus() == PlanRunStatus.FAILED) {
+				throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, finished.getError());
+			}
+			return finished.getResult();
+		});
+	}
+
+	/**
+	 * 以SSE方式执行计划，实时推送计划创建、步骤开始/结束、工具调用和最终总结的token
+	 */
+	@GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter streamChat(@RequestParam(value = "query", defaultValue = "你好，很高兴认识你，能简单介绍一下自己吗？") String query) {
+		SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MILLIS);
+		try {
+			planningFlowRunner.submit(query, new SseFlowListener(emitter));
+		} catch (RejectedExecutionException e) {
+			throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+		}
+		return emitter;
+	}
+
+	/**
+	 * 提交计划，立即返回计划ID，计划在后台执行
+	 */
+	@PostMapping("/plans")
+	public ResponseEntity<Map<String, Object>> submitPlan(@RequestParam("query") String query) {
+		try {
+			PlanRun planRun = planningFlowRunner.submit(query);
+			return ResponseEntity.status(HttpStatus.ACCEPTED).body(describe(planRun));
+		} catch (RejectedExecutionException e) {
+			throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, e.getMessage());
+		}
+	}
+
+	/**
+	 * 查询计划执行状态，包括每个步骤的状态和备注
+	 */
+	@GetMapping("/plans/{planId}")
+	public Map<String, Object> planStatus(@PathVariable("planId") String planId) {
+		PlanRun planRun = getPlanRun(planId);
+		Map<String, Object> status = describe(planRun);
+		Plan planData = planStore.get(planId);
+		if (planData != null) {
+			status.put("plan", describe(planData));
+		}
+		return status;
+	}
+
+	/**
+	 * 获取计划执行结果，计划未结束时返回202
+	 */
+	@GetMapping("/plans/{planId}/result")
+	public ResponseEntity<Map<String, Object>> planResult(@PathVariable("planId") String planId) {
+		PlanRun planRun = getPlanRun(planId);
+		Map<String, Object> body = describe(planRun);
+		if (!planRun.getStatus().isFinished()) {
+			return ResponseEntity.status(HttpStatus.ACCEPTED).body(body);
+		}
+		body.put("result", planRun.getResult());
+		body.put("error", planRun.getError());
+		return ResponseEntity.ok(body);
+	}
+
+	private PlanRun getPlanRun(String planId) {
+		PlanRun planRun = planningFlowRunner.getPlanRun(planId);
+		if (planRun == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No plan found with ID: " + planId);
+		}
+		return planRun;
+	}
+
+	private Map<String, Object> describe(Plan planData) {
+		List<Map<String, Object>> steps = new ArrayList<>();
+		synchronized (planData) {
+			for (PlanStep step : planData.getSteps()) {
+				Map<String, Object> stepData = new LinkedHashMap<>();
+				stepData.put("text", step.getText());
+				stepData.put("status", planData.getStatus(step.getIndex()).getValue());
+				stepData.put("notes", planData.getNotes(step.getIndex()));
+				stepData.put("dependencies", step.getDependencies());
+				steps.add(stepData);
+			}
+		}
+		Map<String, Object> plan = new LinkedHashMap<>();
+		plan.put("title", planData.getTitle());
+		plan.put("steps", steps);
+		return plan;
+	}
+
+	private Map<String, Object> describe(PlanRun planRun) {
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("planId", planRun.getPlanId());
+		body.put("status", planRun.getStatus().getValue());
+		body.put("submittedAt", planRun.getSubmittedAt());
+		body.put("startedAt", planRun.getStartedAt());
+		body.put("finishedAt", planRun.getFinishedAt());
+		return body;
 	}
 
 }
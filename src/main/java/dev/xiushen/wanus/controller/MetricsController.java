@@ -0,0 +1,142 @@
+/*
+ * Copyright 2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.xiushen.wanus.controller;
+
+import dev.xiushen.wanus.common.BoundedChatMemory;
+import dev.xiushen.wanus.common.BrowserCacheManager;
+import dev.xiushen.wanus.common.BrowserSessionPool;
+import dev.xiushen.wanus.common.ChatMemories;
+import dev.xiushen.wanus.common.ChromeDriverRunner;
+import dev.xiushen.wanus.common.FilePlanStore;
+import dev.xiushen.wanus.common.NetworkPolicy;
+import dev.xiushen.wanus.common.PlanStore;
+import dev.xiushen.wanus.common.PlanTemplateStore;
+import dev.xiushen.wanus.common.PromptCacheMetrics;
+import dev.xiushen.wanus.common.PromptCacheMetricsAdvisor;
+import dev.xiushen.wanus.common.PythonWorkerPool;
+import dev.xiushen.wanus.common.ResponseCacheAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 运行时指标
+ */
+@RestController
+@RequestMapping("/manus/metrics")
+public class MetricsController {
+
+	private final ResponseCacheAdvisor responseCacheAdvisor;
+	private final PlanTemplateStore planTemplateStore;
+	private final ChromeDriverRunner chromeDriverRunner;
+	private final ObjectProvider<PythonWorkerPool> pythonWorkerPool;
+	private final PlanStore planStore;
+
+	MetricsController(
+			ResponseCacheAdvisor responseCacheAdvisor,
+			PlanTemplateStore planTemplateStore,
+			ChromeDriverRunner chromeDriverRunner,
+			ObjectProvider<PythonWorkerPool> pythonWorkerPool,
+			PlanStore planStore) {
+		this.responseCacheAdvisor = responseCacheAdvisor;
+		this.planTemplateStore = planTemplateStore;
+		this.chromeDriverRunner = chromeDriverRunner;
+		this.pythonWorkerPool = pythonWorkerPool;
+		this.planStore = planStore;
+	}
+
+	/**
+	 * 各会话记忆保留的会话数、消息数、字节数和token数
+	 */
+	@GetMapping("/memory")
+	public List<BoundedChatMemory.Stats> memory() {
+		return List.of(
+				ChatMemories.planningMemory.getStats(),
+				ChatMemories.memory.getStats(),
+				ChatMemories.finalizeMemory.getStats());
+	}
+
+	/**
+	 * 各ChatClient的提示词token数和命中服务端提示词缓存的token数
+	 */
+	@GetMapping("/prompt-cache")
+	public List<PromptCacheMetricsAdvisor.Stats> promptCache() {
+		return List.of(
+				PromptCacheMetrics.planningMetrics.getStats(),
+				PromptCacheMetrics.agentMetrics.getStats(),
+				PromptCacheMetrics.finalizeMetrics.getStats());
+	}
+
+	/**
+	 * 模型响应缓存的命中、未命中和淘汰次数
+	 */
+	@GetMapping("/llm-cache")
+	public ResponseCacheAdvisor.Stats llmCache() {
+		return responseCacheAdvisor.getStats();
+	}
+
+	/**
+	 * 计划模板的命中和新增次数
+	 */
+	@GetMapping("/plan-templates")
+	public PlanTemplateStore.Stats planTemplates() {
+		return planTemplateStore.getStats();
+	}
+
+	/**
+	 * 浏览器会话池的占用率和借出等待时间
+	 */
+	@GetMapping("/browser-pool")
+	public BrowserSessionPool.Stats browserPool() {
+		return chromeDriverRunner.getPoolStats();
+	}
+
+	/**
+	 * 浏览器页面加载的请求数、传输字节数、缓存字节数和被拦截的请求数
+	 */
+	@GetMapping("/browser-network")
+	public NetworkPolicy.Stats browserNetwork() {
+		return chromeDriverRunner.getNetworkPolicy().getStats();
+	}
+
+	/**
+	 * 浏览器磁盘缓存的槽位使用情况、总大小和冷启动次数
+	 */
+	@GetMapping("/browser-cache")
+	public BrowserCacheManager.Stats browserCache() {
+		return chromeDriverRunner.getCacheStats();
+	}
+
+	/**
+	 * Python工作进程的数量、执行次数、重建次数、超时次数和平均启动耗时，未启用工作进程池时为空
+	 */
+	@GetMapping("/python-workers")
+	public PythonWorkerPool.Stats pythonWorkers() {
+		PythonWorkerPool pool = pythonWorkerPool.getIfAvailable();
+		return pool != null ? pool.getStats() : null;
+	}
+
+	/**
+	 * 计划存储的计划数、待写入日志的记录数和日志写入是否正常，未使用文件存储时为空
+	 */
+	@GetMapping("/plan-store")
+	public FilePlanStore.Stats planStore() {
+		return planStore instanceof FilePlanStore filePlanStore ? filePlanStore.getStats() : null;
+	}
+}
@@ -0,0 +1,119 @@
+package dev.xiushen.wanus.controller;
+
+import dev.xiushen.wanus.flow.PlanRun;
+import dev.xiushen.wanus.flow.PlanningFlowListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 把计划执行进度转换成SSE事件推送给客户端
+ * 		客户端断开后不再推送，但不影响计划继续执行
+ */
+class SseFlowListener implements PlanningFlowListener {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SseFlowListener.class);
+
+	private final SseEmitter emitter;
+	private volatile boolean closed;
+
+	SseFlowListener(SseEmitter emitter) {
+		this.emitter = emitter;
+		emitter.onCompletion(() -> closed = true);
+		emitter.onTimeout(() -> closed = true);
+		emitter.onError(e -> closed = true);
+	}
+
+	@Override
+	public void onPlanCreated(String planId, String planText) {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("planId", planId);
+		data.put("plan", planText);
+		send("plan", data);
+	}
+
+	@Override
+	public void onStepStarted(int stepIndex, String stepText, String agentName) {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("stepIndex", stepIndex);
+		data.put("stepText", stepText);
+		data.put("agent", agentName);
+		send("step_start", data);
+	}
+
+	@Override
+	public void onStepFinished(int stepIndex, String stepResult) {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("stepIndex", stepIndex);
+		data.put("result", stepResult);
+		send("step_end", data);
+	}
+
+	@Override
+	public void onToolCall(String agentName, String toolName, String arguments) {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("agent", agentName);
+		data.put("tool", toolName);
+		data.put("arguments", arguments);
+		send("tool_call", data);
+	}
+
+	@Override
+	public void onToolResult(String agentName, String toolName, String result) {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("agent", agentName);
+		data.put("tool", toolName);
+		data.put("result", result);
+		send("tool_result", data);
+	}
+
+	@Override
+	public void onFinalizeToken(String token) {
+		if (closed) {
+			return;
+		}
+		try {
+			emitter.send(SseEmitter.event().name("token").data(token, MediaType.TEXT_PLAIN));
+		} catch (Exception e) {
+			closeQuietly(e);
+		}
+	}
+
+	@Override
+	public void onCompleted(PlanRun planRun) {
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("planId", planRun.getPlanId());
+		data.put("status", planRun.getStatus().getValue());
+		data.put("result", planRun.getResult());
+		data.put("error", planRun.getError());
+		send("done", data);
+		if (!closed) {
+			closed = true;
+			emitter.complete();
+		}
+	}
+
+	private void send(String name, Map<String, Object> data) {
+		if (closed) {
+			return;
+		}
+		try {
+			emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+		} catch (Exception e) {
+			closeQuietly(e);
+		}
+	}
+
+	private void closeQuietly(Exception e) {
+		LOGGER.info("SSE client disconnected, stop pushing events: {}", e.getMessage());
+		closed = true;
+		try {
+			emitter.completeWithError(e);
+		} catch (Exception ignored) {
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package dev.xiushen.wanus.enums;
+
+public enum PlanRunStatus {
+
+	QUEUED("queued"),
+	RUNNING("running"),
+	COMPLETED("completed"),
+	FAILED("failed");
+
+	private final String value;
+
+	PlanRunStatus(String value) {
+		this.value = value;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public boolean isFinished() {
+		return this == COMPLETED || this == FAILED;
+	}
+
+	@Override
+	public String toString() {
+		return value;
+	}
+
+}
@@ -38,6 +38,22 @@ public enum StepStatus {
 		return value;
 	}
 
+	public static StepStatus fromValue(String value) {
+		for (StepStatus status : values()) {
+			if (status.value.equals(value)) {
+				return status;
+			}
+		}
+		return NOT_STARTED;
+	}
+
+	/**
+	 * 是否为未结束的状态（未开始或执行中）
+	 */
+	public boolean isActive() {
+		return this == NOT_STARTED || this == IN_PROGRESS;
+	}
+
 	public static List<String> getAllStatuses() {
 		// Return a list of all possible step status values
 		return Arrays.stream(StepStatus.values()).map(StepStatus::getValue).collect(Collectors.toList());
@@ -0,0 +1,85 @@
+package dev.xiushen.wanus.flow;
+
+import dev.xiushen.wanus.enums.PlanRunStatus;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 后台执行的一次计划，记录受理、执行和完成的状态以及最终结果
+ */
+public class PlanRun {
+
+	private final String planId;
+	private final String query;
+	private final long submittedAt = System.currentTimeMillis();
+
+	private volatile PlanRunStatus status = PlanRunStatus.QUEUED;
+	private volatile long startedAt;
+	private volatile long finishedAt;
+	private volatile String result;
+	private volatile String error;
+	private final CompletableFuture<PlanRun> completion = new CompletableFuture<>();
+
+	public PlanRun(String planId, String query) {
+		this.planId = planId;
+		this.query = query;
+	}
+
+	void markRunning() {
+		this.startedAt = System.currentTimeMillis();
+		this.status = PlanRunStatus.RUNNING;
+	}
+
+	void markCompleted(String result) {
+		this.result = result;
+		this.finishedAt = System.currentTimeMillis();
+		this.status = PlanRunStatus.COMPLETED;
+		completion.complete(this);
+	}
+
+	void markFailed(String error) {
+		this.error = error;
+		this.finishedAt = System.currentTimeMillis();
+		this.status = PlanRunStatus.FAILED;
+		completion.complete(this);
+	}
+
+	public String getPlanId() {
+		return planId;
+	}
+
+	public String getQuery() {
+		return query;
+	}
+
+	public PlanRunStatus getStatus() {
+		return status;
+	}
+
+	public long getSubmittedAt() {
+		return submittedAt;
+	}
+
+	public long getStartedAt() {
+		return startedAt;
+	}
+
+	public long getFinishedAt() {
+		return finishedAt;
+	}
+
+	public String getResult() {
+		return result;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * 计划结束（完成或失败）时完成
+	 */
+	public CompletableFuture<PlanRun> whenFinished() {
+		return completion.copy();
+	}
+}
@@ -15,14 +15,22 @@
  */
 package dev.xiushen.wanus.flow;
 
-import com.google.common.cache.Cache;
+import dev.xiushen.wanus.agent.AgentFactory;
+import dev.xiushen.wanus.agent.AgentListener;
 import dev.xiushen.wanus.agent.BaseAgent;
 import dev.xiushen.wanus.common.ChatMemories;
-import dev.xiushen.wanus.common.CommonCache;
+import dev.xiushen.wanus.common.ChromeDriverRunner;
+import dev.xiushen.wanus.common.Plan;
+import dev.xiushen.wanus.common.PlanStep;
+import dev.xiushen.wanus.common.PlanStore;
+import dev.xiushen.wanus.common.PlanTemplateStore;
+import dev.xiushen.wanus.config.ManusProperties;
 import dev.xiushen.wanus.enums.StepStatus;
+import dev.xiushen.wanus.tool.PlanningService;
 import dev.xiushen.wanus.utils.CommonUtils;
 import dev.xiushen.wanus.utils.PlanningUtils;
 import jakarta.annotation.Resource;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
@@ -33,9 +41,9 @@ import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.tool.ToolCallbackProvider;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY;
@@ -44,7 +52,9 @@ public class PlanningFlow extends BaseFlow {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(PlanningFlow.class);
 
-	private static final Cache<String, Map<String, Object>> planningCache = CommonCache.planningCache;
+	private static final AtomicLong PLAN_SEQUENCE = new AtomicLong();
+
+	private static final int MAX_STEP_NOTE_LENGTH = 2000;
 
 	@Resource
 	private ChatClient planningChatClient;
@@ -52,10 +62,24 @@ public class PlanningFlow extends BaseFlow {
 	private ChatClient finalizeChatClient;
 	@Resource(name = "planningToolCallbackProvider")
 	private ToolCallbackProvider planningToolCallbackProvider;
+	@Resource
+	private PlanStore planStore;
+	@Resource
+	private PlanTemplateStore planTemplateStore;
+	@Resource
+	private PlanningService planningService;
+	@Resource
+	private ChromeDriverRunner chromeDriverRunner;
+	@Resource
+	private AgentFactory agentFactory;
+	@Resource(name = "stepExecutor")
+	private ExecutorService stepExecutor;
+	@Resource
+	private ManusProperties manusProperties;
 
 	private String activePlanId;
 	private List<String> executorKeys;
-	private Integer currentStepIndex;
+	private PlanningFlowListener listener = PlanningFlowListener.NOOP;
 
 	public PlanningFlow(List<BaseAgent> agents, Map<String, Object> data) {
 		super(agents, data);
@@ -68,7 +92,7 @@ public class PlanningFlow extends BaseFlow {
 		if (data.containsKey("plan_id")) {
 			this.activePlanId = (String) data.remove("plan_id");
 		} else {
-			this.activePlanId = "plan_" + System.currentTimeMillis();
+			this.activePlanId = "plan_" + System.currentTimeMillis() + "_" + PLAN_SEQUENCE.incrementAndGet();
 		}
 
 		if (executorKeys.isEmpty()) {
@@ -78,47 +102,131 @@ public class PlanningFlow extends BaseFlow {
 		}
 	}
 
+	/**
+	 * 执行计划并返回各步骤结果和总结
+	 * @throws IllegalStateException 计划创建失败或执行被中断，其他异常直接抛出，由调用方记录为失败
+	 */
 	@Override
 	public String execute(String inputText) {
+		chromeDriverRunner.retain(activePlanId);
 		try {
 			if (inputText != null && !inputText.isEmpty()) {
 				createInitialPlan(inputText);
-				if (!planningCache.asMap().containsKey(activePlanId)) {
+				Plan plan = planStore.get(activePlanId);
+				if (plan == null) {
 					LOGGER.error("Plan creation failed. Plan ID {} not found in planning tool.", activePlanId);
-					return "Failed to create plan for: " + inputText;
+					throw new IllegalStateException("Failed to create plan for: " + inputText);
 				}
+				plan.setQuery(inputText);
+				planStore.update(plan);
+				listener.onPlanCreated(activePlanId, getPlanText());
 			}
 
+			Map<Integer, String> stepResults = new TreeMap<>();
+			runSteps(stepResults);
+			recordPlanTemplate();
+
 			StringBuilder result = new StringBuilder();
-			while (true) {
-				Map.Entry<Integer, Map<String, String>> stepInfoEntry = getCurrentStepInfo();
-				if (stepInfoEntry == null) {
-					result.append(finalizePlan());
-					break;
-				}
-				currentStepIndex = stepInfoEntry.getKey();
-				Map<String, String> stepInfo = stepInfoEntry.getValue();
+			for (String stepResult : stepResults.values()) {
+				result.append(stepResult).append("\n");
+			}
+			result.append(finalizePlan());
+			return result.toString();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Execution interrupted", e);
+		} finally {
+			// 归还计划及其步骤占用的浏览器
+			chromeDriverRunner.release(activePlanId);
+		}
+	}
 
-				if (currentStepIndex == null) {
-					result.append(finalizePlan());
-					break;
-				}
+	/**
+	 * 按依赖关系调度计划步骤
+	 * 		同一时刻只有一个可执行步骤时在当前线程执行，使用计划自身的智能体和会话
+	 * 		有多个相互独立的步骤时并发执行，每个步骤使用独立的智能体实例和会话
+	 * 		两种方式的执行结果都写入步骤备注，供后续步骤和总结使用
+	 */
+	private void runSteps(Map<Integer, String> stepResults) throws InterruptedException {
+		int maxParallelSteps = Math.max(1, manusProperties.getPlan().getMaxParallelSteps());
+		CompletionService<String> completionService = new ExecutorCompletionService<>(stepExecutor);
+		Map<Future<String>, Integer> running = new HashMap<>();
+
+		Plan plan = planStore.get(activePlanId);
+		if (plan == null) {
+			LOGGER.error("Plan with ID {} not found", activePlanId);
+			return;
+		}
 
-				String stepType = stepInfo != null ? stepInfo.get("type") : null;
-				BaseAgent executor = getExecutor(stepType);
-				executor.setConversationId(activePlanId);
-				String stepResult = executeStep(executor, stepInfo);
-				result.append(stepResult).append("\n");
+		while (true) {
+			List<PlanStep> readySteps = plan.claimReadySteps(running.values(), maxParallelSteps - running.size());
+			if (!readySteps.isEmpty()) {
+				planStore.update(plan);
+			}
+			if (readySteps.isEmpty() && running.isEmpty()) {
+				return;
 			}
 
-			return result.toString();
-		} catch (Exception e) {
-			LOGGER.error("Error in PlanningFlow", e);
-			return "Execution failed: " + e.getMessage();
+			if (readySteps.size() == 1 && running.isEmpty()) {
+				PlanStep readyStep = readySteps.getFirst();
+				stepResults.put(readyStep.getIndex(), runStep(plan, readyStep, agents, activePlanId));
+				continue;
+			}
+
+			for (PlanStep readyStep : readySteps) {
+				String conversationId = activePlanId + "_step_" + readyStep.getIndex();
+				Future<String> future = completionService.submit(() ->
+						runStep(plan, readyStep, agentFactory.createAgents(), conversationId));
+				running.put(future, readyStep.getIndex());
+			}
+
+			Future<String> finished;
+			try {
+				finished = completionService.take();
+			} catch (InterruptedException e) {
+				running.keySet().forEach(future -> future.cancel(true));
+				throw e;
+			}
+			int stepIndex = running.remove(finished);
+			try {
+				stepResults.put(stepIndex, finished.get());
+			} catch (ExecutionException e) {
+				LOGGER.error("Error executing step {}", stepIndex, e.getCause());
+				plan.markStep(stepIndex, StepStatus.BLOCKED, null);
+				planStore.update(plan);
+				stepResults.put(stepIndex, "Error executing step " + stepIndex + ": " + e.getCause().getMessage());
+			}
 		}
 	}
 
+	private String runStep(Plan plan, PlanStep step, List<BaseAgent> candidates, String conversationId) {
+		BaseAgent executor = getExecutor(step.getAgentType(), candidates);
+		executor.setConversationId(conversationId);
+		executor.setListener(new AgentListener() {
+			// 每次工具调用都刷新会话浏览器的使用时间，执行其他工具期间浏览器不会被当作遗弃回收
+			@Override
+			public void onToolCall(String agentName, String toolName, String arguments) {
+				chromeDriverRunner.touch(conversationId);
+				listener.onToolCall(agentName, toolName, arguments);
+			}
+
+			@Override
+			public void onToolResult(String agentName, String toolName, String result) {
+				chromeDriverRunner.touch(conversationId);
+				listener.onToolResult(agentName, toolName, result);
+			}
+		});
+		listener.onStepStarted(step.getIndex(), step.getText(), executor.getName());
+		String stepResult = executeStep(plan, executor, step);
+		listener.onStepFinished(step.getIndex(), stepResult);
+		return stepResult;
+	}
+
 	public BaseAgent getExecutor(String stepType) {
+		return getExecutor(stepType, agents);
+	}
+
+	private BaseAgent getExecutor(String stepType, List<BaseAgent> agents) {
 		BaseAgent defaultAgent = null;
 
 		if (stepType != null) {
@@ -152,6 +260,9 @@ public class PlanningFlow extends BaseFlow {
 
 	public void createInitialPlan(String request) {
 		LOGGER.info("Creating initial plan with ID: {}", activePlanId);
+		if (createPlanFromTemplate(request)) {
+			return;
+		}
 
 		// 构建agents信息
 		StringBuilder agentsInfo = new StringBuilder("Available Agents:\n");
@@ -178,6 +289,10 @@ public class PlanningFlow extends BaseFlow {
 
 				Important: For each step in the plan, start with [AGENT_NAME] where AGENT_NAME is one of the available agents listed above.
 				For example: "[BROWSER_AGENT] Search for relevant information" or "[REACT_AGENT] Process the search results"
+
+				If some steps do not depend on each other, you may pass dependencies to the planning tool: for each step, the list of
+				earlier step indices (0-based) whose results it needs. Steps without unfinished dependencies will be executed in parallel.
+				Omit dependencies if every step depends on the previous one.
 				""";
 
 		PromptTemplate promptTemplate = new PromptTemplate(prompt);
@@ -196,172 +311,84 @@ public class PlanningFlow extends BaseFlow {
 			LOGGER.info("Plan creation result: {}", response.getResult().getOutput().getText());
 		} else {
 			LOGGER.warn("Creating default plan");
-			Map<String, Object> defaultArgumentMap = new HashMap<>();
-			defaultArgumentMap.put("command", "create");
-			defaultArgumentMap.put("plan_id", activePlanId);
-			defaultArgumentMap.put("title", "Plan for: " + request.substring(0, Math.min(request.length(), 50))
-					+ (request.length() > 50 ? "..." : ""));
-			defaultArgumentMap.put("steps", Arrays.asList("Analyze request", "Execute task", "Verify results"));
-			planningCache.put(activePlanId, defaultArgumentMap);
+			String title = "Plan for: " + request.substring(0, Math.min(request.length(), 50))
+					+ (request.length() > 50 ? "..." : "");
+			planStore.create(new Plan(activePlanId, title, Arrays.asList("Analyze request", "Execute task", "Verify results"), null));
 		}
 	}
 
-	public Map.Entry<Integer, Map<String, String>> getCurrentStepInfo() {
-		if (activePlanId == null || !planningCache.asMap().containsKey(activePlanId)) {
-			LOGGER.error("Plan with ID {} not found", activePlanId);
-			return null;
+	/**
+	 * 复用相同或相似请求执行成功过的计划，命中时不调用规划模型
+	 */
+	private boolean createPlanFromTemplate(String request) {
+		if (!manusProperties.getPlan().getTemplate().isEnabled()) {
+			return false;
+		}
+		Optional<PlanTemplateStore.PlanTemplate> template = planTemplateStore.find(request);
+		if (template.isEmpty()) {
+			return false;
 		}
-
 		try {
-			Map<String, Object> planData = planningCache.get(activePlanId, ConcurrentHashMap::new);
-			List<String> steps = CommonUtils.convertWithStream(planData.getOrDefault("steps", new ArrayList<String>()));
-			List<String> stepStatuses = CommonUtils.convertWithStream(planData.getOrDefault("step_statuses", new ArrayList<String>()));
-
-			for (int i = 0; i < steps.size(); i++) {
-				String status;
-				if (i >= stepStatuses.size()) {
-					status = StepStatus.NOT_STARTED.getValue();
-				} else {
-					status = stepStatuses.get(i);
-				}
-
-				if (StepStatus.getActiveStatuses().contains(status)) {
-					Map<String, String> stepInfo = new HashMap<>();
-					stepInfo.put("text", steps.get(i));
-
-					Pattern pattern = Pattern.compile("\\[\\s*([^]]+)\\s*]");
-					Matcher matcher = pattern.matcher(steps.get(i));
-					LOGGER.info("steps: {}", steps.get(i));
-					if (matcher.find()) {
-						stepInfo.put("type", matcher.group(1).toLowerCase());
-					}
-
-					stepStatuses.set(i, StepStatus.IN_PROGRESS.getValue());
-					planData.put("step_statuses", stepStatuses);
-
-					planningCache.put(activePlanId, planData);
-					return new AbstractMap.SimpleEntry<>(i, stepInfo);
-				}
-			}
+			planningService.createPlan(activePlanId, template.get().title(), template.get().steps(),
+					template.get().dependencies());
+			LOGGER.info("Plan {} created from plan template", activePlanId);
+			return true;
+		} catch (RuntimeException e) {
+			LOGGER.warn("Failed to create plan {} from template, falling back to planning model: {}",
+					activePlanId, e.getMessage());
+			return false;
+		}
+	}
 
-			return null;
-		} catch (Exception e) {
-			LOGGER.error("Error finding current step index: {}", e.getMessage());
-			return null;
+	/**
+	 * 全部步骤都完成的计划保存为模板，供之后相同或相似的请求复用
+	 */
+	private void recordPlanTemplate() {
+		Plan plan = planStore.get(activePlanId);
+		if (plan != null && manusProperties.getPlan().getTemplate().isEnabled()) {
+			planTemplateStore.record(plan);
 		}
 	}
 
-	public String executeStep(BaseAgent executor, Map<String, String> stepInfo) {
+	/**
+	 * 执行单个步骤
+	 * @param plan 步骤所属的计划
+	 * @param executor 执行步骤的智能体
+	 * @param step 要执行的步骤
+	 * @return 步骤执行结果
+	 */
+	public String executeStep(Plan plan, BaseAgent executor, PlanStep step) {
+		int stepIndex = step.getIndex();
 		try {
 			String planStatus = getPlanText();
-			String stepText = stepInfo.getOrDefault("text", "Step " + currentStepIndex);
 
 			try {
-				String stepResult = executor.run(Map.of("planStatus", planStatus, "currentStepIndex", currentStepIndex, "stepText", stepText));
-				if (Objects.nonNull(currentStepIndex)) {
-					Map<String, Map<String, Object>> plans = planningCache.asMap();
-					if (plans.containsKey(activePlanId)) {
-						Map<String, Object> planData = plans.get(activePlanId);
-						List<String> stepStatuses = CommonUtils.convertWithStream(planData.get("step_statuses"));
-
-						while (stepStatuses.size() <= currentStepIndex) {
-							stepStatuses.add(StepStatus.NOT_STARTED.getValue());
-						}
-
-						stepStatuses.set(currentStepIndex, StepStatus.COMPLETED.getValue());
-						planData.put("step_statuses", stepStatuses);
-						planningCache.put(activePlanId, planData);
-					}
-				}
-
+				String stepResult = executor.run(Map.of("planStatus", planStatus, "currentStepIndex", stepIndex, "stepText", step.getText()));
+				// 执行结果总是写入步骤备注：依赖该步骤的后续步骤可能在独立会话中执行，重启后恢复的计划也只能从备注看到之前的结果
+				String stepNote = StringUtils.abbreviate(executor.getLastRoundResult(), MAX_STEP_NOTE_LENGTH);
+				plan.markStep(stepIndex, StepStatus.COMPLETED, stepNote);
+				planStore.update(plan);
 				return stepResult;
 			} catch (Exception e) {
-				LOGGER.error("Error executing step {}: {}", currentStepIndex, e.getMessage());
-				return "Error executing step " + currentStepIndex + ": " + e.getMessage();
+				LOGGER.error("Error executing step {}: {}", stepIndex, e.getMessage());
+				plan.markStep(stepIndex, StepStatus.BLOCKED, "Error: " + e.getMessage());
+				planStore.update(plan);
+				return "Error executing step " + stepIndex + ": " + e.getMessage();
 			}
 		} catch (Exception e) {
 			LOGGER.error("Error preparing execution context: {}", e.getMessage());
+			plan.markStep(stepIndex, StepStatus.BLOCKED, "Error: " + e.getMessage());
+			planStore.update(plan);
 			return "Error preparing execution context: " + e.getMessage();
 		}
 	}
 
 	public String getPlanText() {
-		try {
-			return PlanningUtils.formatPlan(planningCache.get(activePlanId, ConcurrentHashMap::new));
-		} catch (Exception e) {
-			LOGGER.error("Error getting plan: {}", e.getMessage());
-			return generatePlanTextFromStorage();
-		}
-	}
-
-	public String generatePlanTextFromStorage() {
-		try {
-			Map<String, Map<String, Object>> plans = planningCache.asMap();
-			if (!plans.containsKey(activePlanId)) {
-				return "Error: Plan with ID " + activePlanId + " not found";
-			}
-
-			Map<String, Object> planData = plans.get(activePlanId);
-			String title = (String) planData.getOrDefault("title", "Untitled Plan");
-			List<String> steps = CommonUtils.convertWithStream(planData.getOrDefault("steps", new ArrayList<String>()));
-			List<String> stepStatuses = CommonUtils.convertWithStream(planData.getOrDefault("step_statuses", new ArrayList<String>()));
-			List<String> stepNotes = CommonUtils.convertWithStream(planData.getOrDefault("step_notes", new ArrayList<String>()));
-
-			while (stepStatuses.size() < steps.size()) {
-				stepStatuses.add(StepStatus.NOT_STARTED.getValue());
-			}
-			while (stepNotes.size() < steps.size()) {
-				stepNotes.add("");
-			}
-
-			Map<String, Integer> statusCounts = new HashMap<>();
-			for (String status : StepStatus.getAllStatuses()) {
-				statusCounts.put(status, 0);
-			}
-
-			for (String status : stepStatuses) {
-				statusCounts.put(status, statusCounts.getOrDefault(status, 0) + 1);
-			}
-
-			int completed = statusCounts.get(StepStatus.COMPLETED.getValue());
-			int total = steps.size();
-			double progress = total > 0 ? (completed / (double) total) * 100 : 0;
-
-			StringBuilder planText = new StringBuilder();
-			planText.append("Plan: ").append(title).append(" (ID: ").append(activePlanId).append(")\n");
-
-            planText.append("=".repeat(Math.max(0, planText.length() - 1)));
-			planText.append("\n\n");
-
-			planText.append(String.format("Progress: %d/%d steps completed (%.1f%%)\n", completed, total, progress));
-			planText.append(String.format("Status: %d completed, %d in progress, ",
-					statusCounts.get(StepStatus.COMPLETED.getValue()),
-					statusCounts.get(StepStatus.IN_PROGRESS.getValue())));
-			planText.append(
-					String.format("%d blocked, %d not started\n\n", statusCounts.get(StepStatus.BLOCKED.getValue()),
-							statusCounts.get(StepStatus.NOT_STARTED.getValue())));
-			planText.append("Steps:\n");
-
-			Map<String, String> statusMarks = StepStatus.getStatusMarks();
-
-			for (int i = 0; i < steps.size(); i++) {
-				String step = steps.get(i);
-				String status = stepStatuses.get(i);
-				String notes = stepNotes.get(i);
-				String statusMark = statusMarks.getOrDefault(status,
-						statusMarks.get(StepStatus.NOT_STARTED.getValue()));
-
-				planText.append(String.format("%d. %s %s\n", i, statusMark, step));
-				if (!notes.isEmpty()) {
-					planText.append("   Notes: ").append(notes).append("\n");
-				}
-			}
-
-			return planText.toString();
-		} catch (Exception e) {
-			LOGGER.error("Error generating plan text from storage: {}", e.getMessage());
-			return "Error: Unable to retrieve plan with ID " + activePlanId;
+		Plan plan = planStore.get(activePlanId);
+		if (plan == null) {
+			return "Error: Plan with ID " + activePlanId + " not found";
 		}
+		return PlanningUtils.formatPlan(plan);
 	}
 
 	public String finalizePlan() {
@@ -388,12 +415,25 @@ public class PlanningFlow extends BaseFlow {
 					Format your response in a user-friendly way.
 					""".formatted(planText);
 
-			ChatResponse response = finalizeChatClient
+			ChatClient.ChatClientRequestSpec requestSpec = finalizeChatClient
 					.prompt()
 					.advisors(new MessageChatMemoryAdvisor(ChatMemories.memory))
 					.advisors(memoryAdvisor -> memoryAdvisor.param(CHAT_MEMORY_CONVERSATION_ID_KEY, activePlanId)
 							.param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 100))
-					.user(prompt)
+					.user(prompt);
+
+			if (listener != PlanningFlowListener.NOOP) {
+				// 有监听器时流式生成总结，每个token实时回调
+				String summary = requestSpec
+						.stream()
+						.content()
+						.doOnNext(listener::onFinalizeToken)
+						.collect(Collectors.joining())
+						.block();
+				return "Plan Summary:\n\n" + summary;
+			}
+
+			ChatResponse response = requestSpec
 					.call()
 					.chatResponse();
 
@@ -404,7 +444,18 @@ public class PlanningFlow extends BaseFlow {
 		}
 	}
 
-	public void setActivePlanId(String activePlanId) {
+	public String getActivePlanId() {
+		return activePlanId;
+	}
+
+	/**
+	 * 指定要继续执行的已有计划，配合execute(null)跳过创建计划直接执行剩余步骤
+	 */
+	void setActivePlanId(String activePlanId) {
 		this.activePlanId = activePlanId;
 	}
+
+	public void setListener(PlanningFlowListener listener) {
+		this.listener = listener != null ? listener : PlanningFlowListener.NOOP;
+	}
 }
@@ -0,0 +1,31 @@
+package dev.xiushen.wanus.flow;
+
+import dev.xiushen.wanus.agent.AgentListener;
+
+/**
+ * 计划执行过程的监听器
+ * 		计划创建、步骤开始/结束、工具调用以及最终总结的每个token都会回调，用于流式返回执行进度
+ */
+public interface PlanningFlowListener extends AgentListener {
+
+	PlanningFlowListener NOOP = new PlanningFlowListener() {
+	};
+
+	default void onPlanCreated(String planId, String planText) {
+	}
+
+	default void onStepStarted(int stepIndex, String stepText, String agentName) {
+	}
+
+	default void onStepFinished(int stepIndex, String stepResult) {
+	}
+
+	default void onFinalizeToken(String token) {
+	}
+
+	/**
+	 * 计划执行结束（成功或失败），由PlanningFlowRunner回调
+	 */
+	default void onCompleted(PlanRun planRun) {
+	}
+}
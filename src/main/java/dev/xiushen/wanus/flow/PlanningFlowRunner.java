@@ -0,0 +1,225 @@
+package dev.xiushen.wanus.flow;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import dev.xiushen.wanus.common.Plan;
+import dev.xiushen.wanus.common.PlanStore;
+import dev.xiushen.wanus.config.ManusProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 计划的后台执行器
+ * 		提交时立即返回计划ID，计划在flowExecutor上异步执行
+ * 		maxPending限制已受理未完成的计划总数，超出直接拒绝；maxConcurrent限制同时执行的计划数，
+ * 		其余计划在队列中等待，前一个计划结束时再提交到线程池，排队的计划不占用线程
+ * 		执行中的计划一直保留，结果从计划结束时开始按resultTtl保留
+ */
+@Component
+public class PlanningFlowRunner {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PlanningFlowRunner.class);
+
+	private final ObjectProvider<PlanningFlow> planningFlowProvider;
+	private final ExecutorService flowExecutor;
+	private final Semaphore pendingPermits;
+	private final int maxConcurrent;
+	private final ReentrantLock dispatchLock = new ReentrantLock();
+	private final Deque<PendingPlan> queuedPlans = new ArrayDeque<>();
+	private int runningPlans;
+	private final Map<String, PlanRun> activeRuns = new ConcurrentHashMap<>();
+	private final Cache<String, PlanRun> finishedRuns;
+	private final PlanStore planStore;
+	private final boolean resumeOnStartup;
+
+	public PlanningFlowRunner(
+			ObjectProvider<PlanningFlow> planningFlowProvider,
+			@Qualifier("flowExecutor") ExecutorService flowExecutor,
+			PlanStore planStore,
+			ManusProperties manusProperties) {
+		ManusProperties.Plan plan = manusProperties.getPlan();
+		this.planningFlowProvider = planningFlowProvider;
+		this.flowExecutor = flowExecutor;
+		this.planStore = planStore;
+		this.resumeOnStartup = plan.getStore().isResumeOnStartup();
+		this.pendingPermits = new Semaphore(plan.getMaxPending());
+		this.maxConcurrent = Math.max(1, plan.getMaxConcurrent());
+		this.finishedRuns = CacheBuilder.newBuilder()
+				.expireAfterWrite(plan.getResultTtl())
+				.build();
+	}
+
+	/**
+	 * 提交计划
+	 * @param query 用户请求
+	 * @return 已受理的计划
+	 * @throws RejectedExecutionException 已受理未完成的计划数达到上限
+	 */
+	public PlanRun submit(String query) {
+		return submit(query, PlanningFlowListener.NOOP);
+	}
+
+	/**
+	 * 提交计划，并通过监听器接收执行进度
+	 * @param query 用户请求
+	 * @param listener 执行进度监听器
+	 * @return 已受理的计划
+	 * @throws RejectedExecutionException 已受理未完成的计划数达到上限
+	 */
+	public PlanRun submit(String query, PlanningFlowListener listener) {
+		return start(null, query, listener);
+	}
+
+	/**
+	 * 启动时继续执行上次进程退出前未完成的计划，已完成的步骤不再重复执行
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void resumeUnfinishedPlans() {
+		if (!resumeOnStartup) {
+			return;
+		}
+		for (Plan plan : planStore.list()) {
+			if (plan.isFinished() || plan.getQuery() == null || getPlanRun(plan.getPlanId()) != null) {
+				continue;
+			}
+			try {
+				start(plan.getPlanId(), plan.getQuery(), PlanningFlowListener.NOOP);
+				LOGGER.info("Resuming plan {}", plan.getPlanId());
+			} catch (RejectedExecutionException e) {
+				LOGGER.warn("Too many pending plans, plan {} is not resumed", plan.getPlanId());
+			}
+		}
+	}
+
+	/**
+	 * @param resumePlanId 要继续执行的计划ID，为null时根据query创建新计划
+	 */
+	private PlanRun start(String resumePlanId, String query, PlanningFlowListener listener) {
+		if (!pendingPermits.tryAcquire()) {
+			throw new RejectedExecutionException("Too many pending plans, please retry later");
+		}
+
+		try {
+			PlanningFlow planningFlow = planningFlowProvider.getObject();
+			planningFlow.setListener(listener);
+			if (resumePlanId != null) {
+				planningFlow.setActivePlanId(resumePlanId);
+			}
+			PlanRun planRun = new PlanRun(planningFlow.getActivePlanId(), query);
+			activeRuns.put(planRun.getPlanId(), planRun);
+			// 继续执行时计划已存在，不传入请求，避免重新创建计划
+			String input = resumePlanId == null ? query : null;
+			dispatch(new PendingPlan(planningFlow, planRun, input, listener));
+			LOGGER.info("Plan {} accepted", planRun.getPlanId());
+			return planRun;
+		} catch (RuntimeException e) {
+			pendingPermits.release();
+			throw e;
+		}
+	}
+
+	public PlanRun getPlanRun(String planId) {
+		PlanRun planRun = activeRuns.get(planId);
+		return planRun != null ? planRun : finishedRuns.getIfPresent(planId);
+	}
+
+	/**
+	 * 执行中的计划数未达到上限时立即提交到线程池，否则排队
+	 */
+	private void dispatch(PendingPlan pendingPlan) {
+		dispatchLock.lock();
+		try {
+			if (runningPlans >= maxConcurrent) {
+				queuedPlans.addLast(pendingPlan);
+				return;
+			}
+			runningPlans++;
+		} finally {
+			dispatchLock.unlock();
+		}
+		launch(pendingPlan);
+	}
+
+	/**
+	 * 在已占用的执行名额上运行计划，计划结束后把名额交给队列中的下一个计划
+	 */
+	private void launch(PendingPlan pendingPlan) {
+		try {
+			flowExecutor.execute(() -> {
+				try {
+					run(pendingPlan);
+				} finally {
+					launchNext();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOGGER.error("Plan {} rejected by executor", pendingPlan.planRun().getPlanId(), e);
+			finish(pendingPlan, null, e);
+			launchNext();
+		}
+	}
+
+	private void launchNext() {
+		PendingPlan next;
+		dispatchLock.lock();
+		try {
+			next = queuedPlans.pollFirst();
+			if (next == null) {
+				runningPlans--;
+				return;
+			}
+		} finally {
+			dispatchLock.unlock();
+		}
+		launch(next);
+	}
+
+	private void run(PendingPlan pendingPlan) {
+		String result = null;
+		Exception error = null;
+		try {
+			pendingPlan.planRun().markRunning();
+			result = pendingPlan.planningFlow().execute(pendingPlan.input());
+		} catch (Exception e) {
+			LOGGER.error("Plan {} failed", pendingPlan.planRun().getPlanId(), e);
+			error = e;
+		}
+		finish(pendingPlan, result, error);
+	}
+
+	private void finish(PendingPlan pendingPlan, String result, Exception error) {
+		PlanRun planRun = pendingPlan.planRun();
+		if (error == null) {
+			planRun.markCompleted(result);
+		} else {
+			planRun.markFailed(error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName());
+		}
+		// 结果从完成时刻开始计算保留时长
+		finishedRuns.put(planRun.getPlanId(), planRun);
+		activeRuns.remove(planRun.getPlanId());
+		pendingPermits.release();
+		try {
+			pendingPlan.listener().onCompleted(planRun);
+		} catch (Exception e) {
+			LOGGER.warn("Listener failed for plan {}: {}", planRun.getPlanId(), e.getMessage());
+		}
+	}
+
+	private record PendingPlan(PlanningFlow planningFlow, PlanRun planRun, String input,
+			PlanningFlowListener listener) {
+	}
+}
@@ -3,32 +3,33 @@ package dev.xiushen.wanus.tool;
 import com.google.common.cache.Cache;
 import dev.xiushen.wanus.common.ChromeDriverRunner;
 import dev.xiushen.wanus.common.CommonCache;
-import dev.xiushen.wanus.tool.support.ToolExecuteResult;
+import dev.xiushen.wanus.common.NetworkPolicy;
+import dev.xiushen.wanus.common.ToolCallContext;
+import dev.xiushen.wanus.config.ManusProperties;
+import dev.xiushen.wanus.tool.support.*;
 import org.apache.commons.lang3.StringUtils;
 import org.openqa.selenium.*;
-import org.openqa.selenium.NoSuchElementException;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
+import java.net.URI;
 import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class BrowserService {
     private static final Logger LOGGER = LoggerFactory.getLogger(BrowserService.class);
 
-    private static final String INTERACTIVE_ELEMENTS_SELECTOR = "a, button, input, select, textarea, [role='button'], [role='link']";
     private static final Cache<String, Object> browserCache = CommonCache.browserCache;
 
     private final ChromeDriverRunner chromeDriverRunner;
 
-    private static final int MAX_LENGTH = 3000;
+    private final ManusProperties.Browser browser;
 
-    public BrowserService(ChromeDriverRunner chromeDriverRunner) {
+    public BrowserService(ChromeDriverRunner chromeDriverRunner, ManusProperties.Browser browser) {
         this.chromeDriverRunner = chromeDriverRunner;
+        this.browser = browser;
     }
 
     private WebDriver getDriver() {
@@ -47,7 +48,12 @@ public class BrowserService {
                 return new ToolExecuteResult("URL is required for 'navigate' action");
             }
             driver.get(url);
-            browserCache.putAll(getCurrentState());
+            updateState();
+            NetworkPolicy.PageLoad pageLoad = chromeDriverRunner.getNetworkPolicy().measure(driver);
+            if (pageLoad != null) {
+                LOGGER.info("Page load of {}: {}", url, pageLoad.summary());
+                return new ToolExecuteResult("Navigated to " + url + " (" + pageLoad.summary() + ")");
+            }
             return new ToolExecuteResult("Navigated to " + url);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -65,7 +71,7 @@ public class BrowserService {
                         e.getMessage());
                 return new ToolExecuteResult(errorMessage);
             }
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'navigate' failed: " + e.getMessage());
         }
     }
@@ -78,17 +84,15 @@ public class BrowserService {
             @ToolParam(description = "Element index for 'click' or 'inputText' actions") Integer index) {
         try {
             WebDriver driver = getDriver();
-            List<WebElement> interactiveElements = getInteractiveElements(driver);
 
             if (index == null) {
                 return new ToolExecuteResult("Index is required for 'click' action");
             }
-            if (index < 0 || index >= interactiveElements.size()) {
+            WebElement element = findElement(driver, index);
+            if (element == null) {
                 return new ToolExecuteResult("Element with index " + index + " not found");
             }
 
-            WebElement element = interactiveElements.get(index);
-            element.getText();
             LOGGER.info("Clicking element: {}", element.getText());
 
             // 记录点击前的窗口状态
@@ -96,7 +100,7 @@ public class BrowserService {
             String currentUrl = driver.getCurrentUrl();
 
             // 执行点击操作
-            simulateHumanBehavior(element);
+            simulateHumanBehavior(getProfile(currentUrl));
             try {
                 element.click();
             } catch (ElementClickInterceptedException e) {
@@ -105,42 +109,34 @@ public class BrowserService {
                 js.executeScript("arguments[0].click();", element);
             }
 
-            // 等待页面变化（最多等待10秒）
-            WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(10));
-            try {
-                // 检查是否有新窗口打开
-                Set<String> afterWindowHandles = driver.getWindowHandles();
-                if (afterWindowHandles.size() > beforeWindowHandles.size()) {
-                    // 找出新打开的窗口
-                    afterWindowHandles.removeAll(beforeWindowHandles);
-                    String newHandle = afterWindowHandles.iterator().next();
-
-                    // 切换到新窗口
-                    driver.switchTo().window(newHandle);
-                    LOGGER.info("New tab detected, switched to: {}", driver.getCurrentUrl());
-                    return new ToolExecuteResult(
-                            "Clicked element and opened in new tab: " + driver.getCurrentUrl());
-                }
+            // 等待页面稳定，页面安静后立即返回
+            awaitSettled(driver);
 
-                // 检查URL是否发生变化
-                boolean urlChanged = wait.until(d -> !StringUtils.equals(d.getCurrentUrl(), currentUrl));
-                if (urlChanged) {
-                    LOGGER.info("Page navigated to: {}", driver.getCurrentUrl());
-                    return new ToolExecuteResult("Clicked element and navigated to: " + driver.getCurrentUrl());
-                }
+            // 检查是否有新窗口打开
+            Set<String> afterWindowHandles = new HashSet<>(driver.getWindowHandles());
+            if (afterWindowHandles.size() > beforeWindowHandles.size()) {
+                // 找出新打开的窗口
+                afterWindowHandles.removeAll(beforeWindowHandles);
+                String newHandle = afterWindowHandles.iterator().next();
 
-                // 如果没有明显变化，返回普通点击成功消息
-                browserCache.putAll(getCurrentState());
-                return new ToolExecuteResult("Clicked element at index " + index);
-            } catch (TimeoutException e) {
-                // 如果超时，检查是否仍在原页面
-                if (!StringUtils.equals(driver.getCurrentUrl(), currentUrl)) {
-                    return new ToolExecuteResult("Clicked and page changed to: " + driver.getCurrentUrl());
-                }
-                browserCache.putAll(getCurrentState());
+                // 切换到新窗口，新标签页同样应用网络拦截规则
+                driver.switchTo().window(newHandle);
+                chromeDriverRunner.getNetworkPolicy().apply(driver);
+                awaitSettled(driver);
+                LOGGER.info("New tab detected, switched to: {}", driver.getCurrentUrl());
                 return new ToolExecuteResult(
-                        "Clicked element at index " + index + " (no visible navigation occurred)");
+                        "Clicked element and opened in new tab: " + driver.getCurrentUrl());
             }
+
+            // 检查URL是否发生变化
+            if (!StringUtils.equals(driver.getCurrentUrl(), currentUrl)) {
+                LOGGER.info("Page navigated to: {}", driver.getCurrentUrl());
+                return new ToolExecuteResult("Clicked element and navigated to: " + driver.getCurrentUrl());
+            }
+
+            // 如果没有明显变化，返回普通点击成功消息
+            updateState();
+            return new ToolExecuteResult("Clicked element at index " + index);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
                 String errorMessage = String.format("""
@@ -155,10 +151,10 @@ public class BrowserService {
                                 %s
                                 """,
                         e.getMessage());
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'click' failed: " + e.getMessage());
         }
     }
@@ -172,21 +168,20 @@ public class BrowserService {
             @ToolParam(description = "Text for 'inputText' action") String text) {
         try {
             WebDriver driver = getDriver();
-            List<WebElement> interactiveElements = getInteractiveElements(driver);
 
             if (index == null || text == null) {
                 return new ToolExecuteResult("Index and text are required for 'input_text' action");
             }
-            if (index < 0 || index >= interactiveElements.size()) {
+            WebElement inputElement = findElement(driver, index);
+            if (inputElement == null) {
                 return new ToolExecuteResult("Element with index " + index + " not found");
             }
-            WebElement inputElement = interactiveElements.get(index);
             if (!inputElement.getTagName().equals("input") && !inputElement.getTagName().equals("textarea")) {
                 return new ToolExecuteResult("Element at index " + index + " is not an input element");
             }
-            typeWithHumanDelay(inputElement, text);
+            typeWithHumanDelay(inputElement, text, getProfile(driver.getCurrentUrl()));
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Successfully input '" + text + "' into element at index " + index);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -202,10 +197,10 @@ public class BrowserService {
                                 %s
                                 """,
                         e.getMessage());
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'inputText' failed: " + e.getMessage());
         }
     }
@@ -218,18 +213,18 @@ public class BrowserService {
             @ToolParam Integer index) {
         try {
             WebDriver driver = getDriver();
-            List<WebElement> interactiveElements = getInteractiveElements(driver);
 
             if (index == null) {
                 return new ToolExecuteResult("Index is required for 'key_enter' action");
             }
-            if (index < 0 || index >= interactiveElements.size()) {
+            WebElement enterElement = findElement(driver, index);
+            if (enterElement == null) {
                 return new ToolExecuteResult("Element with index " + index + " not found");
             }
-            WebElement enterElement = interactiveElements.get(index);
             enterElement.sendKeys(Keys.RETURN);
+            awaitSettled(driver);
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Hit the enter key at index " + index);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -245,10 +240,10 @@ public class BrowserService {
                                 %s
                                 """,
                         e.getMessage());
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'keyEnter' failed: " + e.getMessage());
         }
 
@@ -264,7 +259,7 @@ public class BrowserService {
             TakesScreenshot screenshot = (TakesScreenshot) driver;
             String base64Screenshot = screenshot.getScreenshotAs(OutputType.BASE64);
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult(
                     "Screenshot captured (base64 length: " + base64Screenshot.length() + ")");
         } catch (Exception e) {
@@ -282,27 +277,26 @@ public class BrowserService {
                                 """,
                         e.getMessage());
 
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'screenshot' failed: " + e.getMessage());
         }
     }
 
     @Tool(
             name = "getHtml",
-            description = "Get page HTML content"
+            description = "Get simplified page HTML content without scripts and styles"
     )
     public ToolExecuteResult getHtml() {
         try {
             WebDriver driver = getDriver();
-            String html = driver.getPageSource();
+            String html = PageContentExtractor.html(driver, browser.getContentTokenBudget());
 
-            browserCache.putAll(getCurrentState());
-            return new ToolExecuteResult(
-                    html.length() > MAX_LENGTH ? html.substring(0, MAX_LENGTH) + "..." : html);
+            updateState();
+            return new ToolExecuteResult(html);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
                 String errorMessage = String.format("""
@@ -318,26 +312,26 @@ public class BrowserService {
                                 """,
                         e.getMessage());
 
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'getHtml' failed: " + e.getMessage());
         }
     }
 
     @Tool(
             name = "getText",
-            description = "Get text content of the page"
+            description = "Get the main text content of the page as markdown, most relevant sections first when the page is long"
     )
     public ToolExecuteResult getText() {
         try {
             WebDriver driver = getDriver();
-            String body = driver.findElement(By.tagName("body")).getText();
+            String body = PageContentExtractor.extract(driver, ToolCallContext.getStepText(), browser.getContentTokenBudget());
             LOGGER.info("get_text body is {}", body);
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult(body);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -354,11 +348,11 @@ public class BrowserService {
                                 """,
                         e.getMessage());
 
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'getText' failed: " + e.getMessage());
         }
     }
@@ -377,7 +371,7 @@ public class BrowserService {
             JavascriptExecutor jsExecutor = (JavascriptExecutor) driver;
             Object result = jsExecutor.executeScript(script);
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             if (result == null) {
                 return new ToolExecuteResult("Successfully executed JavaScript code.");
             } else {
@@ -397,10 +391,10 @@ public class BrowserService {
                                 %s
                                 """,
                         e.getMessage());
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'executeJs' failed: " + e.getMessage());
         }
     }
@@ -419,7 +413,7 @@ public class BrowserService {
             ((JavascriptExecutor) driver).executeScript("window.scrollBy(0," + scrollAmount + ");");
             String direction = scrollAmount > 0 ? "down" : "up";
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Scrolled " + direction + " by " + Math.abs(scrollAmount) + " pixels");
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -435,10 +429,10 @@ public class BrowserService {
                                 %s
                                 """,
                         e.getMessage());
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'scroll' failed: " + e.getMessage());
         }
     }
@@ -456,7 +450,7 @@ public class BrowserService {
             }
             ((JavascriptExecutor) driver).executeScript("window.open('" + url + "', '_blank');");
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Opened new tab with URL " + url);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -473,11 +467,11 @@ public class BrowserService {
                                 """,
                         e.getMessage());
 
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'newTab' failed: " + e.getMessage());
         }
     }
@@ -491,7 +485,7 @@ public class BrowserService {
             WebDriver driver = getDriver();
             driver.close();
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Closed current tab");
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -508,11 +502,11 @@ public class BrowserService {
                                 """,
                         e.getMessage());
 
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'closeCurrentTab' failed: " + e.getMessage());
         }
     }
@@ -526,13 +520,14 @@ public class BrowserService {
         try {
             WebDriver driver = getDriver();
             if (tabId == null) {
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult("Tab ID is out of range for 'switch_tab' action");
             }
             Object[] windowHandles = driver.getWindowHandles().toArray();
             driver.switchTo().window(windowHandles[tabId].toString());
+            chromeDriverRunner.getNetworkPolicy().apply(driver);
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Switched to tab " + tabId);
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -549,11 +544,11 @@ public class BrowserService {
                                 """,
                         e.getMessage());
 
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'switchTab' failed: " + e.getMessage());
         }
     }
@@ -567,7 +562,7 @@ public class BrowserService {
             WebDriver driver = getDriver();
             driver.navigate().refresh();
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Refreshed current page");
         } catch (Exception e) {
             if (e instanceof ElementNotInteractableException) {
@@ -584,68 +579,49 @@ public class BrowserService {
                                 """,
                         e.getMessage());
 
-                browserCache.putAll(getCurrentState());
+                updateState();
                 return new ToolExecuteResult(errorMessage);
             }
 
-            browserCache.putAll(getCurrentState());
+            updateState();
             return new ToolExecuteResult("Browser action 'refresh' failed: " + e.getMessage());
         }
     }
 
+    /**
+     * 浏览器执行操作后标记当前会话的状态需要重新检查，状态在BrowserAgent读取时才计算
+     */
+    private void updateState() {
+        try {
+            String key = BrowserState.key(ToolCallContext.getConversationId());
+            WebDriver driver = getDriver();
+            BrowserState state = (BrowserState) browserCache.getIfPresent(key);
+            if (state == null || state.getDriver() != driver) {
+                // 等待页面加载完成
+                driver.manage().timeouts().pageLoadTimeout(Duration.ofSeconds(10));
+                state = new BrowserState(driver, browser);
+                browserCache.put(key, state);
+            }
+            state.invalidate();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to update browser state: {}", e.getMessage());
+        }
+    }
+
     public Map<String, Object> getCurrentState() {
-        WebDriver driver = getDriver();
         Map<String, Object> state = new HashMap<>();
-
         try {
-            // 等待页面加载完成
-            driver.manage().timeouts().pageLoadTimeout(Duration.ofSeconds(10));
-
-            // 获取基本信息
-            String currentUrl = driver.getCurrentUrl();
-            String title = driver.getTitle();
-            state.put("url", currentUrl);
-            state.put("title", title);
-
-            // 获取标签页信息
-            Set<String> windowHandles = driver.getWindowHandles();
-            List<Map<String, Object>> tabs = new ArrayList<>();
-            String currentHandle = driver.getWindowHandle();
-            for (String handle : windowHandles) {
-                driver.switchTo().window(handle);
-                tabs.add(Map.of("url", driver.getCurrentUrl(), "title", driver.getTitle(), "id", handle));
-            }
-            driver.switchTo().window(currentHandle); // 切回原始标签页
-            state.put("tabs", tabs);
-
-            // 获取viewport和滚动信息
-            JavascriptExecutor js = (JavascriptExecutor) driver;
-            Long scrollTop = (Long) js.executeScript("return window.pageYOffset;");
-            Long scrollHeight = (Long) js.executeScript("return document.documentElement.scrollHeight;");
-            Long viewportHeight = (Long) js.executeScript("return window.innerHeight;");
-
-            Map<String, Object> scrollInfo = new HashMap<>();
-            scrollInfo.put("pixels_above", scrollTop);
-            scrollInfo.put("pixels_below", Math.max(0, scrollHeight - (scrollTop + viewportHeight)));
-            scrollInfo.put("total_height", scrollHeight);
-            scrollInfo.put("viewport_height", viewportHeight);
-            state.put("scroll_info", scrollInfo);
-
-            // 获取可交互元素
-            String elementsInfo = getInteractiveElementsInfo(driver);
-            state.put("interactive_elements", elementsInfo);
-
-            // 捕获截图
-            TakesScreenshot screenshot = (TakesScreenshot) driver;
-            String base64Screenshot = screenshot.getScreenshotAs(OutputType.BASE64);
-            state.put("screenshot", base64Screenshot);
+            updateState();
+            BrowserState browserState = (BrowserState) browserCache.getIfPresent(
+                    BrowserState.key(ToolCallContext.getConversationId()));
+            if (browserState != null) {
+                state.putAll(browserState.asMap());
+            }
 
             // 添加帮助信息
             state.put("help", "[0], [1], [2], etc., represent clickable indices corresponding to the elements listed. "
                     + "Clicking on these indices will navigate to or interact with the respective content behind them.");
-
             return state;
-
         } catch (Exception e) {
             LOGGER.error("Failed to get browser state", e);
             state.put("error", "Failed to get browser state: " + e.getMessage());
@@ -653,130 +629,66 @@ public class BrowserService {
         }
     }
 
-    private void simulateHumanBehavior(WebElement element) {
-        try {
-
-            // 添加随机延迟
-            Thread.sleep(new Random().nextInt(1000) + 500);
-        }
-        catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+    private void simulateHumanBehavior(InteractionProfile profile) {
+        // 添加随机延迟
+        profile.pauseBeforeAction();
     }
 
-    private void typeWithHumanDelay(WebElement element, String text) {
-        simulateHumanBehavior(element);
+    private void typeWithHumanDelay(WebElement element, String text, InteractionProfile profile) {
+        simulateHumanBehavior(profile);
+        if (!profile.typesPerCharacter()) {
+            element.sendKeys(text);
+            return;
+        }
 
         // 模拟人类输入速度
-        Random random = new Random();
         for (char c : text.toCharArray()) {
             element.sendKeys(String.valueOf(c));
-            try {
-                Thread.sleep(random.nextInt(100) + 50);
-            }
-            catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            profile.pauseBetweenKeys();
         }
     }
 
-    private String formatElementInfo(int index, WebElement element) {
+    /**
+     * 当前页面所在域名的交互方式，域名没有单独配置时使用默认交互方式
+     */
+    private InteractionProfile getProfile(String url) {
+        ManusProperties.Interaction interaction = browser.getInteraction();
+        String host = null;
         try {
-            JavascriptExecutor js = (JavascriptExecutor) getDriver();
-            @SuppressWarnings("unchecked")
-            Map<String, Object> props = (Map<String, Object>) js.executeScript("""
-					function getElementInfo(el) {
-					    const style = window.getComputedStyle(el);
-					    return {
-					        tagName: el.tagName.toLowerCase(),
-					        type: el.getAttribute('type'),
-					        role: el.getAttribute('role'),
-					        text: el.textContent.trim(),
-					        value: el.value,
-					        placeholder: el.getAttribute('placeholder'),
-					        name: el.getAttribute('name'),
-					        id: el.getAttribute('id'),
-					        'aria-label': el.getAttribute('aria-label'),
-					        isVisible: (
-					            el.offsetWidth > 0 &&
-					            el.offsetHeight > 0 &&
-					            style.visibility !== 'hidden' &&
-					            style.display !== 'none'
-					        )
-					    };
-					}
-					return getElementInfo(arguments[0]);
-					""", element);
-
-            if (Objects.isNull(props) || !(Boolean) props.get("isVisible")) {
-                return "";
-            }
-
-            // 构建HTML属性字符串
-            StringBuilder attributes = new StringBuilder();
-
-            // 添加基本属性
-            if (props.get("type") != null) {
-                attributes.append(" type=\"").append(props.get("type")).append("\"");
-            }
-            if (props.get("role") != null) {
-                attributes.append(" role=\"").append(props.get("role")).append("\"");
-            }
-            if (props.get("placeholder") != null) {
-                attributes.append(" placeholder=\"").append(props.get("placeholder")).append("\"");
-            }
-            if (props.get("name") != null) {
-                attributes.append(" name=\"").append(props.get("name")).append("\"");
-            }
-            if (props.get("id") != null) {
-                attributes.append(" id=\"").append(props.get("id")).append("\"");
-            }
-            if (props.get("aria-label") != null) {
-                attributes.append(" aria-label=\"").append(props.get("aria-label")).append("\"");
-            }
-            if (props.get("value") != null) {
-                attributes.append(" value=\"").append(props.get("value")).append("\"");
-            }
-
-            String tagName = (String) props.get("tagName");
-            String text = (String) props.get("text");
-
-            // 生成标准HTML格式输出
-            return String.format("[%d] <%s%s>%s</%s>\n", index, tagName, attributes.toString(), text, tagName);
-
-        } catch (Exception e) {
-            LOGGER.warn("格式化元素信息失败 ,应该是页面某些元素过期了， 跳过当前元素格式化: {}", e.getMessage());
-            return "";
+            host = url != null ? URI.create(url).getHost() : null;
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Unable to parse url {}", url);
         }
-    }
-
-    // 添加新的方法获取可交互元素
-    private List<WebElement> getInteractiveElements(WebDriver driver) {
-        return driver.findElements(By.cssSelector(INTERACTIVE_ELEMENTS_SELECTOR))
-                .stream()
-                .filter(this::isElementVisible)
-                .collect(Collectors.toList());
-    }
-
-    private String getInteractiveElementsInfo(WebDriver driver) {
-        StringBuilder resultInfo = new StringBuilder();
-        List<WebElement> interactiveElements = getInteractiveElements(driver);
-
-        for (int i = 0; i < interactiveElements.size(); i++) {
-            String formattedInfo = formatElementInfo(i, interactiveElements.get(i));
-            if (!formattedInfo.isEmpty()) {
-                resultInfo.append(formattedInfo);
+        if (host != null) {
+            for (Map.Entry<String, String> entry : interaction.getDomainProfiles().entrySet()) {
+                String domain = entry.getKey();
+                if (host.equalsIgnoreCase(domain) || host.toLowerCase(Locale.ROOT).endsWith("." + domain.toLowerCase(Locale.ROOT))) {
+                    return InteractionProfile.of(entry.getValue());
+                }
             }
         }
+        return InteractionProfile.of(interaction.getProfile());
+    }
 
-        return resultInfo.toString();
+    private void awaitSettled(WebDriver driver) {
+        ManusProperties.Interaction interaction = browser.getInteraction();
+        if (!PageSettler.awaitSettled(driver, interaction.getQuietPeriod(), interaction.getSettleTimeout())) {
+            LOGGER.info("Page did not settle within {}", interaction.getSettleTimeout());
+        }
     }
 
-    private boolean isElementVisible(WebElement element) {
-        try {
-            return element.isDisplayed() && element.isEnabled();
-        } catch (NoSuchElementException e) {
-            return false;
+    /**
+     * 按序号定位可交互元素，序号来自最近一次状态快照，页面变化后找不到时重新生成快照再定位
+     */
+    private WebElement findElement(WebDriver driver, int index) {
+        if (index < 0) {
+            return null;
+        }
+        WebElement element = DomSnapshot.find(driver, index);
+        if (element == null) {
+            DomSnapshot.capture(driver);
+            element = DomSnapshot.find(driver, index);
         }
+        return element;
     }
 }
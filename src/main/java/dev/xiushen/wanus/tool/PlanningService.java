@@ -1,10 +1,9 @@
 package dev.xiushen.wanus.tool;
 
-import com.google.common.cache.Cache;
-import dev.xiushen.wanus.common.CommonCache;
+import dev.xiushen.wanus.common.Plan;
+import dev.xiushen.wanus.common.PlanStore;
 import dev.xiushen.wanus.enums.StepStatus;
 import dev.xiushen.wanus.tool.support.ToolExecuteResult;
-import dev.xiushen.wanus.utils.CommonUtils;
 import dev.xiushen.wanus.utils.PlanningUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -13,14 +12,17 @@ import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class PlanningService {
     private static final Logger LOGGER = LoggerFactory.getLogger(PlanningService.class);
 
-    private static final Cache<String, Map<String, Object>> planningCache = CommonCache.planningCache;
+    private final PlanStore planStore;
     private String currentPlanId;
 
+    public PlanningService(PlanStore planStore) {
+        this.planStore = planStore;
+    }
+
     @Tool(
             name = "createPlan",
             description = "Create an initial plan based on the request."
@@ -28,12 +30,15 @@ public class PlanningService {
     public ToolExecuteResult createPlan(
             @ToolParam(description = "Unique identifier for the plan.") String planId,
             @ToolParam(description = "Title for the plan.") String title,
-            @ToolParam(description = "List of plan steps.") List<String> steps) {
+            @ToolParam(description = "List of plan steps.") List<String> steps,
+            @ToolParam(description = "Optional. For each step, the 0-based indices of earlier steps it depends on. "
+                    + "Steps whose dependencies are finished run in parallel. Omit to run steps sequentially.",
+                    required = false) List<List<Integer>> dependencies) {
         if (StringUtils.isBlank(planId)) {
             throw new RuntimeException("Parameter `plan_id` is required for command: create");
         }
 
-        Map<String, Object> plan = planningCache.getIfPresent(planId);
+        Plan plan = planStore.get(planId);
         if (Objects.nonNull(plan)) {
             throw new RuntimeException(
                     "A plan with ID '" + planId + "' already exists. Use 'update' to modify existing plans.");
@@ -47,14 +52,13 @@ public class PlanningService {
             throw new RuntimeException("Parameter `steps` must be a non-empty list of strings for command: create");
         }
 
-        plan = new HashMap<>();
-        plan.put("plan_id", planId);
-        plan.put("title", title);
-        plan.put("steps", steps);
-        plan.put("step_statuses", new ArrayList<>(Collections.nCopies(steps.size(), "not_started")));
-        plan.put("step_notes", new ArrayList<>(Collections.nCopies(steps.size(), "")));
+        List<List<Integer>> stepDependencies = null;
+        if (dependencies != null && !dependencies.isEmpty()) {
+            stepDependencies = validateDependencies(steps, dependencies);
+        }
 
-        planningCache.put(planId, new ConcurrentHashMap<>(plan));
+        plan = new Plan(planId, title, steps, stepDependencies);
+        planStore.create(plan);
         this.currentPlanId = planId;
         return new ToolExecuteResult("Plan created successfully with ID: " + planId + "\n\n" + PlanningUtils.formatPlan(plan));
     }
@@ -74,12 +78,12 @@ public class PlanningService {
             throw new RuntimeException("Parameter `plan_id` is required for command: update");
         }
 
-        Map<String, Object> plan = planningCache.getIfPresent(planId);
+        Plan plan = planStore.get(planId);
         if (Objects.isNull(plan)) {
             throw new RuntimeException("No plan found with ID: " + planId);
         }
         if (title != null && !title.isEmpty()) {
-            plan.put("title", title);
+            plan.setTitle(title);
         }
 
         if (steps != null) {
@@ -87,56 +91,55 @@ public class PlanningService {
                 throw new RuntimeException("Parameter `steps` must be a list of strings for command: update");
             }
 
-            List<String> oldSteps = CommonUtils.convertWithStream(plan.get("steps"));
-            List<String> oldStatuses = CommonUtils.convertWithStream(plan.get("step_statuses"));
-            List<String> oldNotes = CommonUtils.convertWithStream(plan.get("step_notes"));
+            plan.updateSteps(steps);
+        }
+        planStore.update(plan);
 
-            List<String> newStatuses = new ArrayList<>();
-            List<String> newNotes = new ArrayList<>();
+        return new ToolExecuteResult("Plan updated successfully: " + planId + "\n\n" + PlanningUtils.formatPlan(plan));
+    }
 
-            for (int i = 0; i < steps.size(); i++) {
-                String step = steps.get(i);
-                if (i < oldSteps.size() && step.equals(oldSteps.get(i))) {
-                    newStatuses.add(oldStatuses.get(i));
-                    newNotes.add(oldNotes.get(i));
-                }
-                else {
-                    newStatuses.add("not_started");
-                    newNotes.add("");
+    /**
+     * 校验步骤依赖，每个步骤只能依赖排在它前面的步骤，保证依赖关系无环
+     */
+    private List<List<Integer>> validateDependencies(List<String> steps, List<List<Integer>> dependencies) {
+        if (dependencies.size() != steps.size()) {
+            throw new RuntimeException("Parameter `dependencies` must have one entry per step, expected "
+                    + steps.size() + " but got " + dependencies.size());
+        }
+        List<List<Integer>> stepDependencies = new ArrayList<>();
+        for (int i = 0; i < dependencies.size(); i++) {
+            List<Integer> dependencyIndices = dependencies.get(i) != null ? dependencies.get(i) : List.of();
+            for (Integer dependency : dependencyIndices) {
+                if (dependency == null || dependency < 0 || dependency >= i) {
+                    throw new RuntimeException("Invalid dependency " + dependency + " for step " + i
+                            + ". A step can only depend on earlier steps.");
                 }
             }
-
-            plan.put("steps", steps);
-            plan.put("step_statuses", newStatuses);
-            plan.put("step_notes", newNotes);
+            stepDependencies.add(new ArrayList<>(dependencyIndices));
         }
-
-        return new ToolExecuteResult("Plan updated successfully: " + planId + "\n\n" + PlanningUtils.formatPlan(plan));
+        return stepDependencies;
     }
 
     @Tool(name = "listPlans")
     public ToolExecuteResult listPlans() {
-        if (planningCache.size() == 0) {
+        Collection<Plan> plans = planStore.list();
+        if (plans.isEmpty()) {
             return new ToolExecuteResult("No plans available. Create a plan with the 'create' command.");
         }
 
-        Map<String, Map<String, Object>> plans = planningCache.asMap();
         StringBuilder output = new StringBuilder("Available plans:\n");
-        for (String planId : plans.keySet()) {
-            Map<String, Object> plan = plans.get(planId);
+        for (Plan plan : plans) {
+            String planId = plan.getPlanId();
             String currentMarker = planId.equals(currentPlanId) ? " (active)" : "";
-            long completed = CommonUtils.convertWithStream(plan.get("step_statuses"))
-                    .stream()
-                    .filter("completed"::equals)
-                    .count();
-            long total = ((List<?>) plan.get("steps")).size();
+            int completed = plan.countSteps(StepStatus.COMPLETED);
+            int total = plan.size();
 
             String progress = completed + "/" + total + " steps completed";
             output.append("• ")
                     .append(planId)
                     .append(currentMarker)
                     .append(": ")
-                    .append(plan.get("title"))
+                    .append(plan.getTitle())
                     .append(" - ")
                     .append(progress)
                     .append("\n");
@@ -155,7 +158,7 @@ public class PlanningService {
             planId = currentPlanId;
         }
 
-        Map<String, Object> plan = planningCache.getIfPresent(planId);
+        Plan plan = planStore.get(planId);
         if (Objects.isNull(plan)) {
             throw new RuntimeException("No plan found with ID: " + planId);
         }
@@ -170,7 +173,7 @@ public class PlanningService {
             throw new RuntimeException("Parameter `plan_id` is required for command: set_active");
         }
 
-        Map<String, Object> plan = planningCache.getIfPresent(planId);
+        Plan plan = planStore.get(planId);
         if (Objects.isNull(plan)) {
             throw new RuntimeException("No plan found with ID: " + planId);
         }
@@ -186,7 +189,6 @@ public class PlanningService {
             @ToolParam(description = "Index of the step to update (0-based).") Integer stepIndex,
             @ToolParam(description = "Status to set for a step.") StepStatus stepStatus,
             @ToolParam(description = "Additional notes for a step. ", required = false) String stepNotes) {
-        String stepStatusStr = stepStatus.getValue();
         if (StringUtils.isBlank(planId)) {
             if (currentPlanId == null) {
                 throw new RuntimeException("No active plan. Please specify a plan_id or set an active plan.");
@@ -194,7 +196,7 @@ public class PlanningService {
             planId = currentPlanId;
         }
 
-        Map<String, Object> plan = planningCache.getIfPresent(planId);
+        Plan plan = planStore.get(planId);
         if (Objects.isNull(plan)) {
             throw new RuntimeException("No plan found with ID: " + planId);
         }
@@ -203,28 +205,13 @@ public class PlanningService {
             throw new RuntimeException("Parameter `step_index` is required for command: mark_step");
         }
 
-        List<String> steps = CommonUtils.convertWithStream(plan.get("steps"));
-        if (stepIndex < 0 || stepIndex >= steps.size()) {
+        if (stepIndex < 0 || stepIndex >= plan.size()) {
             throw new RuntimeException(
-                    "Invalid step_index: " + stepIndex + ". Valid indices range from 0 to " + (steps.size() - 1) + ".");
-        }
-
-        List<String> stepStatuses = CommonUtils.convertWithStream(plan.get("step_statuses"));
-        List<String> stepNotesList = CommonUtils.convertWithStream(plan.get("step_notes"));
-
-        if (stepStatusStr != null
-                && !Arrays.asList("not_started", "in_progress", "completed", "blocked").contains(stepStatusStr)) {
-            throw new RuntimeException("Invalid step_status: " + stepStatus
-                    + ". Valid statuses are: not_started, in_progress, completed, blocked");
-        }
-
-        if (stepStatusStr != null) {
-            stepStatuses.set(stepIndex, stepStatusStr);
+                    "Invalid step_index: " + stepIndex + ". Valid indices range from 0 to " + (plan.size() - 1) + ".");
         }
 
-        if (stepNotes != null) {
-            stepNotesList.set(stepIndex, stepNotes);
-        }
+        plan.markStep(stepIndex, stepStatus, stepNotes);
+        planStore.update(plan);
 
         String result = "Step " + stepIndex + " updated in plan '" + planId + "'.\n\n" + PlanningUtils.formatPlan(plan);
         LOGGER.info(result);
@@ -238,12 +225,12 @@ public class PlanningService {
             throw new RuntimeException("Parameter `plan_id` is required for command: delete");
         }
 
-        Map<String, Object> plan = planningCache.getIfPresent(planId);
+        Plan plan = planStore.get(planId);
         if (Objects.isNull(plan)) {
             throw new RuntimeException("No plan found with ID: " + planId);
         }
 
-        planningCache.invalidate(planId);
+        planStore.remove(planId);
         if (planId.equals(currentPlanId)) {
             currentPlanId = null;
         }
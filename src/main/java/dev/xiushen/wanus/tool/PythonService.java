@@ -1,5 +1,6 @@
 package dev.xiushen.wanus.tool;
 
+import dev.xiushen.wanus.common.PythonWorkerPool;
 import dev.xiushen.wanus.tool.support.CodeExecutionResult;
 import dev.xiushen.wanus.tool.support.LogIdGenerator;
 import dev.xiushen.wanus.tool.support.ToolExecuteResult;
@@ -16,6 +17,19 @@ public class PythonService {
 
     private Boolean arm64 = true;
 
+    private final PythonWorkerPool workerPool;
+
+    public PythonService() {
+        this(null);
+    }
+
+    /**
+     * @param workerPool 常驻的Python工作进程池，为null时每次执行启动一个新的python3进程
+     */
+    public PythonService(PythonWorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
     @Tool(
             name = "executePythonCode",
             description = "Executes Python code string. Note: Only print outputs are visible, function return values are not captured. Use print statements to see results."
@@ -23,7 +37,9 @@ public class PythonService {
     public ToolExecuteResult executePythonCode(
             @ToolParam(description = "The Python code to execute.") String code) {
         LOGGER.info("PythonExecute code:{}", code);
-;
+        if (workerPool != null) {
+            return new ToolExecuteResult(workerPool.execute(code).output());
+        }
         CodeExecutionResult codeExecutionResult = CodeUtils.executeCode(code, "python",
                 "tmp_" + LogIdGenerator.generateUniqueId() + ".py", arm64, new HashMap<>());
         String result = codeExecutionResult.getLogs();
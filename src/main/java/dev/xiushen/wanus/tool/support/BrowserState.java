@@ -0,0 +1,285 @@
+package dev.xiushen.wanus.tool.support;
+
+import dev.xiushen.wanus.config.ManusProperties;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+import java.util.*;
+
+/**
+ * 浏览器当前状态，提供给BrowserAgent的提示词
+ *      各项状态在第一次读取时才计算，没有读取的项（例如截图）不产生任何WebDriver调用
+ *      页面中注入MutationObserver记录DOM是否变化，DOM没有变化时直接复用上一次的可交互元素列表
+ *      浏览器操作后调用invalidate，下一次读取时用一次脚本调用检查页面是否变化并获取URL、标题和滚动位置
+ *      开启元素差异时，提示词中保留最近一次的完整元素列表，并标出当前页面相对该列表的变化，页面切换或变化较大时重新发送完整列表
+ */
+public class BrowserState {
+
+    private static final String KEY_PREFIX = "browser_state:";
+
+    private static final String DEFAULT_SESSION = "default";
+
+    private static final String CHECK_SCRIPT = """
+            if (!window.__wanusObserver) {
+                window.__wanusPageId = Math.random().toString(36).substring(2);
+                window.__wanusDirty = true;
+                window.__wanusObserver = new MutationObserver(() => { window.__wanusDirty = true; });
+                window.__wanusObserver.observe(document, {subtree: true, childList: true, attributes: true, characterData: true});
+            }
+            return {
+                pageId: window.__wanusPageId,
+                dirty: window.__wanusDirty,
+                url: location.href,
+                title: document.title,
+                scrollTop: Math.round(window.pageYOffset),
+                scrollHeight: Math.round(document.documentElement.scrollHeight),
+                viewportHeight: Math.round(window.innerHeight)
+            };
+            """;
+
+    /**
+     * 生成元素列表时写入的序号属性也会触发MutationObserver，生成后丢弃这些记录
+     */
+    private static final String CLEAN_SCRIPT = """
+            if (window.__wanusObserver) {
+                window.__wanusObserver.takeRecords();
+            }
+            window.__wanusDirty = false;
+            """;
+
+    private final WebDriver driver;
+    private final boolean screenshotEnabled;
+    private final boolean elementDiff;
+    private final int fullElementsEvery;
+
+    private boolean checked;
+    private String pageId;
+    private Page page;
+    private List<String> elementLines;
+    private List<String> tabs;
+    private String screenshot;
+
+    /**
+     * 每次invalidate加一，同一轮中多次读取提示词元素列表得到相同的结果
+     */
+    private long generation;
+    private long promptGeneration = -1;
+    private String promptElements;
+    private List<String> fullLines;
+    private String fullPageId;
+    private String fullHash;
+    private int diffsSinceFull;
+
+    public BrowserState(WebDriver driver, ManusProperties.Browser browser) {
+        this.driver = driver;
+        this.screenshotEnabled = browser.isStateScreenshot();
+        this.elementDiff = browser.isElementDiff();
+        this.fullElementsEvery = Math.max(1, browser.getFullElementsEvery());
+    }
+
+    /**
+     * 浏览器状态在CommonCache.browserCache中的键，每个会话一份
+     */
+    public static String key(String conversationId) {
+        return KEY_PREFIX + (conversationId != null ? conversationId : DEFAULT_SESSION);
+    }
+
+    public WebDriver getDriver() {
+        return driver;
+    }
+
+    /**
+     * 浏览器执行了操作，下一次读取时重新检查页面
+     */
+    public synchronized void invalidate() {
+        generation++;
+        checked = false;
+        tabs = null;
+        screenshot = null;
+    }
+
+    public synchronized Page getPage() {
+        check();
+        return page;
+    }
+
+    public synchronized String getInteractiveElements() {
+        return format(getElementLines());
+    }
+
+    /**
+     * 提示词中的可交互元素列表
+     *      下一步提示每轮重新生成，不会保存在会话记忆中，因此变化总是相对最近一次完整列表计算，并和该完整列表一起发送
+     *      页面切换、变化超过一半或者连续fullElementsEvery轮使用同一份完整列表后，改为发送当前的完整列表
+     */
+    public synchronized String getPromptElements() {
+        List<String> lines = getElementLines();
+        if (promptElements != null && promptGeneration == generation) {
+            return promptElements;
+        }
+
+        String diff = elementDiff && fullLines != null && pageId.equals(fullPageId) && diffsSinceFull < fullElementsEvery
+                ? diff(fullLines, lines)
+                : null;
+        if (diff != null) {
+            diffsSinceFull++;
+            promptElements = "Element list " + fullHash + ":\n" + format(fullLines) + diff;
+        } else {
+            diffsSinceFull = 0;
+            fullLines = lines;
+            fullPageId = pageId;
+            fullHash = hash(lines);
+            promptElements = elementDiff
+                    ? "Element list " + fullHash + ":\n" + format(lines)
+                    : format(lines);
+        }
+        promptGeneration = generation;
+        return promptElements;
+    }
+
+    private List<String> getElementLines() {
+        check();
+        if (elementLines == null) {
+            elementLines = DomSnapshot.capture(driver).getElements().stream()
+                    .map(DomSnapshot.Element::format)
+                    .toList();
+            ((JavascriptExecutor) driver).executeScript(CLEAN_SCRIPT);
+        }
+        return elementLines;
+    }
+
+    /**
+     * 变化太多时返回null，改为发送完整列表
+     */
+    private String diff(List<String> previous, List<String> current) {
+        List<String> added = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        int unchanged = 0;
+        for (int i = 0; i < Math.max(previous.size(), current.size()); i++) {
+            String before = i < previous.size() ? previous.get(i) : null;
+            String after = i < current.size() ? current.get(i) : null;
+            if (before == null) {
+                added.add(after);
+            } else if (after == null) {
+                removed.add("[" + i + "]");
+            } else if (!before.equals(after)) {
+                changed.add(after);
+            } else {
+                unchanged++;
+            }
+        }
+        int changes = added.size() + changed.size() + removed.size();
+        if (changes * 2 > Math.max(1, current.size())) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder();
+        if (changes == 0) {
+            result.append("The page still matches element list ").append(fullHash).append("\n");
+            return result.toString();
+        }
+        result.append("Current page differs from element list ").append(fullHash).append(" as follows, ")
+                .append(unchanged).append(" elements are unchanged:\n");
+        if (!added.isEmpty()) {
+            result.append("Added:\n").append(format(added));
+        }
+        if (!changed.isEmpty()) {
+            result.append("Changed:\n").append(format(changed));
+        }
+        if (!removed.isEmpty()) {
+            result.append("Removed: ").append(String.join(", ", removed)).append("\n");
+        }
+        return result.toString();
+    }
+
+    private static String format(List<String> lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            result.append(line).append("\n");
+        }
+        return result.toString();
+    }
+
+    private static String hash(List<String> lines) {
+        return DigestUtils.sha256Hex(String.join("\n", lines)).substring(0, 8);
+    }
+
+    public synchronized List<String> getTabs() {
+        if (tabs == null) {
+            tabs = new ArrayList<>(driver.getWindowHandles());
+        }
+        return tabs;
+    }
+
+    /**
+     * 当前页面截图（base64），未开启截图时返回null
+     */
+    public synchronized String getScreenshot() {
+        if (!screenshotEnabled) {
+            return null;
+        }
+        if (screenshot == null) {
+            screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.BASE64);
+        }
+        return screenshot;
+    }
+
+    /**
+     * 计算全部状态，用于需要完整状态的场景
+     */
+    public synchronized Map<String, Object> asMap() {
+        Map<String, Object> state = new HashMap<>();
+        Page current = getPage();
+        state.put("url", current.url());
+        state.put("title", current.title());
+        state.put("tabs", getTabs());
+        state.put("scroll_info", Map.of(
+                "pixels_above", current.pixelsAbove(),
+                "pixels_below", current.pixelsBelow(),
+                "total_height", current.totalHeight(),
+                "viewport_height", current.viewportHeight()));
+        state.put("interactive_elements", getInteractiveElements());
+        if (screenshotEnabled) {
+            state.put("screenshot", getScreenshot());
+        }
+        return state;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void check() {
+        if (checked) {
+            return;
+        }
+        Map<String, Object> result = (Map<String, Object>) ((JavascriptExecutor) driver).executeScript(CHECK_SCRIPT);
+        String currentPageId = String.valueOf(result.get("pageId"));
+        if (!currentPageId.equals(pageId) || Boolean.TRUE.equals(result.get("dirty"))) {
+            elementLines = null;
+            screenshot = null;
+        }
+        pageId = currentPageId;
+
+        long scrollTop = number(result.get("scrollTop"));
+        long scrollHeight = number(result.get("scrollHeight"));
+        long viewportHeight = number(result.get("viewportHeight"));
+        page = new Page(
+                String.valueOf(result.get("url")),
+                String.valueOf(result.get("title")),
+                scrollTop,
+                Math.max(0, scrollHeight - (scrollTop + viewportHeight)),
+                scrollHeight,
+                viewportHeight);
+        checked = true;
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    public record Page(String url, String title, long pixelsAbove, long pixelsBelow, long totalHeight,
+                       long viewportHeight) {
+    }
+}
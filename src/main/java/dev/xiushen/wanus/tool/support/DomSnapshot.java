@@ -0,0 +1,151 @@
+package dev.xiushen.wanus.tool.support;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.util.*;
+
+/**
+ * 页面可交互元素快照
+ *      一次脚本调用遍历DOM，返回所有可见且可用的可交互元素的序号、标签、属性和位置，
+ *      并在元素上写入data-wanus-index属性，click、inputText等操作按序号直接定位，不需要逐个元素往返WebDriver
+ */
+public class DomSnapshot {
+
+    public static final String INDEX_ATTRIBUTE = "data-wanus-index";
+
+    private static final String INTERACTIVE_ELEMENTS_SELECTOR = "a, button, input, select, textarea, [role='button'], [role='link']";
+
+    private static final int MAX_TEXT_LENGTH = 200;
+
+    private static final String SNAPSHOT_SCRIPT = """
+            const selector = arguments[0], attribute = arguments[1], maxText = arguments[2];
+            document.querySelectorAll('[' + attribute + ']').forEach(el => el.removeAttribute(attribute));
+            const elements = [];
+            for (const el of document.querySelectorAll(selector)) {
+                if (el.disabled || el.offsetWidth <= 0 || el.offsetHeight <= 0) {
+                    continue;
+                }
+                const style = window.getComputedStyle(el);
+                if (style.visibility === 'hidden' || style.display === 'none') {
+                    continue;
+                }
+                const rect = el.getBoundingClientRect();
+                let text = (el.textContent || '').replace(/\\s+/g, ' ').trim();
+                if (text.length > maxText) {
+                    text = text.substring(0, maxText) + '...';
+                }
+                const index = elements.length;
+                el.setAttribute(attribute, index);
+                elements.push({
+                    index: index,
+                    tag: el.tagName.toLowerCase(),
+                    type: el.getAttribute('type'),
+                    role: el.getAttribute('role'),
+                    placeholder: el.getAttribute('placeholder'),
+                    name: el.getAttribute('name'),
+                    id: el.getAttribute('id'),
+                    'aria-label': el.getAttribute('aria-label'),
+                    value: typeof el.value === 'string' ? el.value : null,
+                    text: text,
+                    x: Math.round(rect.left + window.scrollX),
+                    y: Math.round(rect.top + window.scrollY),
+                    width: Math.round(rect.width),
+                    height: Math.round(rect.height),
+                    inViewport: rect.bottom > 0 && rect.right > 0
+                        && rect.top < window.innerHeight && rect.left < window.innerWidth
+                });
+            }
+            return elements;
+            """;
+
+    private static final List<String> ATTRIBUTES = List.of("type", "role", "placeholder", "name", "id", "aria-label", "value");
+
+    private final List<Element> elements;
+
+    private DomSnapshot(List<Element> elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * 对当前页面生成快照，并重新编号页面上的元素
+     */
+    @SuppressWarnings("unchecked")
+    public static DomSnapshot capture(WebDriver driver) {
+        Object result = ((JavascriptExecutor) driver).executeScript(SNAPSHOT_SCRIPT,
+                INTERACTIVE_ELEMENTS_SELECTOR, INDEX_ATTRIBUTE, MAX_TEXT_LENGTH);
+        List<Element> elements = new ArrayList<>();
+        if (result instanceof List<?> rows) {
+            for (Object row : rows) {
+                if (row instanceof Map<?, ?> props) {
+                    elements.add(toElement((Map<String, Object>) props));
+                }
+            }
+        }
+        return new DomSnapshot(elements);
+    }
+
+    /**
+     * 按最近一次快照的序号定位元素，页面已经变化找不到时返回null
+     */
+    public static WebElement find(WebDriver driver, int index) {
+        List<WebElement> found = driver.findElements(By.cssSelector("[" + INDEX_ATTRIBUTE + "=\"" + index + "\"]"));
+        return found.isEmpty() ? null : found.getFirst();
+    }
+
+    private static Element toElement(Map<String, Object> props) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (String attribute : ATTRIBUTES) {
+            Object value = props.get(attribute);
+            if (value != null) {
+                attributes.put(attribute, value.toString());
+            }
+        }
+        return new Element(
+                number(props.get("index")),
+                String.valueOf(props.get("tag")),
+                attributes,
+                props.get("text") != null ? props.get("text").toString() : "",
+                number(props.get("x")),
+                number(props.get("y")),
+                number(props.get("width")),
+                number(props.get("height")),
+                Boolean.TRUE.equals(props.get("inViewport")));
+    }
+
+    private static int number(Object value) {
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+
+    public List<Element> getElements() {
+        return elements;
+    }
+
+    /**
+     * 按序号输出HTML格式的元素列表，提供给模型选择要操作的元素
+     */
+    public String format() {
+        StringBuilder result = new StringBuilder();
+        for (Element element : elements) {
+            result.append(element.format()).append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param x 元素在页面中的横坐标
+     * @param y 元素在页面中的纵坐标
+     * @param inViewport 元素是否在当前视口内
+     */
+    public record Element(int index, String tagName, Map<String, String> attributes, String text,
+                          int x, int y, int width, int height, boolean inViewport) {
+
+        public String format() {
+            StringBuilder attributeText = new StringBuilder();
+            attributes.forEach((name, value) -> attributeText.append(" ").append(name).append("=\"").append(value).append("\""));
+            return String.format("[%d] <%s%s>%s</%s>", index, tagName, attributeText, text, tagName);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package dev.xiushen.wanus.tool.support;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 浏览器交互方式
+ *      FAST：不做任何模拟延迟，输入框一次性输入全部文本，适合内部站点
+ *      REALISTIC：操作前随机停顿，逐字输入，模拟人的操作节奏，适合有反爬检测的外部站点
+ */
+public enum InteractionProfile {
+
+    FAST(0, 0, 0, 0),
+    REALISTIC(500, 1500, 50, 150);
+
+    private final int minActionDelayMillis;
+    private final int maxActionDelayMillis;
+    private final int minKeyDelayMillis;
+    private final int maxKeyDelayMillis;
+
+    InteractionProfile(int minActionDelayMillis, int maxActionDelayMillis, int minKeyDelayMillis,
+                       int maxKeyDelayMillis) {
+        this.minActionDelayMillis = minActionDelayMillis;
+        this.maxActionDelayMillis = maxActionDelayMillis;
+        this.minKeyDelayMillis = minKeyDelayMillis;
+        this.maxKeyDelayMillis = maxKeyDelayMillis;
+    }
+
+    /**
+     * 按名称解析，不区分大小写，无法识别时使用FAST
+     */
+    public static InteractionProfile of(String name) {
+        if (name != null) {
+            for (InteractionProfile profile : values()) {
+                if (profile.name().equals(name.trim().toUpperCase(Locale.ROOT))) {
+                    return profile;
+                }
+            }
+        }
+        return FAST;
+    }
+
+    /**
+     * 是否逐字输入
+     */
+    public boolean typesPerCharacter() {
+        return maxKeyDelayMillis > 0;
+    }
+
+    /**
+     * 点击、输入等操作之前的停顿
+     */
+    public void pauseBeforeAction() {
+        sleep(minActionDelayMillis, maxActionDelayMillis);
+    }
+
+    /**
+     * 逐字输入时两次按键之间的停顿
+     */
+    public void pauseBetweenKeys() {
+        sleep(minKeyDelayMillis, maxKeyDelayMillis);
+    }
+
+    private static void sleep(int minMillis, int maxMillis) {
+        if (maxMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(minMillis, maxMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package dev.xiushen.wanus.tool.support;
+
+import dev.xiushen.wanus.utils.TokenUtils;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.util.*;
+
+/**
+ * 页面正文提取
+ *      在页面中一次遍历DOM，跳过脚本、样式、导航、页脚、广告等样板内容，把正文转换为紧凑的Markdown块
+ *      正文按标题切分为段落，过长的段落再按块切分，超出token预算时按与当前步骤的相关度挑选段落，再按原文顺序输出
+ */
+public class PageContentExtractor {
+
+    /**
+     * 页面中收集的正文字符数上限，避免超长页面在传输上浪费时间
+     */
+    private static final int MAX_PAGE_CHARS = 200_000;
+
+    /**
+     * 单个段落的token上限，没有标题的页面或很长的章节按块切分成多个段落，相关度挑选才有意义
+     */
+    private static final int MAX_SECTION_TOKENS = 300;
+
+    /**
+     * 总是保留的第一个段落最多占用的预算比例，超出部分截断
+     */
+    private static final double FIRST_SECTION_BUDGET_RATIO = 0.25;
+
+    private static final String EXTRACT_SCRIPT = """
+            const maxChars = arguments[0];
+            const SKIP = new Set(['SCRIPT', 'STYLE', 'NOSCRIPT', 'SVG', 'CANVAS', 'IFRAME', 'TEMPLATE', 'NAV', 'FOOTER',
+                'ASIDE', 'BUTTON', 'SELECT', 'OPTION', 'HEAD', 'DIALOG']);
+            const BLOCKS = new Set(['P', 'DIV', 'SECTION', 'ARTICLE', 'MAIN', 'UL', 'OL', 'LI', 'TABLE', 'PRE', 'BLOCKQUOTE',
+                'H1', 'H2', 'H3', 'H4', 'H5', 'H6', 'HEADER', 'DL', 'DT', 'DD', 'FIGURE']);
+            const BOILERPLATE = /(^|[\\s_-])(nav|navbar|menu|footer|sidebar|breadcrumbs?|comments?|advert|ads?|banner|cookie|share|social|related|popup|modal|subscribe|login)([\\s_-]|$)/i;
+            const blocks = [];
+            let total = 0;
+            const clean = text => text.replace(/\\s+/g, ' ').trim();
+            const push = (level, text) => {
+                if (total >= maxChars || !text || text.length < 2) {
+                    return;
+                }
+                total += text.length;
+                blocks.push([level, text]);
+            };
+            const isLeaf = el => !Array.from(el.children).some(child => BLOCKS.has(child.tagName));
+            // 页面外层包装元素的class也常带有这些词（例如has-sidebar、menu-open），只有不含块级子元素或以链接为主的容器才当作样板内容
+            const boilerplate = el => {
+                const marker = (el.id || '') + ' ' + (typeof el.className === 'string' ? el.className : '');
+                if (!BOILERPLATE.test(marker)) {
+                    return false;
+                }
+                if (isLeaf(el)) {
+                    return true;
+                }
+                const text = el.innerText || '';
+                let linkChars = 0;
+                for (const link of el.querySelectorAll('a')) {
+                    linkChars += (link.innerText || '').length;
+                }
+                return text.length === 0 || linkChars / text.length > 0.5;
+            };
+            const hidden = el => {
+                if (el.hidden || el.getAttribute('aria-hidden') === 'true') {
+                    return true;
+                }
+                const style = window.getComputedStyle(el);
+                return style.display === 'none' || style.visibility === 'hidden';
+            };
+            const inline = node => {
+                let out = '';
+                for (const child of node.childNodes) {
+                    if (child.nodeType === Node.TEXT_NODE) {
+                        out += child.textContent;
+                    } else if (child.nodeType === Node.ELEMENT_NODE && !SKIP.has(child.tagName) && !hidden(child)) {
+                        const text = clean(inline(child));
+                        if (child.tagName === 'A' && text && /^https?:/.test(child.href)) {
+                            out += ' [' + text + '](' + child.href + ') ';
+                        } else if ((child.tagName === 'STRONG' || child.tagName === 'B') && text) {
+                            out += ' **' + text + '** ';
+                        } else if (child.tagName === 'CODE' && text) {
+                            out += ' `' + text + '` ';
+                        } else if (child.tagName === 'BR') {
+                            out += ' ';
+                        } else {
+                            out += ' ' + text + ' ';
+                        }
+                    }
+                }
+                return out;
+            };
+            const table = el => {
+                const rows = Array.from(el.rows).slice(0, 50).map(row =>
+                    '| ' + Array.from(row.cells).map(cell => clean(cell.innerText).replace(/\\|/g, '/')).join(' | ') + ' |');
+                if (rows.length > 1) {
+                    rows.splice(1, 0, '|' + ' --- |'.repeat(el.rows[0].cells.length));
+                }
+                return rows.join('\\n');
+            };
+            const walk = (el, root) => {
+                if (total >= maxChars || SKIP.has(el.tagName) || hidden(el)) {
+                    return;
+                }
+                if (!root && el.tagName !== 'MAIN' && el.tagName !== 'ARTICLE' && boilerplate(el)) {
+                    return;
+                }
+                const tag = el.tagName;
+                if (/^H[1-6]$/.test(tag)) {
+                    const level = Number(tag.substring(1));
+                    push(level, '#'.repeat(level) + ' ' + clean(el.innerText));
+                } else if (tag === 'PRE') {
+                    push(0, '```\\n' + el.innerText.trim() + '\\n```');
+                } else if (tag === 'TABLE') {
+                    push(0, table(el));
+                } else if (tag === 'LI' || tag === 'DT' || tag === 'DD') {
+                    push(0, '- ' + clean(inline(el)));
+                } else if (tag === 'P' || tag === 'BLOCKQUOTE' || isLeaf(el)) {
+                    push(0, (tag === 'BLOCKQUOTE' ? '> ' : '') + clean(inline(el)));
+                } else {
+                    for (const child of el.childNodes) {
+                        if (child.nodeType === Node.TEXT_NODE) {
+                            push(0, clean(child.textContent));
+                        } else if (child.nodeType === Node.ELEMENT_NODE) {
+                            walk(child, false);
+                        }
+                    }
+                }
+            };
+            const main = document.querySelector('article, main, [role=main]');
+            const root = main && main.innerText.length > 500 ? main : document.body;
+            if (root) {
+                walk(root, true);
+            }
+            return {title: document.title, url: location.href, blocks: blocks};
+            """;
+
+    private static final String HTML_SCRIPT = """
+            const root = document.body ? document.body.cloneNode(true) : document.documentElement.cloneNode(true);
+            root.querySelectorAll('script, style, noscript, svg, canvas, iframe, template, link, meta').forEach(el => el.remove());
+            const KEEP = new Set(['href', 'src', 'id', 'name', 'type', 'role', 'aria-label', 'placeholder', 'value', 'alt',
+                'title', 'data-wanus-index']);
+            const walker = document.createTreeWalker(root, NodeFilter.SHOW_ELEMENT | NodeFilter.SHOW_COMMENT);
+            const comments = [];
+            for (let node = walker.currentNode; node; node = walker.nextNode()) {
+                if (node.nodeType === Node.COMMENT_NODE) {
+                    comments.push(node);
+                } else {
+                    for (const attribute of Array.from(node.attributes)) {
+                        if (!KEEP.has(attribute.name) || attribute.value.startsWith('data:')) {
+                            node.removeAttribute(attribute.name);
+                        }
+                    }
+                }
+            }
+            comments.forEach(node => node.remove());
+            return root.outerHTML.replace(/\\s+/g, ' ').replace(/> </g, '><');
+            """;
+
+    private PageContentExtractor() {
+    }
+
+    /**
+     * 提取页面正文
+     * @param query 当前步骤的描述，用于正文超出预算时挑选相关段落，可以为空
+     * @param tokenBudget 输出的token预算
+     */
+    @SuppressWarnings("unchecked")
+    public static String extract(WebDriver driver, String query, int tokenBudget) {
+        Map<String, Object> page = (Map<String, Object>) ((JavascriptExecutor) driver)
+                .executeScript(EXTRACT_SCRIPT, MAX_PAGE_CHARS);
+        List<Section> sections = new ArrayList<>();
+        Section current = null;
+        Object blocks = page != null ? page.get("blocks") : null;
+        if (blocks instanceof List<?> rows) {
+            for (Object row : rows) {
+                if (!(row instanceof List<?> block) || block.size() < 2) {
+                    continue;
+                }
+                boolean heading = block.get(0) instanceof Number level && level.intValue() > 0;
+                if (current == null || heading || current.tokens() >= MAX_SECTION_TOKENS) {
+                    current = new Section(sections.size());
+                    sections.add(current);
+                }
+                current.add(String.valueOf(block.get(1)));
+            }
+        }
+
+        StringBuilder header = new StringBuilder();
+        if (page != null) {
+            header.append("Title: ").append(page.get("title")).append("\n")
+                    .append("URL: ").append(page.get("url")).append("\n\n");
+        }
+        if (sections.isEmpty()) {
+            return header.append("(no readable content)").toString();
+        }
+
+        int budget = Math.max(1, tokenBudget - TokenUtils.estimateTokens(header.toString()));
+        int totalTokens = sections.stream().mapToInt(Section::tokens).sum();
+        List<Section> selected = totalTokens <= budget ? sections : select(sections, query, budget);
+
+        StringBuilder result = new StringBuilder(header);
+        int previous = -1;
+        for (Section section : selected) {
+            if (section.index > previous + 1) {
+                result.append("...\n\n");
+            }
+            result.append(section.text()).append("\n\n");
+            previous = section.index;
+        }
+        if (selected.size() < sections.size()) {
+            result.append(String.format("(%d of %d sections shown, selected by relevance to the current step)",
+                    selected.size(), sections.size()));
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * 精简后的页面HTML：去掉脚本、样式、注释和不影响定位元素的属性，按token预算截断
+     */
+    public static String html(WebDriver driver, int tokenBudget) {
+        Object html = ((JavascriptExecutor) driver).executeScript(HTML_SCRIPT);
+        return truncate(html != null ? html.toString() : "", tokenBudget);
+    }
+
+    /**
+     * 按相关度挑选段落填满预算，第一个段落（通常是标题和导语）总是保留但最多占用一部分预算，返回结果按原文顺序排列
+     */
+    private static List<Section> select(List<Section> sections, String query, int budget) {
+        Set<String> queryTerms = TokenUtils.terms(query);
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (Section section : sections) {
+            for (String term : section.terms()) {
+                if (queryTerms.contains(term)) {
+                    documentFrequency.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+        for (Section section : sections) {
+            double score = 0;
+            for (String term : section.terms()) {
+                Integer frequency = documentFrequency.get(term);
+                if (frequency != null) {
+                    score += Math.log(1 + (double) sections.size() / frequency);
+                }
+            }
+            // 长段落包含更多词，按长度对数归一化
+            section.score = score / Math.log(2 + section.tokens());
+        }
+
+        List<Section> ranked = new ArrayList<>(sections.subList(1, sections.size()));
+        ranked.sort(Comparator.comparingDouble((Section section) -> section.score).reversed()
+                .thenComparingInt(section -> section.index));
+
+        List<Section> selected = new ArrayList<>();
+        Section first = sections.getFirst();
+        int firstBudget = Math.max(1, (int) (budget * FIRST_SECTION_BUDGET_RATIO));
+        Section pinned = first.tokens() <= firstBudget ? first : first.truncate(firstBudget);
+        selected.add(pinned);
+        int remaining = budget - pinned.tokens();
+        for (Section section : ranked) {
+            if (section.tokens() <= remaining) {
+                selected.add(section);
+                remaining -= section.tokens();
+            } else if (remaining >= 64) {
+                // 放不下的段落截取开头部分填满剩余预算
+                selected.add(section.truncate(remaining));
+                remaining = 0;
+            }
+            if (remaining <= 0) {
+                break;
+            }
+        }
+        selected.sort(Comparator.comparingInt(section -> section.index));
+        return selected;
+    }
+
+    private static String truncate(String text, int tokenBudget) {
+        if (TokenUtils.estimateTokens(text) <= tokenBudget) {
+            return text;
+        }
+        int end = Math.min(text.length(), tokenBudget * 4);
+        while (end > 0 && TokenUtils.estimateTokens(text.substring(0, end)) > tokenBudget) {
+            end = end * 3 / 4;
+        }
+        return text.substring(0, end) + "...";
+    }
+
+    private static class Section {
+        private final int index;
+        private final List<String> blocks = new ArrayList<>();
+        private int tokens;
+        private double score;
+        private Set<String> terms;
+
+        Section(int index) {
+            this.index = index;
+        }
+
+        void add(String block) {
+            blocks.add(block);
+            tokens += TokenUtils.estimateTokens(block) + 1;
+        }
+
+        int tokens() {
+            return tokens;
+        }
+
+        String text() {
+            return String.join("\n\n", blocks);
+        }
+
+        Set<String> terms() {
+            if (terms == null) {
+                terms = TokenUtils.terms(text());
+            }
+            return terms;
+        }
+
+        Section truncate(int tokenBudget) {
+            Section truncated = new Section(index);
+            truncated.add(PageContentExtractor.truncate(text(), tokenBudget - 1));
+            return truncated;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package dev.xiushen.wanus.tool.support;
+
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.time.Duration;
+
+/**
+ * 等待页面稳定
+ *      页面加载完成，并且在一段安静期内没有DOM变化和新的网络请求时认为页面已经稳定，
+ *      由页面中的MutationObserver和PerformanceObserver事件驱动，稳定后立即返回，不做固定时长的等待
+ */
+public class PageSettler {
+
+    private static final String SETTLE_SCRIPT = """
+            const quiet = arguments[0], timeout = arguments[1], done = arguments[arguments.length - 1];
+            const start = performance.now();
+            let last = start;
+            const touch = () => { last = performance.now(); };
+            const observer = new MutationObserver(touch);
+            observer.observe(document, {subtree: true, childList: true, attributes: true, characterData: true});
+            let network = null;
+            try {
+                network = new PerformanceObserver(touch);
+                network.observe({type: 'resource'});
+            } catch (e) {
+                network = null;
+            }
+            const timer = setInterval(() => {
+                const now = performance.now();
+                const settled = document.readyState === 'complete' && now - last >= quiet;
+                if (settled || now - start >= timeout) {
+                    clearInterval(timer);
+                    observer.disconnect();
+                    if (network) {
+                        network.disconnect();
+                    }
+                    done(settled);
+                }
+            }, 50);
+            """;
+
+    /**
+     * 页面跳转会中断旧文档中的等待脚本，最多在新文档中重新等待的次数
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private PageSettler() {
+    }
+
+    /**
+     * 等待当前页面稳定
+     * @param quietPeriod 没有DOM变化和网络请求的持续时间
+     * @param timeout 最长等待时间
+     * @return 是否在超时前稳定
+     */
+    public static boolean awaitSettled(WebDriver driver, Duration quietPeriod, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long remainingMillis = (deadline - System.nanoTime()) / 1_000_000;
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            try {
+                driver.manage().timeouts().scriptTimeout(Duration.ofMillis(remainingMillis + 1000));
+                Object settled = ((JavascriptExecutor) driver).executeAsyncScript(SETTLE_SCRIPT,
+                        quietPeriod.toMillis(), remainingMillis);
+                return Boolean.TRUE.equals(settled);
+            } catch (WebDriverException e) {
+                // 等待期间页面发生跳转，在新页面中继续等待
+            }
+        }
+        return false;
+    }
+}
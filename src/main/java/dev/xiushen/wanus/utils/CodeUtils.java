@@ -22,20 +22,17 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import static org.apache.commons.lang3.StringUtils.EMPTY;
-
 public class CodeUtils {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CodeUtils.class);
 
@@ -44,6 +41,11 @@ public class CodeUtils {
 	private static final String CODE_BLOCK_PATTERN = "```(\\w*)\n(.*?)\n```";
 	private static final String UNKNOWN = "unknown";
 	private static final int DEFAULT_TIMEOUT = 600;
+	/**
+	 * 命令输出每个流保留的开头和结尾字节数
+	 */
+	private static final int OUTPUT_HEAD_BYTES = 16 * 1024;
+	private static final int OUTPUT_TAIL_BYTES = 48 * 1024;
 
 	public static List<Pair<String, String>> extractCode(String text, boolean detectSingleLineCode) {
 		List<Pair<String, String>> extracted = new ArrayList<>();
@@ -151,51 +153,39 @@ public class CodeUtils {
 	}
 
 	public static ExecuteCommandResult executeCommand(String... command) {
-		try {
-			Process process = new ProcessBuilder(command).start();
-
-			BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-			String errorResult = read(errorReader);
-			LOGGER.info("read python error={}", errorResult);
-
-			int exitCode = process.waitFor();
-
-			if (exitCode == 0) {
-				BufferedReader inputReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-				String successResult = read(inputReader);
-				LOGGER.info("read python success={}", successResult);
+		return executeCommand(Duration.ofSeconds(DEFAULT_TIMEOUT), command);
+	}
 
-				exitCode = process.waitFor();
+	/**
+	 * 执行命令，stdout和stderr同时读取并只保留开头和结尾，超时后结束整个进程树
+	 * 执行成功时返回stdout，失败时返回stderr（stderr为空时返回stdout）
+	 */
+	public static ExecuteCommandResult executeCommand(Duration timeout, String... command) {
+		ExecuteCommandResult executeCommandResult = new ExecuteCommandResult();
+		try {
+			ProcessRunner.Result result = new ProcessRunner(timeout, OUTPUT_HEAD_BYTES, OUTPUT_TAIL_BYTES).run(command);
+			LOGGER.info("command finished, exitCode={}, timedOut={}, truncated={}, duration={}ms",
+					result.exitCode(), result.timedOut(), result.truncated(), result.duration().toMillis());
 
-				ExecuteCommandResult executeCommandResult = new ExecuteCommandResult();
-				executeCommandResult.setExitCode(exitCode);
-				executeCommandResult.setOutput(successResult);
-				return executeCommandResult;
+			String output = result.exitCode() == 0 || result.stderr().isBlank() ? result.stdout() : result.stderr();
+			if (result.timedOut()) {
+				output += "\nExecution timed out after " + timeout.toSeconds() + " seconds and was terminated.";
 			}
-
-			ExecuteCommandResult executeCommandResult = new ExecuteCommandResult();
-			executeCommandResult.setExitCode(exitCode);
-			executeCommandResult.setOutput(errorResult);
+			executeCommandResult.setExitCode(result.timedOut() ? -1 : result.exitCode());
+			executeCommandResult.setOutput(output);
+			return executeCommandResult;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.error("executeCommand interrupted", e);
+			executeCommandResult.setExitCode(-1);
+			executeCommandResult.setOutput("Execution interrupted.");
 			return executeCommandResult;
 		} catch (Exception e) {
-			LOGGER.error("executePythonCode error", e);
-			return null;
-		}
-	}
-
-	private static String read(BufferedReader reader) {
-		List<String> resultList = new ArrayList<>();
-		String response = EMPTY;
-		while (true) {
-			try {
-				if ((response = reader.readLine()) == null) {
-					break;
-				}
-			} catch (IOException e) {
-			}
-			resultList.add(response);
+			LOGGER.error("executeCommand error", e);
+			executeCommandResult.setExitCode(-1);
+			executeCommandResult.setOutput("Failed to execute command: " + e.getMessage());
+			return executeCommandResult;
 		}
-		return String.join("\n", resultList);
 	}
 
 }
@@ -0,0 +1,181 @@
+package dev.xiushen.wanus.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 外部进程执行
+ *      stdout和stderr由两个线程同时读取，避免任意一个管道写满后子进程阻塞、waitFor永远不返回
+ *      每个输出流只保留开头和结尾各一段，中间部分丢弃并记录丢弃的字节数，内存占用与输出量无关
+ *      超时后先结束整个进程树（包括子进程启动的子进程），等待一段时间后强制结束
+ */
+public class ProcessRunner {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessRunner.class);
+
+    /**
+     * 超时后正常结束进程树的等待时间，超过后强制结束
+     */
+    private static final Duration KILL_GRACE_PERIOD = Duration.ofSeconds(2);
+
+    /**
+     * 进程结束后等待读取线程读完剩余输出的时间
+     */
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(2);
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final Duration timeout;
+    private final int headBytes;
+    private final int tailBytes;
+
+    /**
+     * @param timeout 最长执行时间
+     * @param headBytes 每个输出流保留的开头字节数
+     * @param tailBytes 每个输出流保留的结尾字节数
+     */
+    public ProcessRunner(Duration timeout, int headBytes, int tailBytes) {
+        this.timeout = timeout;
+        this.headBytes = headBytes;
+        this.tailBytes = tailBytes;
+    }
+
+    public Result run(String... command) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).start();
+        // 子进程不读取标准输入，关闭后读取输入的脚本立即得到EOF而不是一直等待
+        process.getOutputStream().close();
+
+        BoundedOutput stdout = new BoundedOutput(headBytes, tailBytes);
+        BoundedOutput stderr = new BoundedOutput(headBytes, tailBytes);
+        Thread stdoutDrain = drain(process.getInputStream(), stdout, "stdout-" + process.pid());
+        Thread stderrDrain = drain(process.getErrorStream(), stderr, "stderr-" + process.pid());
+
+        boolean timedOut = false;
+        try {
+            if (!process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                timedOut = true;
+                LOGGER.warn("Process {} timed out after {}s, killing process tree", process.pid(),
+                        timeout.toSeconds());
+                killTree(process);
+            }
+        } catch (InterruptedException e) {
+            killTree(process);
+            throw e;
+        }
+
+        stdoutDrain.join(DRAIN_TIMEOUT.toMillis());
+        stderrDrain.join(DRAIN_TIMEOUT.toMillis());
+        int exitCode = process.isAlive() ? -1 : process.exitValue();
+        return new Result(exitCode, stdout.toString(), stderr.toString(), timedOut,
+                stdout.isTruncated() || stderr.isTruncated(),
+                Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static Thread drain(InputStream input, BoundedOutput output, String name) {
+        return Thread.ofVirtual().name("process-" + name).start(() -> {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            try (input) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    output.write(buffer, read);
+                }
+            } catch (IOException e) {
+                // 进程被结束后管道关闭
+                LOGGER.debug("Stopped reading process output {}: {}", name, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 先记录全部子孙进程再结束父进程，父进程结束后子进程会被重新挂到init下，无法再通过父进程找到
+     */
+    public static void killTree(Process process) throws InterruptedException {
+        List<ProcessHandle> descendants = process.descendants().toList();
+        descendants.forEach(ProcessHandle::destroy);
+        process.destroy();
+        if (!process.waitFor(KILL_GRACE_PERIOD.toMillis(), TimeUnit.MILLISECONDS)) {
+            process.destroyForcibly();
+        }
+        descendants.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+        process.waitFor(KILL_GRACE_PERIOD.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 进程执行结果
+     * @param exitCode 退出码，进程未能结束时为-1
+     * @param truncated 是否有输出流超过保留上限，中间部分被丢弃
+     */
+    public record Result(int exitCode, String stdout, String stderr, boolean timedOut, boolean truncated,
+                         Duration duration) {
+    }
+
+    /**
+     * 保留开头和结尾的输出缓冲
+     *      开头部分写满后，后续输出写入固定大小的环形缓冲，只保留最后tailBytes个字节
+     */
+    static class BoundedOutput {
+        private final byte[] head;
+        private final byte[] tail;
+        private int headLength;
+        private int tailPosition;
+        private int tailLength;
+        private long totalBytes;
+
+        BoundedOutput(int headBytes, int tailBytes) {
+            this.head = new byte[Math.max(0, headBytes)];
+            this.tail = new byte[Math.max(0, tailBytes)];
+        }
+
+        synchronized void write(byte[] buffer, int length) {
+            totalBytes += length;
+            int offset = 0;
+            if (headLength < head.length) {
+                int count = Math.min(length, head.length - headLength);
+                System.arraycopy(buffer, 0, head, headLength, count);
+                headLength += count;
+                offset = count;
+            }
+            if (tail.length == 0) {
+                return;
+            }
+            // 剩余部分超过环形缓冲大小时，只有最后tail.length个字节会被保留
+            if (length - offset > tail.length) {
+                offset = length - tail.length;
+            }
+            while (offset < length) {
+                int count = Math.min(length - offset, tail.length - tailPosition);
+                System.arraycopy(buffer, offset, tail, tailPosition, count);
+                tailPosition = (tailPosition + count) % tail.length;
+                tailLength = Math.min(tail.length, tailLength + count);
+                offset += count;
+            }
+        }
+
+        synchronized boolean isTruncated() {
+            return totalBytes > headLength + tailLength;
+        }
+
+        @Override
+        public synchronized String toString() {
+            byte[] ordered = new byte[tailLength];
+            int start = (tailPosition - tailLength + tail.length) % Math.max(1, tail.length);
+            for (int i = 0; i < tailLength; i++) {
+                ordered[i] = tail[(start + i) % tail.length];
+            }
+            String headText = new String(head, 0, headLength, StandardCharsets.UTF_8);
+            String tailText = new String(ordered, StandardCharsets.UTF_8);
+            long omitted = totalBytes - headLength - tailLength;
+            if (omitted <= 0) {
+                return headText + tailText;
+            }
+            return headText + "\n... [" + omitted + " bytes omitted] ...\n" + tailText;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package dev.xiushen.wanus.utils;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * token数量估算
+ *      不依赖具体模型的分词器，中日韩字符按每字一个token，其余字符按每4个字符一个token估算，用于内存和上下文预算控制
+ */
+public class TokenUtils {
+
+    /**
+     * 每条消息的角色、分隔符等固定开销
+     */
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final Pattern TERM_PATTERN = Pattern.compile("\\p{IsHan}+|[\\p{L}\\p{N}]+");
+
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjkChars = 0;
+        int otherChars = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (isCjk(text.charAt(i))) {
+                cjkChars++;
+            } else {
+                otherChars++;
+            }
+        }
+        return cjkChars + (otherChars + 3) / 4;
+    }
+
+    public static int estimateTokens(Message message) {
+        int tokens = MESSAGE_OVERHEAD_TOKENS + estimateTokens(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                tokens += estimateTokens(toolCall.name()) + estimateTokens(toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse toolResponse : toolResponseMessage.getResponses()) {
+                tokens += estimateTokens(toolResponse.name()) + estimateTokens(toolResponse.responseData());
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 消息内容按UTF-8编码的字节数
+     */
+    public static int byteSize(Message message) {
+        int bytes = utf8Length(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                bytes += utf8Length(toolCall.id()) + utf8Length(toolCall.name()) + utf8Length(toolCall.arguments());
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse toolResponse : toolResponseMessage.getResponses()) {
+                bytes += utf8Length(toolResponse.id()) + utf8Length(toolResponse.name())
+                        + utf8Length(toolResponse.responseData());
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 切分检索词：连续的汉字按相邻两字切分，其他文字按小写单词切分
+     */
+    public static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        Matcher matcher = TERM_PATTERN.matcher(text.toLowerCase(Locale.ROOT));
+        while (matcher.find()) {
+            String term = matcher.group();
+            if (Character.UnicodeScript.of(term.codePointAt(0)) == Character.UnicodeScript.HAN && term.length() > 1) {
+                for (int i = 0; i + 1 < term.length(); i++) {
+                    terms.add(term.substring(i, i + 2));
+                }
+            } else {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private static int utf8Length(String text) {
+        return text == null ? 0 : text.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+}
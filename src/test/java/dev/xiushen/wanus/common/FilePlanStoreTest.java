@@ -0,0 +1,128 @@
+package dev.xiushen.wanus.common;
+
+import dev.xiushen.wanus.enums.StepStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilePlanStoreTest {
+
+    private static final Duration RETENTION = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysWriteAheadLogOnStartup() throws Exception {
+        FilePlanStore store = new FilePlanStore(directory, 100, RETENTION);
+        Plan plan = newPlan("plan-1");
+        store.create(plan);
+        plan.markStep(0, StepStatus.COMPLETED, "done");
+        store.update(plan);
+        awaitWalLines(2);
+
+        try (FilePlanStore reopened = new FilePlanStore(directory, 100, RETENTION)) {
+            Plan restored = reopened.get("plan-1");
+            assertThat(restored).isNotNull();
+            assertThat(restored.getQuery()).isEqualTo("query plan-1");
+            assertThat(restored.getStatus(0)).isEqualTo(StepStatus.COMPLETED);
+            assertThat(restored.getNotes(0)).isEqualTo("done");
+            assertThat(restored.getStatus(1)).isEqualTo(StepStatus.NOT_STARTED);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void ignoresTruncatedLastLine() throws Exception {
+        FilePlanStore store = new FilePlanStore(directory, 100, RETENTION);
+        store.create(newPlan("plan-1"));
+        awaitWalLines(1);
+        Files.writeString(directory.resolve("plans.wal"), "{\"op\":\"put\",\"planId\":\"plan-2\",\"ti",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (FilePlanStore reopened = new FilePlanStore(directory, 100, RETENTION)) {
+            assertThat(reopened.list()).extracting(Plan::getPlanId).containsExactly("plan-1");
+            assertThat(reopened.isHealthy()).isTrue();
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void snapshotTruncatesWriteAheadLog() throws Exception {
+        Path wal = directory.resolve("plans.wal");
+        Path snapshot = directory.resolve("plans.snapshot");
+        FilePlanStore store = new FilePlanStore(directory, 2, RETENTION);
+        Plan plan = newPlan("plan-1");
+        store.create(plan);
+        plan.markStep(0, StepStatus.COMPLETED, "done");
+        store.update(plan);
+        await(() -> Files.exists(snapshot) && size(wal) == 0);
+
+        store.create(newPlan("plan-2"));
+        awaitWalLines(1);
+
+        try (FilePlanStore reopened = new FilePlanStore(directory, 2, RETENTION)) {
+            assertThat(reopened.list()).extracting(Plan::getPlanId).containsExactlyInAnyOrder("plan-1", "plan-2");
+            assertThat(reopened.get("plan-1").getStatus(0)).isEqualTo(StepStatus.COMPLETED);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void closeWritesFinalSnapshot() throws Exception {
+        FilePlanStore store = new FilePlanStore(directory, 100, RETENTION);
+        store.create(newPlan("plan-1"));
+        store.close();
+
+        assertThat(size(directory.resolve("plans.wal"))).isZero();
+        try (FilePlanStore reopened = new FilePlanStore(directory, 100, RETENTION)) {
+            assertThat(reopened.get("plan-1")).isNotNull();
+        }
+    }
+
+    private static Plan newPlan(String planId) {
+        Plan plan = new Plan(planId, "title " + planId, List.of("first", "second"), null);
+        plan.setQuery("query " + planId);
+        return plan;
+    }
+
+    private void awaitWalLines(int lines) throws InterruptedException {
+        Path wal = directory.resolve("plans.wal");
+        await(() -> {
+            try {
+                return Files.exists(wal) && Files.readAllLines(wal, StandardCharsets.UTF_8).size() >= lines;
+            } catch (IOException e) {
+                return false;
+            }
+        });
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dev.xiushen.wanus.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.method.MethodToolCallbackProvider;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelToolCallingManagerTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void toolsReadContextThroughThread() {
+        List<ToolResponseMessage.ToolResponse> responses = execute(
+                new AssistantMessage.ToolCall("1", "function", "plain", "{}"),
+                new AssistantMessage.ToolCall("2", "function", "plain", "{}"));
+
+        assertThat(responses).extracting(ToolResponseMessage.ToolResponse::responseData)
+                .containsExactly("\"plain:conversation-1:step-1\"", "\"plain:conversation-1:step-1\"");
+        assertThat(ToolCallContext.getConversationId()).isNull();
+    }
+
+    @Test
+    void unknownToolReturnsError() {
+        List<ToolResponseMessage.ToolResponse> responses = execute(
+                new AssistantMessage.ToolCall("1", "function", "missing", "{}"));
+
+        assertThat(responses).extracting(ToolResponseMessage.ToolResponse::responseData)
+                .containsExactly("Error: No tool found for name: missing");
+    }
+
+    private List<ToolResponseMessage.ToolResponse> execute(AssistantMessage.ToolCall... toolCalls) {
+        ParallelToolCallingManager manager = new ParallelToolCallingManager(name -> null, executor, 4, Map.of(),
+                Map.of());
+        ToolCallingChatOptions options = ToolCallingChatOptions.builder()
+                .toolCallbacks(MethodToolCallbackProvider.builder().toolObjects(new Tools()).build().getToolCallbacks())
+                .toolContext(Map.of(
+                        ToolCallContext.CONVERSATION_ID, "conversation-1",
+                        ToolCallContext.STEP_TEXT, "step-1"))
+                .internalToolExecutionEnabled(false)
+                .build();
+        Prompt prompt = new Prompt(List.of(new UserMessage("run")), options);
+        ChatResponse response = new ChatResponse(List.of(
+                new Generation(new AssistantMessage("", Map.of(), List.of(toolCalls)))));
+
+        ToolExecutionResult result = manager.executeToolCalls(prompt, response);
+        List<?> history = result.conversationHistory();
+        return ((ToolResponseMessage) history.get(history.size() - 1)).getResponses();
+    }
+
+    static class Tools {
+
+        @Tool(name = "plain", description = "Tool reading the call context from its thread")
+        public String plain() {
+            return "plain:" + ToolCallContext.getConversationId() + ":" + ToolCallContext.getStepText();
+        }
+    }
+}
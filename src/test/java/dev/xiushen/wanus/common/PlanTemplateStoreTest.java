@@ -0,0 +1,91 @@
+package dev.xiushen.wanus.common;
+
+import dev.xiushen.wanus.enums.StepStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlanTemplateStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsRecordedTemplateWithoutReloading() throws Exception {
+        PlanTemplateStore store = new PlanTemplateStore(directory, 0.5, 4, 0, null);
+        store.find("compare the prices of three laptops");
+
+        store.record(completedPlan("Compare the prices of three laptops."));
+
+        assertThat(store.find("compare the prices of three laptops")).hasValueSatisfying(
+                template -> assertThat(template.steps()).containsExactly("first", "second"));
+        assertThat(store.find("compare the prices of three cheap laptops")).isPresent();
+        assertThat(store.getStats().recorded()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsTemplatesAcrossRestart() throws Exception {
+        new PlanTemplateStore(directory, 1.0, 4, 0, null).record(completedPlan("summarize the article"));
+
+        PlanTemplateStore reopened = new PlanTemplateStore(directory, 1.0, 4, 0, null);
+        assertThat(reopened.find("Summarize the article")).isPresent();
+    }
+
+    @Test
+    void ignoresUnfinishedPlans() throws Exception {
+        PlanTemplateStore store = new PlanTemplateStore(directory, 1.0, 4, 0, null);
+        Plan plan = new Plan("plan-1", "title", List.of("first", "second"), null);
+        plan.setQuery("book a flight");
+        plan.markStep(0, StepStatus.COMPLETED, null);
+
+        store.record(plan);
+
+        assertThat(store.find("book a flight")).isEmpty();
+    }
+
+    @Test
+    void expiredTemplatesAreNotReusedAndGetReplaced() throws Exception {
+        PlanTemplateStore store = new PlanTemplateStore(directory, 0.5, 4, 0, Duration.ofSeconds(1));
+        store.record(completedPlan("translate the report"));
+        assertThat(store.find("translate the report")).isPresent();
+
+        Thread.sleep(1100);
+        assertThat(store.find("translate the report")).isEmpty();
+
+        store.record(completedPlan("translate the report"));
+        assertThat(store.find("translate the report")).isPresent();
+        assertThat(store.getStats().removed()).isEqualTo(1);
+    }
+
+    @Test
+    void removesOldestTemplatesOverTheShardLimit() throws Exception {
+        // 上限1时每个分片只保留最新的模板
+        PlanTemplateStore store = new PlanTemplateStore(directory, 1.0, 256, 1, null);
+        for (int i = 0; i < 300; i++) {
+            store.record(completedPlan("query number " + i));
+        }
+
+        PlanTemplateStore reopened = new PlanTemplateStore(directory, 1.0, 256, 1, null);
+        long kept = 0;
+        for (int i = 0; i < 300; i++) {
+            if (reopened.find("query number " + i).isPresent()) {
+                kept++;
+            }
+        }
+        assertThat(kept).isLessThanOrEqualTo(256).isEqualTo(300 - store.getStats().removed());
+        assertThat(store.find("query number 299")).isPresent();
+    }
+
+    private static Plan completedPlan(String query) {
+        Plan plan = new Plan("plan-" + query.hashCode(), "title", List.of("first", "second"), null);
+        plan.setQuery(query);
+        plan.markStep(0, StepStatus.COMPLETED, null);
+        plan.markStep(1, StepStatus.COMPLETED, null);
+        return plan;
+    }
+}
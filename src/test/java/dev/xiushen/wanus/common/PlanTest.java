@@ -0,0 +1,101 @@
+package dev.xiushen.wanus.common;
+
+import dev.xiushen.wanus.enums.StepStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlanTest {
+
+    @Test
+    void claimsStepsOnceTheirDependenciesFinish() {
+        Plan plan = new Plan("plan-1", "title", List.of("a", "b", "c", "d"),
+                List.of(List.of(), List.of(), List.of(0, 1), List.of(2)));
+
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(0, 1);
+        assertThat(plan.getStatus(0)).isEqualTo(StepStatus.IN_PROGRESS);
+        assertThat(plan.claimReadySteps(Set.of(0, 1), 10)).isEmpty();
+
+        plan.markStep(0, StepStatus.COMPLETED, null);
+        assertThat(plan.claimReadySteps(Set.of(1), 10)).isEmpty();
+
+        plan.markStep(1, StepStatus.COMPLETED, null);
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(2);
+
+        plan.markStep(2, StepStatus.COMPLETED, null);
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(3);
+
+        plan.markStep(3, StepStatus.COMPLETED, null);
+        assertThat(plan.claimReadySteps(Set.of(), 10)).isEmpty();
+        assertThat(plan.isFinished()).isTrue();
+    }
+
+    @Test
+    void blockedDependencyCountsAsFinished() {
+        Plan plan = new Plan("plan-1", "title", List.of("a", "b"), List.of(List.of(), List.of(0)));
+
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(0);
+        plan.markStep(0, StepStatus.BLOCKED, "failed");
+
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(1);
+    }
+
+    @Test
+    void claimsAtMostLimitSteps() {
+        Plan plan = new Plan("plan-1", "title", List.of("a", "b", "c"), List.of(List.of(), List.of(), List.of()));
+
+        assertThat(indices(plan.claimReadySteps(Set.of(), 2))).containsExactly(0, 1);
+        assertThat(indices(plan.claimReadySteps(Set.of(0, 1), 2))).containsExactly(2);
+        assertThat(plan.claimReadySteps(Set.of(0, 1, 2), 2)).isEmpty();
+    }
+
+    @Test
+    void sequentialPlanClaimsOneStepAtATime() {
+        Plan plan = new Plan("plan-1", "title", List.of("a", "b"), null);
+
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(0);
+        assertThat(plan.claimReadySteps(Set.of(0), 10)).isEmpty();
+
+        plan.markStep(0, StepStatus.COMPLETED, null);
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(1);
+    }
+
+    @Test
+    void updateStepsResetsCursor() {
+        Plan plan = new Plan("plan-1", "title", List.of("a", "b", "c"), List.of(List.of(), List.of(0), List.of(1)));
+        plan.claimReadySteps(Set.of(), 10);
+        plan.markStep(0, StepStatus.COMPLETED, "done a");
+        plan.claimReadySteps(Set.of(), 10);
+        plan.markStep(1, StepStatus.COMPLETED, "done b");
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(2);
+
+        plan.updateSteps(List.of("a", "b2", "c"));
+
+        assertThat(plan.isSequential()).isTrue();
+        assertThat(plan.getStatus(0)).isEqualTo(StepStatus.COMPLETED);
+        assertThat(plan.getNotes(0)).isEqualTo("done a");
+        assertThat(plan.getStatus(1)).isEqualTo(StepStatus.NOT_STARTED);
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(1);
+    }
+
+    @Test
+    void reopeningEarlierStepMovesCursorBack() {
+        Plan plan = new Plan("plan-1", "title", List.of("a", "b"), null);
+        plan.claimReadySteps(Set.of(), 10);
+        plan.markStep(0, StepStatus.COMPLETED, null);
+        plan.claimReadySteps(Set.of(), 10);
+        plan.markStep(1, StepStatus.COMPLETED, null);
+        assertThat(plan.claimReadySteps(Set.of(), 10)).isEmpty();
+
+        plan.markStep(0, StepStatus.NOT_STARTED, null);
+
+        assertThat(indices(plan.claimReadySteps(Set.of(), 10))).containsExactly(0);
+    }
+
+    private static List<Integer> indices(List<PlanStep> steps) {
+        return steps.stream().map(PlanStep::getIndex).toList();
+    }
+}
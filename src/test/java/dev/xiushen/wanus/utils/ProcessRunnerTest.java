@@ -0,0 +1,75 @@
+package dev.xiushen.wanus.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProcessRunnerTest {
+
+    @Test
+    void keepsShortOutputUnchanged() {
+        ProcessRunner.BoundedOutput output = new ProcessRunner.BoundedOutput(4, 4);
+        write(output, "abc");
+        write(output, "def");
+
+        assertThat(output.isTruncated()).isFalse();
+        assertThat(output.toString()).isEqualTo("abcdef");
+    }
+
+    @Test
+    void keepsHeadAndWrappedTail() {
+        ProcessRunner.BoundedOutput output = new ProcessRunner.BoundedOutput(3, 4);
+        write(output, "abcde");
+        write(output, "fg");
+        write(output, "hij");
+
+        assertThat(output.isTruncated()).isTrue();
+        assertThat(output.toString()).isEqualTo("abc\n... [3 bytes omitted] ...\nghij");
+    }
+
+    @Test
+    void keepsOnlyLastBytesOfWriteLargerThanTail() {
+        ProcessRunner.BoundedOutput output = new ProcessRunner.BoundedOutput(2, 3);
+        write(output, "0123456789");
+
+        assertThat(output.toString()).isEqualTo("01\n... [5 bytes omitted] ...\n789");
+    }
+
+    @Test
+    void keepsOnlyTailWhenHeadIsZero() {
+        ProcessRunner.BoundedOutput output = new ProcessRunner.BoundedOutput(0, 3);
+        write(output, "abcd");
+        write(output, "ef");
+
+        assertThat(output.isTruncated()).isTrue();
+        assertThat(output.toString()).isEqualTo("\n... [3 bytes omitted] ...\ndef");
+    }
+
+    @Test
+    void keepsOnlyHeadWhenTailIsZero() {
+        ProcessRunner.BoundedOutput output = new ProcessRunner.BoundedOutput(3, 0);
+        write(output, "abcd");
+        write(output, "ef");
+
+        assertThat(output.isTruncated()).isTrue();
+        assertThat(output.toString()).isEqualTo("abc\n... [3 bytes omitted] ...\n");
+    }
+
+    @Test
+    void countsOmittedBytesAcrossManyWrites() {
+        ProcessRunner.BoundedOutput output = new ProcessRunner.BoundedOutput(5, 5);
+        for (int i = 0; i < 1000; i++) {
+            write(output, "x");
+        }
+        write(output, "12345");
+
+        assertThat(output.toString()).isEqualTo("xxxxx\n... [995 bytes omitted] ...\n12345");
+    }
+
+    private static void write(ProcessRunner.BoundedOutput output, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        output.write(bytes, bytes.length);
+    }
+}